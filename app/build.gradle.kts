@@ -18,6 +18,38 @@ val hasSigningConfig = listOf(
     "RELEASE_KEY_PASSWORD"
 ).all { localProperties[it] != null }
 
+val bundlesManifestDir = layout.buildDirectory.dir("generated/bundlesManifest")
+
+val generateBundlesManifest by tasks.registering {
+    val bundlesDir = file("src/main/assets/bundles")
+    inputs.files(fileTree(bundlesDir))
+    outputs.dir(bundlesManifestDir)
+    doLast {
+        val hashes = (bundlesDir.listFiles() ?: emptyArray())
+            .filter { it.isFile }
+            .sortedBy { it.name }
+            .map { bundle ->
+                val crc32 = java.util.zip.CRC32()
+                bundle.inputStream().buffered().use { input ->
+                    val buffer = ByteArray(64 * 1024)
+                    while (true) {
+                        val bytesRead = input.read(buffer)
+                        if (bytesRead < 0) break
+                        crc32.update(buffer, 0, bytesRead)
+                    }
+                }
+                "\"bundles/${bundle.name}\":${crc32.value}"
+            }
+        val manifest = bundlesManifestDir.get().file("bundles/manifest.json").asFile
+        manifest.parentFile.mkdirs()
+        manifest.writeText(hashes.joinToString(",", "{", "}"))
+    }
+}
+
+tasks.named("preBuild") {
+    dependsOn(generateBundlesManifest)
+}
+
 android {
     namespace = "com.zomdroid"
     compileSdk = 35
@@ -78,18 +110,32 @@ android {
     buildFeatures {
         viewBinding = true
     }
+    testOptions {
+        // installer tests run file code that calls into android.system.Os, e.g. to preallocate
+        unitTests.isReturnDefaultValues = true
+    }
     externalNativeBuild {
         cmake {
             path = file("src/main/cpp/CMakeLists.txt")
             version = "3.22.1"
         }
     }
+    androidResources {
+        // bundles are already compressed, deflating them again only slows down reading, and plain
+        // tar bundles must stay stored so that their size can be read from the asset descriptor
+        noCompress += listOf("xz", "lz4", "tar")
+    }
     packaging {
         jniLibs {
             useLegacyPackaging = true
         }
     }
     ndkVersion = "28.0.13004108"
+    sourceSets {
+        getByName("main") {
+            assets.srcDir(bundlesManifestDir)
+        }
+    }
 }
 
 dependencies {
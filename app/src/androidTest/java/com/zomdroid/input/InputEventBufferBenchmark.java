@@ -0,0 +1,71 @@
+package com.zomdroid.input;
+
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Locale;
+
+/**
+ * Events per second through the per-call JNI API against {@link InputEventBuffer}, for what a
+ * gamepad motion event sends: six axes and the dpad. No game runs, so native code drops the
+ * events once its queue is full, which costs the same either way. Needs a device, the results
+ * are logged under {@link #LOG_TAG}.
+ */
+@RunWith(AndroidJUnit4.class)
+public class InputEventBufferBenchmark {
+    private static final String LOG_TAG = InputEventBufferBenchmark.class.getName();
+    private static final int MOTION_EVENTS = 200_000;
+    private static final int EVENTS_PER_MOTION = 7;
+    private static final int WARMUP_MOTION_EVENTS = 20_000;
+
+    @BeforeClass
+    public static void loadNativeLibrary() {
+        System.loadLibrary("zomdroid");
+    }
+
+    @Test
+    public void comparePerCallAndBatchedEvents() {
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(() -> {
+            sendPerCall(WARMUP_MOTION_EVENTS);
+            sendBatched(WARMUP_MOTION_EVENTS);
+
+            long perCallNs = sendPerCall(MOTION_EVENTS);
+            long batchedNs = sendBatched(MOTION_EVENTS);
+
+            long events = (long) MOTION_EVENTS * EVENTS_PER_MOTION;
+            Log.i(LOG_TAG, String.format(Locale.ROOT, "per call: %.0f events/s, batched: %.0f events/s",
+                    events * 1e9 / perCallNs, events * 1e9 / batchedNs));
+        });
+    }
+
+    private static long sendPerCall(int motionEvents) {
+        long startNs = System.nanoTime();
+        for (int i = 0; i < motionEvents; i++) {
+            float value = (i & 0xFF) / 255.f;
+            for (int axis = 0; axis < 6; axis++) {
+                InputNativeInterface.sendJoystickAxis(axis, value);
+            }
+            InputNativeInterface.sendJoystickDpad(0, (char) (i & 0xF));
+        }
+        return System.nanoTime() - startNs;
+    }
+
+    private static long sendBatched(int motionEvents) {
+        long startNs = System.nanoTime();
+        for (int i = 0; i < motionEvents; i++) {
+            float value = (i & 0xFF) / 255.f;
+            for (int axis = 0; axis < 6; axis++) {
+                InputEventBuffer.sendJoystickAxis(axis, value);
+            }
+            InputEventBuffer.sendJoystickDpad(0, (char) (i & 0xF));
+            InputEventBuffer.flush();
+        }
+        return System.nanoTime() - startNs;
+    }
+}
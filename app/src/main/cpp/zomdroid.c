@@ -6,6 +6,7 @@
 #include <wait.h>
 #include "errno.h"
 #include "zomdroid_globals.h"
+#include "zomdroid.h"
 #include <android/native_window.h>
 #include "android_linker_ns.h"
 #include <malloc.h>
@@ -440,4 +441,33 @@ void zomdroid_event_joystick_button(int button, bool is_pressed) {
         e->joystickButton.button = button;
         e->joystickButton.is_pressed = is_pressed;
     });
-}
\ No newline at end of file
+}
+
+void zomdroid_event_batch(const ZomdroidInputRecord* records, int count) {
+    for (int i = 0; i < count; i++) {
+        const ZomdroidInputRecord* r = &records[i];
+        switch (r->type) {
+            case ZOMDROID_INPUT_KEYBOARD:
+                zomdroid_event_keyboard(r->code, r->x != 0);
+                break;
+            case ZOMDROID_INPUT_CURSOR_POS:
+                zomdroid_event_cursor_pos(r->x, r->y);
+                break;
+            case ZOMDROID_INPUT_MOUSE_BUTTON:
+                zomdroid_event_mouse_button(r->code, r->x != 0);
+                break;
+            case ZOMDROID_INPUT_JOYSTICK_AXIS:
+                zomdroid_event_joystick_axis(r->code, r->x);
+                break;
+            case ZOMDROID_INPUT_JOYSTICK_DPAD:
+                zomdroid_event_joystick_dpad(r->code, (char) r->x);
+                break;
+            case ZOMDROID_INPUT_JOYSTICK_BUTTON:
+                zomdroid_event_joystick_button(r->code, r->x != 0);
+                break;
+            default:
+                LOGE("Unknown input event type %d", r->type);
+                break;
+        }
+    }
+}
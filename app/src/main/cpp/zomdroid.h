@@ -2,6 +2,29 @@
 #define ZOMDROID_ZOMDROID_H
 
 #include "android/native_window.h"
+#include <stdint.h>
+
+/*
+ * Values of ZomdroidInputRecord.type. They are written by InputEventBuffer.java, whose TYPE_
+ * constants must keep the same values, InputEventBufferTest compares the two. They are separate
+ * from EventType in zomdroid_globals.h, so reordering that enum doesn't change the record format.
+ */
+#define ZOMDROID_INPUT_KEYBOARD 0
+#define ZOMDROID_INPUT_CURSOR_POS 1
+#define ZOMDROID_INPUT_MOUSE_BUTTON 2
+#define ZOMDROID_INPUT_JOYSTICK_AXIS 3
+#define ZOMDROID_INPUT_JOYSTICK_DPAD 4
+#define ZOMDROID_INPUT_JOYSTICK_BUTTON 5
+
+/** Input event as written by InputEventBuffer on the Java side, in native byte order. */
+typedef struct {
+    int32_t type;
+    int32_t code;
+    float x;
+    float y;
+} ZomdroidInputRecord;
+
+_Static_assert(sizeof(ZomdroidInputRecord) == 16, "must match RECORD_SIZE in InputEventBuffer.java");
 
 void zomdroid_set_art_vm(void* vm);
 
@@ -21,5 +44,6 @@ void zomdroid_event_joystick_axis(int axis, float state);
 void zomdroid_event_joystick_dpad(int dpad, char state);
 void zomdroid_event_joystick_button(int button, bool is_pressed);
 void zomdroid_event_joystick_connected();
+void zomdroid_event_batch(const ZomdroidInputRecord* records, int count);
 
 #endif //ZOMDROID_ZOMDROID_H
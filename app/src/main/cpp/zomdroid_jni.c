@@ -124,4 +124,14 @@ Java_com_zomdroid_input_InputNativeInterface_sendJoystickButton(JNIEnv *env, jcl
 JNIEXPORT void JNICALL
 Java_com_zomdroid_input_InputNativeInterface_sendJoystickConnected(JNIEnv *env, jclass clazz) {
     zomdroid_event_joystick_connected();
-}
\ No newline at end of file
+}
+
+JNIEXPORT void JNICALL
+Java_com_zomdroid_input_InputNativeInterface_sendEvents(JNIEnv *env, jclass clazz, jobject buffer, jint count) {
+    const ZomdroidInputRecord* records = (*env)->GetDirectBufferAddress(env, buffer);
+    if (records == NULL) {
+        LOGE("Input event buffer is not a direct buffer");
+        return;
+    }
+    zomdroid_event_batch(records, count);
+}
@@ -139,6 +139,14 @@ public class AppStorageProvider extends DocumentsProvider {
     public ParcelFileDescriptor openDocument(final String documentId, String mode, CancellationSignal signal) throws FileNotFoundException {
         final File file = getFileForDocId(documentId);
         final int accessMode = ParcelFileDescriptor.parseMode(mode);
+        if ((accessMode & ParcelFileDescriptor.MODE_WRITE_ONLY) != 0) {
+            // game files may be linked into other instances, edits must only change this one
+            try {
+                BlobStore.unshare(file);
+            } catch (IOException e) {
+                throw new FileNotFoundException("Failed to unshare " + file + ": " + e);
+            }
+        }
         return ParcelFileDescriptor.open(file, accessMode);
     }
 
@@ -0,0 +1,448 @@
+package com.zomdroid;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.apache.commons.compress.archivers.ArchiveEntry;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.CRC32;
+
+/**
+ * Writes archive entries to disk on a bounded pool of writer threads while the caller keeps
+ * decoding the archive. Entry data is handed over in chunks taken from fixed pools of direct
+ * buffers, so the reader blocks instead of allocating when writers fall behind. Entries whose
+ * size is known to be small use small chunks, everything else is moved in 1 MB chunks. Entry data
+ * is read straight into the chunks, and the queues that carry the chunks of large entries to
+ * their writer are pooled as well.
+ * <p>
+ * The pools are shared by every writer in the process and allocated on first use, so concurrent
+ * and successive extractions reuse the same buffers. A writer must be fed from a single thread:
+ * its reader then has at most one entry that is still being read, which is what guarantees that
+ * writers sharing the pools always make progress.
+ * <p>
+ * A hashing writer also computes the SHA-256 of every entry it reads, for {@link BlobStore}.
+ */
+class ArchiveEntryWriter implements Closeable {
+    private static final int CHUNK_SIZE = 1024 * 1024;
+    private static final int SMALL_CHUNK_SIZE = 64 * 1024;
+    private static final int SMALL_CHUNK_COUNT = 32;
+    private static final int DEFAULT_THREADS = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() - 1));
+    private static final Chunk ABORT = new Chunk(ByteBuffer.allocate(0), null);
+    // file content is read into this for comparison, one per reading thread
+    private static final ThreadLocal<ByteBuffer> compareBuffer =
+            ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(SMALL_CHUNK_SIZE));
+
+    private final ExecutorService executor;
+    private final AtomicReference<IOException> error = new AtomicReference<>();
+    // only used by the reading thread, reset for every entry
+    private final CRC32 crc32 = new CRC32();
+    private final MessageDigest sha256 = BlobStore.newSha256();
+    private final boolean isHashing;
+    // one channel for every entry, so reading an entry allocates no channel or transfer buffer
+    private final EntryInputStream entryInStream = new EntryInputStream();
+    private final ReadableByteChannel channel = Channels.newChannel(entryInStream);
+    private final TaskProgressListener taskProgressListener;
+
+    /**
+     * Writes on as many threads as the device has cores to spare, for a single archive decoded
+     * on the calling thread.
+     *
+     * @param taskProgressListener only polled for cancellation while entry data is read, may be null
+     */
+    ArchiveEntryWriter(@Nullable TaskProgressListener taskProgressListener) {
+        this(taskProgressListener, DEFAULT_THREADS, false);
+    }
+
+    /**
+     * @param threads writer threads, e.g. 1 for each of several writers that are fed in parallel
+     * @param isHashing whether written entries are passed to their listener with their SHA-256
+     */
+    ArchiveEntryWriter(@Nullable TaskProgressListener taskProgressListener, int threads, boolean isHashing) {
+        this.taskProgressListener = taskProgressListener;
+        this.executor = Executors.newFixedThreadPool(threads);
+        this.isHashing = isHashing;
+    }
+
+    /**
+     * Reads the data of the current entry from {@code inStream} and schedules it to be written
+     * to {@code file}. Returns once the entry has been fully read, not when it is on disk.
+     * When the entry header carries a size, the file is preallocated to it.
+     *
+     * @param onWritten called from a writer thread once the file is complete, may be null
+     * @return CRC32 of the entry data, 0 for directories
+     */
+    long write(@NonNull InputStream inStream, @NonNull ArchiveEntry entry, @NonNull File file,
+               @Nullable OnEntryWrittenListener onWritten) throws IOException {
+        throwIfFailed();
+        if (entry.isDirectory()) {
+            FileUtils.makeDirs(file);
+            if (onWritten != null)
+                onWritten.onEntryWritten(0, 0, null);
+            return 0;
+        }
+        File parent = file.getParentFile();
+        if (parent != null)
+            FileUtils.makeDirs(parent);
+        // a file left from before may be linked to a blob, replace it instead of writing through
+        file.delete();
+
+        long size = entry.getSize();
+        startEntry(inStream);
+        Chunk first = readChunk(size >= 0 && size < SMALL_CHUNK_SIZE ? Pools.freeSmallChunks : Pools.freeChunks, isHashing);
+        schedule(file, 0, size, first, onWritten);
+        return crc32.getValue();
+    }
+
+    /**
+     * Reads the data of the current entry from {@code inStream} without writing it, and returns
+     * what it hashes to. Lets an entry be looked up in {@link BlobStore} before it is written.
+     */
+    @NonNull
+    EntryDigest hash(@NonNull InputStream inStream) throws IOException {
+        throwIfFailed();
+        startEntry(inStream);
+        long size = 0;
+        while (true) {
+            Chunk chunk = readChunk(Pools.freeChunks, true);
+            size += chunk.length;
+            boolean isLast = chunk.isLast();
+            byte[] digest = chunk.sha256;
+            chunk.recycle();
+            if (isLast)
+                return new EntryDigest(size, crc32.getValue(), digest);
+        }
+    }
+
+    /**
+     * Like {@link #write}, but for a file that already exists with the entry's size. The entry
+     * data is compared against the file and only the part starting at the first differing chunk
+     * is rewritten, so an unchanged file costs a read instead of a write.
+     */
+    long writeIfChanged(@NonNull InputStream inStream, @NonNull File file,
+                        @Nullable OnEntryWrittenListener onWritten) throws IOException {
+        throwIfFailed();
+        startEntry(inStream);
+        try (FileChannel fileChannel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long offset = 0;
+            while (true) {
+                Chunk chunk = readChunk(Pools.freeChunks, isHashing);
+                if (!isSame(chunk, fileChannel)) {
+                    schedule(file, offset, -1, chunk, onWritten);
+                    return crc32.getValue();
+                }
+                int length = chunk.length;
+                boolean isLast = chunk.isLast();
+                byte[] digest = chunk.sha256;
+                chunk.recycle();
+                if (isLast) {
+                    if (onWritten != null)
+                        onWritten.onEntryWritten(offset + length, crc32.getValue(), digest);
+                    return crc32.getValue();
+                }
+                offset += length;
+            }
+        }
+    }
+
+    /**
+     * Compares the chunk with the next bytes of the file, in pieces of the reading thread's
+     * compare buffer.
+     */
+    private static boolean isSame(Chunk chunk, FileChannel fileChannel) throws IOException {
+        ByteBuffer fileBuffer = compareBuffer.get();
+        ByteBuffer chunkBuffer = chunk.buffer.duplicate();
+        while (chunkBuffer.hasRemaining()) {
+            fileBuffer.clear();
+            fileBuffer.limit(Math.min(fileBuffer.capacity(), chunkBuffer.remaining()));
+            while (fileBuffer.hasRemaining() && fileChannel.read(fileBuffer) >= 0) ;
+            fileBuffer.flip();
+            ByteBuffer chunkPiece = chunkBuffer.slice();
+            chunkPiece.limit(fileBuffer.limit());
+            if (fileBuffer.limit() == 0 || !chunkPiece.equals(fileBuffer))
+                return false;
+            chunkBuffer.position(chunkBuffer.position() + fileBuffer.limit());
+        }
+        return true;
+    }
+
+    private void schedule(File file, long offset, long size, Chunk first,
+                          OnEntryWrittenListener onWritten) throws IOException {
+        if (first.isLast()) {
+            executor.execute(() -> writeFile(file, offset, size, first, null, onWritten));
+            return;
+        }
+
+        BlockingQueue<Chunk> chunks = takeUninterruptibly(Pools.freeChunkQueues);
+        executor.execute(() -> writeFile(file, offset, size, first, chunks, onWritten));
+        try {
+            boolean isLast;
+            do {
+                Chunk chunk = readChunk(Pools.freeChunks, isHashing);
+                // once queued, the chunk may be written, recycled and refilled by another reader
+                isLast = chunk.isLast();
+                chunks.add(chunk);
+            } while (!isLast);
+        } catch (IOException | RuntimeException e) {
+            chunks.add(ABORT);
+            throw e;
+        }
+    }
+
+    /**
+     * Waits for all scheduled writes and rethrows the first write failure, if any.
+     */
+    void finish() throws IOException {
+        close();
+        throwIfFailed();
+    }
+
+    /**
+     * Waits for all scheduled writes, even when interrupted: a dropped write would never hand its
+     * chunks back to the shared pools.
+     */
+    @Override
+    public void close() throws IOException {
+        executor.shutdown();
+        boolean isInterrupted = false;
+        while (true) {
+            try {
+                if (executor.awaitTermination(1, TimeUnit.SECONDS))
+                    break;
+            } catch (InterruptedException e) {
+                isInterrupted = true;
+            }
+        }
+        if (isInterrupted) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while waiting for archive writers");
+        }
+    }
+
+    private void startEntry(InputStream inStream) {
+        crc32.reset();
+        sha256.reset();
+        entryInStream.source = inStream;
+    }
+
+    /**
+     * Fills a chunk from the pool with the next entry bytes and adds them to {@link #crc32}, and
+     * to {@link #sha256} when hashing. The checksum so far is kept with the chunk, so the last
+     * chunk carries the one of the entry, along with its SHA-256.
+     */
+    private Chunk readChunk(BlockingQueue<Chunk> pool, boolean isHashing) throws IOException {
+        FileUtils.throwIfCancelled(taskProgressListener);
+        Chunk chunk;
+        try {
+            chunk = pool.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while waiting for a free buffer");
+        }
+        try {
+            ByteBuffer buffer = chunk.buffer;
+            buffer.clear();
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0) ;
+            buffer.flip();
+            crc32.update(buffer);
+            buffer.rewind();
+            if (isHashing) {
+                sha256.update(buffer);
+                buffer.rewind();
+            }
+            chunk.length = buffer.limit();
+            chunk.crc32 = crc32.getValue();
+            chunk.sha256 = isHashing && chunk.isLast() ? sha256.digest() : null;
+            return chunk;
+        } catch (IOException | RuntimeException e) {
+            chunk.recycle();
+            throw e;
+        }
+    }
+
+    private void writeFile(File file, long offset, long size, Chunk chunk, BlockingQueue<Chunk> chunks,
+                           OnEntryWrittenListener onWritten) {
+        boolean isWriting = error.get() == null;
+        RandomAccessFile randomAccessFile = null;
+        FileChannel channel = null;
+        long position = offset;
+        long crc32 = 0;
+        byte[] sha256 = null;
+        while (chunk != ABORT) {
+            if (isWriting) {
+                try {
+                    if (channel == null) {
+                        randomAccessFile = new RandomAccessFile(file, "rw");
+                        channel = randomAccessFile.getChannel();
+                        if (offset == 0 && size > 0)
+                            FileUtils.preallocate(randomAccessFile.getFD(), size);
+                    }
+                    while (chunk.buffer.hasRemaining()) {
+                        position += channel.write(chunk.buffer, position);
+                    }
+                } catch (IOException e) {
+                    error.compareAndSet(null, new IOException("failed to write " + file, e));
+                    isWriting = false;
+                }
+            }
+            // the reader refills the chunk as soon as it is recycled
+            boolean isLast = chunk.isLast();
+            crc32 = chunk.crc32;
+            sha256 = chunk.sha256;
+            chunk.recycle();
+            if (chunks == null || isLast)
+                break;
+            chunk = takeUninterruptibly(chunks);
+        }
+        if (chunks != null)
+            Pools.freeChunkQueues.add(chunks);
+        if (randomAccessFile != null) {
+            try {
+                if (isWriting)
+                    randomAccessFile.setLength(position);
+                randomAccessFile.close();
+            } catch (IOException e) {
+                error.compareAndSet(null, new IOException("failed to write " + file, e));
+                isWriting = false;
+            }
+        }
+        if (isWriting && chunk != ABORT && onWritten != null) {
+            try {
+                onWritten.onEntryWritten(position, crc32, sha256);
+            } catch (IOException e) {
+                error.compareAndSet(null, e);
+            }
+        }
+    }
+
+    private static <T> T takeUninterruptibly(BlockingQueue<T> queue) {
+        boolean isInterrupted = false;
+        try {
+            while (true) {
+                try {
+                    return queue.take();
+                } catch (InterruptedException e) {
+                    isInterrupted = true;
+                }
+            }
+        } finally {
+            if (isInterrupted)
+                Thread.currentThread().interrupt();
+        }
+    }
+
+    private void throwIfFailed() throws IOException {
+        IOException e = error.get();
+        if (e != null)
+            throw e;
+    }
+
+    /**
+     * Chunk pools shared by all writers, created when the first writer reads an entry.
+     */
+    private static class Pools {
+        static final int CHUNK_COUNT = DEFAULT_THREADS * 2 + 2;
+        static final BlockingQueue<Chunk> freeChunks = new ArrayBlockingQueue<>(CHUNK_COUNT);
+        static final BlockingQueue<Chunk> freeSmallChunks = new ArrayBlockingQueue<>(SMALL_CHUNK_COUNT);
+        /** Every entry in flight holds a chunk, so there are never more queues in use than chunks. */
+        static final BlockingQueue<BlockingQueue<Chunk>> freeChunkQueues = new ArrayBlockingQueue<>(CHUNK_COUNT);
+
+        static {
+            for (int i = 0; i < CHUNK_COUNT; i++) {
+                freeChunks.add(new Chunk(ByteBuffer.allocateDirect(CHUNK_SIZE), freeChunks));
+                freeChunkQueues.add(new ArrayBlockingQueue<>(CHUNK_COUNT));
+            }
+            for (int i = 0; i < SMALL_CHUNK_COUNT; i++) {
+                freeSmallChunks.add(new Chunk(ByteBuffer.allocateDirect(SMALL_CHUNK_SIZE), freeSmallChunks));
+            }
+        }
+    }
+
+    /**
+     * Forwards to the stream of the entry being read, so {@link #channel} can outlive it.
+     */
+    private static class EntryInputStream extends InputStream {
+        InputStream source;
+
+        @Override
+        public int read() throws IOException {
+            return source.read();
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            return source.read(b, off, len);
+        }
+
+        @Override
+        public int available() throws IOException {
+            return source.available();
+        }
+    }
+
+    interface OnEntryWrittenListener {
+        /**
+         * @param sha256 SHA-256 of the file content if the writer is hashing, null otherwise
+         */
+        void onEntryWritten(long size, long crc32, @Nullable byte[] sha256) throws IOException;
+    }
+
+    /**
+     * Size, CRC32 and SHA-256 of entry data, as computed from the bytes read.
+     */
+    static class EntryDigest {
+        final long size;
+        final long crc32;
+        final byte[] sha256;
+
+        EntryDigest(long size, long crc32, byte[] sha256) {
+            this.size = size;
+            this.crc32 = crc32;
+            this.sha256 = sha256;
+        }
+    }
+
+    /**
+     * A pooled direct buffer together with the number of entry bytes it currently holds. A chunk
+     * that is not full is the last one of its entry.
+     */
+    private static class Chunk {
+        final ByteBuffer buffer;
+        final BlockingQueue<Chunk> pool;
+        int length;
+        /** CRC32 of the entry data up to and including this chunk. */
+        long crc32;
+        /** SHA-256 of the entry data, only set on the last chunk of a hashed entry. */
+        byte[] sha256;
+
+        Chunk(ByteBuffer buffer, BlockingQueue<Chunk> pool) {
+            this.buffer = buffer;
+            this.pool = pool;
+        }
+
+        boolean isLast() {
+            return length < buffer.capacity();
+        }
+
+        void recycle() {
+            pool.add(this);
+        }
+    }
+}
@@ -0,0 +1,259 @@
+package com.zomdroid;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Locale;
+import java.util.zip.CRC32;
+
+/**
+ * Content addressed store of game files shared by all instances. A blob is named after the
+ * SHA-256 of its content, computed from the bytes that were actually written, and instance trees
+ * hold hardlinks to it. Blobs are grouped in directories named after their size and CRC32, the
+ * identity {@link InstallManifest} and the zip central directory use, which only tells whether
+ * hashing an entry to look for its blob is worth it. A file is never linked to a blob on its
+ * CRC32 alone.
+ * <p>
+ * The filesystem link count is the reference count: a blob whose only link is the store itself is
+ * no longer used by any instance and is removed by {@link #prune()}.
+ * <p>
+ * Linked files share their content, so game files must not be modified in place once they are
+ * in the store. Installers replace a file instead of writing through it, and files opened for
+ * writing through {@link AppStorageProvider} get their own copy first, see {@link #unshare}.
+ * A blob found damaged through one of its links is evicted, see {@link #evict}.
+ * <p>
+ * Store changes are serialized, so {@link #prune()} never deletes a blob that is being linked.
+ */
+public class BlobStore {
+    private static final String LOG_TAG = BlobStore.class.getName();
+    private static final String BLOBS_DIR_NAME = "blobs";
+    private static final Object lock = new Object();
+
+    private final File rootDir;
+
+    BlobStore(@NonNull File rootDir) {
+        this.rootDir = rootDir;
+    }
+
+    @NonNull
+    public static BlobStore open() {
+        return new BlobStore(new File(AppStorage.requireSingleton().getHomePath() + "/" + BLOBS_DIR_NAME));
+    }
+
+    /**
+     * Empty files are never stored, linking them would save nothing.
+     */
+    static boolean isStorable(long size) {
+        return size > 0;
+    }
+
+    /**
+     * Whether the store holds any blob with this size and CRC32. Only then can hashing an entry
+     * before extracting it find a blob to link.
+     */
+    boolean hasCandidates(long size, long crc32) {
+        return isStorable(size) && getCandidateDir(size, crc32).isDirectory();
+    }
+
+    /**
+     * Creates {@code file} as a hardlink to the blob with this content. Returns false if the store
+     * doesn't have it, in which case the file has to be extracted.
+     */
+    boolean link(long size, long crc32, @NonNull byte[] sha256, @NonNull File file) throws IOException {
+        if (!isStorable(size))
+            return false;
+        File blob = getBlob(size, crc32, sha256);
+        synchronized (lock) {
+            if (!blob.isFile() || blob.length() != size)
+                return false;
+            File parent = file.getParentFile();
+            if (parent != null)
+                FileUtils.makeDirs(parent);
+            file.delete();
+            try {
+                Files.createLink(file.toPath(), blob.toPath());
+                return true;
+            } catch (NoSuchFileException e) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Makes the files of an installed tree share their content with the store. Files that are not
+     * linked yet are hashed from disk and only stored if they still match their record.
+     */
+    void addAll(@NonNull String destPath, @NonNull InstallManifest manifest,
+                TaskProgressListener taskProgressListener) throws IOException {
+        byte[] buffer = new byte[64 * 1024];
+        MessageDigest sha256 = newSha256();
+        CRC32 crc32 = new CRC32();
+        for (String path : manifest.getPaths()) {
+            FileUtils.throwIfCancelled(taskProgressListener);
+            InstallManifest.Record record = manifest.get(path);
+            File file = new File(destPath, path);
+            if (!isStorable(record.size) || !file.isFile() || file.length() != record.size)
+                continue;
+            // already added while extracting, or shared some other way
+            if (getLinkCount(file) > 1)
+                continue;
+            sha256.reset();
+            crc32.reset();
+            try (InputStream inStream = new FileInputStream(file)) {
+                int bytesRead;
+                while ((bytesRead = inStream.read(buffer)) != -1) {
+                    sha256.update(buffer, 0, bytesRead);
+                    crc32.update(buffer, 0, bytesRead);
+                }
+            }
+            if (crc32.getValue() != record.crc32) {
+                Log.w(LOG_TAG, "not storing " + file + ", it doesn't match its manifest record");
+                continue;
+            }
+            add(file, record.size, record.crc32, sha256.digest());
+        }
+    }
+
+    /**
+     * Shares {@code file} with the store. Its size, CRC32 and SHA-256 must have been computed from
+     * the bytes in it. If the store doesn't have that content yet, the file becomes its blob,
+     * otherwise the file is replaced with a link to the stored blob.
+     */
+    void add(@NonNull File file, long size, long crc32, @NonNull byte[] sha256) throws IOException {
+        if (!isStorable(size))
+            return;
+        File blob = getBlob(size, crc32, sha256);
+        synchronized (lock) {
+            if (file.length() != size)
+                return;
+            if (!blob.isFile()) {
+                FileUtils.makeDirs(blob.getParentFile());
+                try {
+                    Files.createLink(blob.toPath(), file.toPath());
+                    return;
+                } catch (FileAlreadyExistsException ignored) {
+                    // another install added the same blob first
+                }
+            }
+            if (Files.isSameFile(blob.toPath(), file.toPath()))
+                return;
+            // link next to the file and rename over it, so the file is never missing
+            File tmpFile = new File(file.getPath() + ".link");
+            tmpFile.delete();
+            Files.createLink(tmpFile.toPath(), blob.toPath());
+            Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        }
+    }
+
+    /**
+     * Removes the blob that {@code file} is a link to, for a file that failed verification
+     * against this size and CRC32. Its content is damaged then, and linking it again would only
+     * spread the damage. Instances that still link to it keep their copy.
+     */
+    void evict(@NonNull File file, long size, long crc32) {
+        synchronized (lock) {
+            File[] blobs = getCandidateDir(size, crc32).listFiles();
+            if (blobs == null || !file.isFile())
+                return;
+            for (File blob : blobs) {
+                try {
+                    if (!Files.isSameFile(blob.toPath(), file.toPath()))
+                        continue;
+                } catch (IOException e) {
+                    continue;
+                }
+                if (blob.delete())
+                    Log.w(LOG_TAG, "evicted damaged blob " + blob.getName());
+                return;
+            }
+        }
+    }
+
+    /**
+     * Gives {@code file} its own copy of its content if it is linked, so it can be written without
+     * changing the store and every other instance that links to the same blob. The copy is made
+     * next to the file and renamed over it.
+     */
+    static void unshare(@NonNull File file) throws IOException {
+        if (!file.isFile() || getLinkCount(file) <= 1)
+            return;
+        File tmpFile = new File(file.getPath() + ".unshare");
+        Files.copy(file.toPath(), tmpFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Deletes every blob that no instance links to anymore, and the directories left empty by
+     * that. Meant to run after instance trees have been purged.
+     */
+    public void prune() {
+        synchronized (lock) {
+            File[] buckets = rootDir.listFiles();
+            if (buckets == null)
+                return;
+            int removedCount = 0;
+            for (File bucket : buckets) {
+                File[] candidateDirs = bucket.listFiles();
+                if (candidateDirs == null)
+                    continue;
+                for (File candidateDir : candidateDirs) {
+                    File[] blobs = candidateDir.listFiles();
+                    if (blobs == null)
+                        continue;
+                    for (File blob : blobs) {
+                        try {
+                            if (getLinkCount(blob) <= 1 && blob.delete())
+                                removedCount++;
+                        } catch (IOException e) {
+                            Log.w(LOG_TAG, "failed to stat " + blob, e);
+                        }
+                    }
+                    candidateDir.delete();
+                }
+                bucket.delete();
+            }
+            if (removedCount > 0)
+                Log.i(LOG_TAG, "pruned " + removedCount + " unused blobs");
+        }
+    }
+
+    @NonNull
+    static MessageDigest newSha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // every Java platform is required to implement it
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static int getLinkCount(File file) throws IOException {
+        return (Integer) Files.getAttribute(file.toPath(), "unix:nlink");
+    }
+
+    private File getCandidateDir(long size, long crc32) {
+        String crc32Hex = String.format(Locale.ROOT, "%08x", crc32);
+        return new File(rootDir, crc32Hex.substring(0, 2) + "/" + crc32Hex + "-" + size);
+    }
+
+    private File getBlob(long size, long crc32, byte[] sha256) {
+        StringBuilder name = new StringBuilder(sha256.length * 2);
+        for (byte b : sha256) {
+            name.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return new File(getCandidateDir(size, crc32), name.toString());
+    }
+}
@@ -0,0 +1,168 @@
+package com.zomdroid;
+
+import android.app.ActivityManager;
+import android.content.Context;
+
+import androidx.annotation.NonNull;
+
+import org.apache.commons.compress.compressors.lz4.FramedLZ4CompressorInputStream;
+import org.apache.commons.compress.compressors.xz.XZCompressorInputStream;
+import org.apache.commons.io.IOUtils;
+import org.tukaani.xz.ArrayCache;
+import org.tukaani.xz.XZInputStream;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Compression of a tar bundle, detected from its leading magic bytes so bundles can be
+ * recompressed without touching the installer. Framed LZ4 decodes several times faster than XZ
+ * at the cost of a larger APK.
+ */
+enum BundleCodec {
+    XZ,
+    LZ4_FRAMED,
+    NONE;
+
+    private static final int SIGNATURE_LENGTH = 6;
+    /** Bundles are decoded concurrently, each decoder gets a share of the memory. */
+    private static final int CONCURRENT_DECODERS = 3;
+
+    // dummy until configureXzMemory has run, XZ dictionaries are then kept across streams instead of reallocated
+    private static volatile ArrayCache xzArrayCache = ArrayCache.getDummyCache();
+    // -1 leaves decoding unlimited until configureXzMemory has run
+    private static volatile int xzMemoryLimitKiB = -1;
+
+    /**
+     * Derives the XZ decoder memory limit and the size of the decoder array cache from the heap
+     * limit and the memory currently available on the device. Only the first call in a process
+     * has an effect.
+     */
+    static void configureXzMemory(@NonNull Context context) {
+        if (xzMemoryLimitKiB >= 0)
+            return;
+        long available = Runtime.getRuntime().maxMemory();
+        ActivityManager activityManager = (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+        if (activityManager != null) {
+            ActivityManager.MemoryInfo memoryInfo = new ActivityManager.MemoryInfo();
+            activityManager.getMemoryInfo(memoryInfo);
+            available = Math.min(available, memoryInfo.availMem);
+        }
+        long limit = getXzMemoryLimit(available);
+        xzArrayCache = new BoundedArrayCache(limit);
+        xzMemoryLimitKiB = (int) Math.min(Integer.MAX_VALUE, limit / 1024);
+    }
+
+    /**
+     * The limit is a ceiling: a bundle whose decoder needs more than its share of
+     * {@code availableBytes} fails to decode instead of pushing the device into low memory.
+     */
+    static long getXzMemoryLimit(long availableBytes) {
+        return Math.max(0, availableBytes / CONCURRENT_DECODERS);
+    }
+
+    /**
+     * Peeks at the start of {@code inStream}, which must support mark and reset, and leaves it
+     * positioned where it was.
+     */
+    @NonNull
+    static BundleCodec detect(@NonNull InputStream inStream) throws IOException {
+        if (!inStream.markSupported())
+            throw new IllegalArgumentException("stream does not support mark");
+        byte[] signature = new byte[SIGNATURE_LENGTH];
+        inStream.mark(SIGNATURE_LENGTH);
+        int length = IOUtils.read(inStream, signature);
+        inStream.reset();
+        if (XZCompressorInputStream.matches(signature, length))
+            return XZ;
+        if (FramedLZ4CompressorInputStream.matches(signature, length))
+            return LZ4_FRAMED;
+        return NONE;
+    }
+
+    /**
+     * XZ decoders take their large arrays from a process-wide cache and return them once the
+     * stream ends or is closed, so the returned stream should be closed by the caller. Decoders
+     * running at the same time allocate their own arrays once the cache is empty.
+     */
+    @NonNull
+    InputStream decode(@NonNull InputStream inStream) throws IOException {
+        switch (this) {
+            case XZ:
+                return new XZInputStream(inStream, xzMemoryLimitKiB, xzArrayCache);
+            case LZ4_FRAMED:
+                return new FramedLZ4CompressorInputStream(inStream, true);
+            default:
+                return inStream;
+        }
+    }
+
+    /**
+     * Keeps returned arrays for reuse as long as they fit in a byte budget, arrays returned beyond
+     * it are left to the garbage collector. Arrays are only handed out again for the exact size
+     * they were made for, which is what repeated streams with the same dictionary size ask for.
+     */
+    static class BoundedArrayCache extends ArrayCache {
+        private final long maxBytes;
+        private final ArrayList<byte[]> byteArrays = new ArrayList<>();
+        private final ArrayList<int[]> intArrays = new ArrayList<>();
+        private long cachedBytes;
+
+        BoundedArrayCache(long maxBytes) {
+            this.maxBytes = maxBytes;
+        }
+
+        @Override
+        public synchronized byte[] getByteArray(int size, boolean fillWithZeros) {
+            for (int i = byteArrays.size() - 1; i >= 0; i--) {
+                byte[] array = byteArrays.get(i);
+                if (array.length != size)
+                    continue;
+                byteArrays.remove(i);
+                cachedBytes -= size;
+                if (fillWithZeros)
+                    Arrays.fill(array, (byte) 0);
+                return array;
+            }
+            return new byte[size];
+        }
+
+        @Override
+        public synchronized void putArray(byte[] array) {
+            if (cachedBytes + array.length > maxBytes)
+                return;
+            byteArrays.add(array);
+            cachedBytes += array.length;
+        }
+
+        @Override
+        public synchronized int[] getIntArray(int size, boolean fillWithZeros) {
+            for (int i = intArrays.size() - 1; i >= 0; i--) {
+                int[] array = intArrays.get(i);
+                if (array.length != size)
+                    continue;
+                intArrays.remove(i);
+                cachedBytes -= (long) size * Integer.BYTES;
+                if (fillWithZeros)
+                    Arrays.fill(array, 0);
+                return array;
+            }
+            return new int[size];
+        }
+
+        @Override
+        public synchronized void putArray(int[] array) {
+            long bytes = (long) array.length * Integer.BYTES;
+            if (cachedBytes + bytes > maxBytes)
+                return;
+            intArrays.add(array);
+            cachedBytes += bytes;
+        }
+
+        synchronized long getCachedBytes() {
+            return cachedBytes;
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package com.zomdroid;
+
+import static android.content.Context.MODE_PRIVATE;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.reflect.TypeToken;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+
+/**
+ * Resolves bundle hashes without reading the bundles themselves. Hashes come from the manifest
+ * generated at build time, or else from a cache that stays valid for as long as the APK file is
+ * unchanged. A full CRC32 scan of the asset is only done on a cache miss or in verify mode.
+ */
+class BundleFingerprints {
+    private static final String LOG_TAG = BundleFingerprints.class.getName();
+
+    private final Context context;
+    private final SharedPreferences sharedPreferences;
+    private final Gson gson = JsonUtils.getGson();
+    private final HashMap<String, Long> manifestHashes;
+    private final String apkKey;
+    private Cache cache;
+    private boolean isCacheDirty;
+
+    BundleFingerprints(@NonNull Context context) {
+        this.context = context;
+        this.sharedPreferences = context.getSharedPreferences(C.shprefs.NAME, MODE_PRIVATE);
+        this.manifestHashes = loadManifest();
+        this.apkKey = buildApkKey(context);
+
+        Cache savedCache = null;
+        String json = sharedPreferences.getString(C.shprefs.keys.BUNDLES_FINGERPRINTS, null);
+        if (json != null) {
+            try {
+                savedCache = gson.fromJson(json, Cache.class);
+            } catch (JsonParseException e) {
+                Log.w(LOG_TAG, "Discarding malformed fingerprint cache", e);
+            }
+        }
+        if (savedCache == null || savedCache.hashes == null || !apkKey.equals(savedCache.apkKey)) {
+            savedCache = new Cache(apkKey);
+        }
+        this.cache = savedCache;
+    }
+
+    /**
+     * Returns the CRC32 of the bundle asset. With {@code verify} set, the asset is always rehashed
+     * and the result replaces any cached value.
+     */
+    long get(@NonNull String assetPath, boolean verify) throws IOException {
+        if (!verify) {
+            Long hash = lookup(assetPath);
+            if (hash != null)
+                return hash;
+        }
+        // hashed without holding the lock, so several bundles can be hashed at once
+        long hash = FileUtils.generateCRC32ForAsset(context, assetPath);
+        store(assetPath, hash);
+        return hash;
+    }
+
+    private synchronized Long lookup(String assetPath) {
+        Long hash = manifestHashes.get(assetPath);
+        return hash != null ? hash : cache.hashes.get(assetPath);
+    }
+
+    private synchronized void store(String assetPath, long hash) {
+        cache.hashes.put(assetPath, hash);
+        isCacheDirty = true;
+    }
+
+    synchronized void saveToDisk() {
+        if (!isCacheDirty)
+            return;
+        sharedPreferences.edit()
+                .putString(C.shprefs.keys.BUNDLES_FINGERPRINTS, gson.toJson(cache))
+                .apply();
+        isCacheDirty = false;
+    }
+
+    private HashMap<String, Long> loadManifest() {
+        try (InputStream inStream = context.getAssets().open(C.assets.BUNDLES_MANIFEST);
+             Reader reader = new InputStreamReader(inStream, StandardCharsets.UTF_8)) {
+            Type mapType = new TypeToken<HashMap<String, Long>>(){}.getType();
+            HashMap<String, Long> hashes = gson.fromJson(reader, mapType);
+            if (hashes != null)
+                return hashes;
+        } catch (IOException | JsonParseException e) {
+            Log.w(LOG_TAG, "Bundles manifest is unavailable, falling back to cached hashes");
+        }
+        return new HashMap<>();
+    }
+
+    private static String buildApkKey(Context context) {
+        File apk = new File(context.getPackageResourcePath());
+        return apk.getAbsolutePath() + ":" + apk.length() + ":" + apk.lastModified();
+    }
+
+    private static class Cache {
+        String apkKey;
+        HashMap<String, Long> hashes = new HashMap<>();
+
+        Cache(String apkKey) {
+            this.apkKey = apkKey;
+        }
+    }
+}
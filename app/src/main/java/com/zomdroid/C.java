@@ -20,19 +20,24 @@ public class C {
 
     public static class assets {
         public static final String BUNDLES = "bundles";
-        public static final String BUNDLES_JRE = BUNDLES + "/jre.tar.xz";
-        public static final String BUNDLES_LIBS = BUNDLES + "/libs.tar.xz";
+        // tar names, the shipped assets may carry a compression suffix such as .xz or .lz4
+        public static final String BUNDLES_JRE = BUNDLES + "/jre.tar";
+        public static final String BUNDLES_LIBS = BUNDLES + "/libs.tar";
         public static final String BUNDLES_JARS = BUNDLES + "/jars.tar";
+        public static final String BUNDLES_MANIFEST = BUNDLES + "/manifest.json";
         public static final String DEFAULT_CONTROLS = "default_controls.json";
     }
     public static class shprefs {
         public static final String NAME = "com.zomdroid.PREFS";
         public static class keys {
             public static final String LAUNCHER_VERSION = "launcherVersion";
+            // legacy JSON control layout, only read to migrate it to a layout file
             public static final String INPUT_CONTROLS = "inputControls";
+            // legacy list of all instances, only read to migrate it to per-instance records
             public static final String GAME_INSTANCES = "gameInstances";
             public static final String LAUNCHER_PREFS = "launcherPrefs";
             public static final String INSTALLED_BUNDLES = "installedBundles";
+            public static final String BUNDLES_FINGERPRINTS = "bundlesFingerprints";
             public static final String ARE_DEPENDENCIES_INSTALLED = "areDependenciesInstalled";
             public static final String IS_LEGAL_NOTICE_ACCEPTED = "isLegalNoticeAccepted";
         }
@@ -29,6 +29,8 @@ import com.zomdroid.databinding.ActivityControlsEditorBinding;
 import com.zomdroid.databinding.ElementBindingFieldBinding;
 
 public class ControlsEditorActivity extends AppCompatActivity {
+    /** Name of the control layout to edit, the default layout if missing. */
+    public static final String EXTRA_LAYOUT_NAME = "com.zomdroid.ControlsEditorActivity.EXTRA_LAYOUT_NAME";
     private ActivityControlsEditorBinding binding;
 
     private TextWatcher controlElementTextWatcher = null;
@@ -51,6 +53,7 @@ public class ControlsEditorActivity extends AppCompatActivity {
         setRequestedOrientation(ActivityInfo.SCREEN_ORIENTATION_SENSOR_LANDSCAPE);
 
         binding.inputControlsV.setEditMode(true);
+        binding.inputControlsV.setLayoutName(getIntent().getStringExtra(EXTRA_LAYOUT_NAME));
         binding.inputControlsV.setBackgroundColor(0xFF232323);
 
         binding.inputControlsV.setElementSettingsController(new InputControlsView.ElementSettingsController() {
@@ -0,0 +1,301 @@
+package com.zomdroid;
+
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Checks and extracts the dependency bundles concurrently, one worker per bundle, and reports
+ * their combined progress in bytes. Each installed tree has an
+ * {@link InstallManifest} stored next to it, so an updated bundle only rewrites the files that
+ * changed and removes the ones it no longer contains.
+ */
+class DependenciesInstaller {
+    private static final Bundle[] BUNDLES = {
+            new Bundle(C.assets.BUNDLES_JRE, C.deps.JRE),
+            new Bundle(C.assets.BUNDLES_LIBS, C.deps.LIBS),
+            new Bundle(C.assets.BUNDLES_JARS, C.deps.JARS)
+    };
+
+    private static final String MANIFEST_SUFFIX = ".manifest";
+
+    private final Context context;
+    private final TaskProgressListener taskProgressListener;
+    private final BundleFingerprints bundleFingerprints;
+    private final boolean isVerifyMode;
+    private final long[] bundlesSize = new long[BUNDLES.length];
+    private final long[] bundlesBytesDone = new long[BUNDLES.length];
+    private final double[] bundlesBytesPerSecond = new double[BUNDLES.length];
+    private int verifiedFileCount;
+    private long verifiedBytes;
+    private long verificationMs;
+    private int repairedFileCount;
+
+    /**
+     * In verify mode every bundle is rehashed in full instead of trusting the fingerprints from
+     * the bundles manifest or the fingerprint cache, and every up to date tree is checked against
+     * its manifest with damaged files re-extracted.
+     */
+    DependenciesInstaller(@NonNull Context context, TaskProgressListener taskProgressListener, boolean isVerifyMode) {
+        this.context = context;
+        this.taskProgressListener = taskProgressListener;
+        this.bundleFingerprints = new BundleFingerprints(context);
+        this.isVerifyMode = isVerifyMode;
+        BundleCodec.configureXzMemory(context);
+    }
+
+    /**
+     * Installs every bundle whose hash differs from {@code installedHashes}. Returns the hashes of
+     * all bundles once each of them has been installed successfully. If any bundle fails, the
+     * remaining ones are still awaited before the first failure is rethrown.
+     */
+    @NonNull
+    HashMap<String, Long> install(@NonNull Map<String, Long> installedHashes) throws IOException {
+        int threads = Math.max(1, Math.min(BUNDLES.length, Runtime.getRuntime().availableProcessors()));
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            String[] assetPaths = resolveAssetPaths();
+            for (int i = 0; i < BUNDLES.length; i++) {
+                bundlesSize[i] = queryAssetSize(assetPaths[i]);
+            }
+            ArrayList<Future<Long>> futures = new ArrayList<>();
+            for (int i = 0; i < BUNDLES.length; i++) {
+                final int index = i;
+                futures.add(executor.submit(() -> installBundle(index, assetPaths[index], installedHashes.get(assetPaths[index]))));
+            }
+
+            HashMap<String, Long> bundlesHashes = new HashMap<>();
+            IOException failure = null;
+            for (int i = 0; i < BUNDLES.length; i++) {
+                try {
+                    bundlesHashes.put(assetPaths[i], awaitBundle(futures.get(i)));
+                } catch (IOException e) {
+                    if (failure == null)
+                        failure = e;
+                }
+            }
+            bundleFingerprints.saveToDisk();
+            if (failure != null)
+                throw failure;
+            return bundlesHashes;
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private long installBundle(int index, String assetPath, Long installedHash) throws IOException {
+        Bundle bundle = BUNDLES[index];
+        FileUtils.throwIfCancelled(taskProgressListener);
+        long hash = bundleFingerprints.get(assetPath, isVerifyMode);
+        String installPath = AppStorage.requireSingleton().getHomePath() + "/" + bundle.installPath;
+        File manifestFile = new File(installPath + MANIFEST_SUFFIX);
+        InstallManifest installedManifest = InstallManifest.readFromFile(manifestFile);
+        if (installedHash == null || installedHash != hash) {
+            extractBundle(index, assetPath, installPath, installedManifest, null);
+        } else if (isVerifyMode) {
+            // a tree without a manifest can't be checked file by file, so it is reinstalled in full
+            if (installedManifest == null)
+                extractBundle(index, assetPath, installPath, null, null);
+            else
+                verifyBundle(index, assetPath, installPath, installedManifest);
+        }
+        onBundleProgress(index, bundlesSize[index], 0);
+        return hash;
+    }
+
+    /**
+     * Hashes the installed tree against its manifest and re-extracts only the damaged files.
+     */
+    private void verifyBundle(int index, String assetPath, String installPath,
+                              InstallManifest installedManifest) throws IOException {
+        TaskProgressListener cancellationListener = new TaskProgressListener() {
+            @Override
+            public void onProgressUpdate(String message, int progress, int progressMax) {
+            }
+
+            @Override
+            public boolean isCancelled() {
+                return taskProgressListener != null && taskProgressListener.isCancelled();
+            }
+        };
+        InstallVerifier.Result result = InstallVerifier.verify(installPath, installedManifest, cancellationListener);
+        onBundleVerified(result);
+        if (!result.isIntact())
+            extractBundle(index, assetPath, installPath, installedManifest, new HashSet<>(result.damagedPaths));
+    }
+
+    /**
+     * Extracts the bundle over {@code installedManifest}'s tree, or into a fresh directory when it
+     * is null. With {@code damagedPaths} set, only those files are written.
+     */
+    private void extractBundle(int index, String assetPath, String installPath,
+                               @Nullable InstallManifest installedManifest,
+                               @Nullable Set<String> damagedPaths) throws IOException {
+        File installDir = new File(installPath);
+        File manifestFile = new File(installPath + MANIFEST_SUFFIX);
+        if (installedManifest == null && installDir.exists())
+            FileUtils.deleteDirectory(installDir);
+        TaskProgressListener bundleProgressListener = new TaskProgressListener() {
+            @Override
+            public void onProgressUpdate(String message, int progress, int progressMax) {
+            }
+
+            @Override
+            public void onTransferProgress(long bytesDone, long bytesTotal, double bytesPerSecond, long etaMs) {
+                onBundleProgress(index, bytesDone, bytesPerSecond);
+            }
+
+            @Override
+            public boolean isCancelled() {
+                return taskProgressListener != null && taskProgressListener.isCancelled();
+            }
+        };
+        InstallManifest manifest;
+        try (InputStream bundleInStream = context.getAssets().open(assetPath)) {
+            if (damagedPaths != null)
+                manifest = FileUtils.repairTarBundleOnDisk(bundleInStream, installPath, bundleProgressListener,
+                        bundlesSize[index], installedManifest, damagedPaths);
+            else
+                manifest = FileUtils.extractTarBundleToDisk(bundleInStream, installPath, bundleProgressListener,
+                        bundlesSize[index], installedManifest);
+        } catch (TaskCancelledException e) {
+            // a tree with a manifest is repaired by the next update, a fresh one would only be half there
+            if (installedManifest == null)
+                FileUtils.deleteDirectory(installDir);
+            throw e;
+        }
+        if (damagedPaths != null)
+            onBundleRepaired(damagedPaths.size());
+        if (installedManifest != null)
+            FileUtils.deleteStaleFiles(installPath, installedManifest, manifest);
+        manifest.writeToFile(manifestFile);
+    }
+
+    private synchronized void onBundleVerified(InstallVerifier.Result result) {
+        verifiedFileCount += result.fileCount;
+        verifiedBytes += result.bytesVerified;
+        verificationMs = Math.max(verificationMs, result.elapsedMs);
+    }
+
+    private synchronized void onBundleRepaired(int fileCount) {
+        repairedFileCount += fileCount;
+    }
+
+    /**
+     * Number of installed files checked in verify mode, 0 otherwise.
+     */
+    synchronized int getVerifiedFileCount() {
+        return verifiedFileCount;
+    }
+
+    synchronized int getRepairedFileCount() {
+        return repairedFileCount;
+    }
+
+    /**
+     * Hashing throughput of verify mode. Bundles are verified side by side, so this is the
+     * combined rate over the longest verification.
+     */
+    synchronized double getVerifiedBytesPerSecond() {
+        return verificationMs <= 0 ? 0 : verifiedBytes * 1000.0 / verificationMs;
+    }
+
+    /**
+     * Bundles are looked up by their tar name, so "jre.tar", "jre.tar.xz" or "jre.tar.lz4" is
+     * picked up alike and the codec is left to {@link BundleCodec#detect}.
+     */
+    private String[] resolveAssetPaths() throws IOException {
+        String[] assets = context.getAssets().list(C.assets.BUNDLES);
+        String[] assetPaths = new String[BUNDLES.length];
+        for (int i = 0; i < BUNDLES.length; i++) {
+            String tarName = BUNDLES[i].assetPath.substring(C.assets.BUNDLES.length() + 1);
+            assetPaths[i] = BUNDLES[i].assetPath;
+            if (assets == null)
+                continue;
+            for (String asset : assets) {
+                if (asset.equals(tarName) || asset.startsWith(tarName + ".")) {
+                    assetPaths[i] = C.assets.BUNDLES + "/" + asset;
+                    break;
+                }
+            }
+        }
+        return assetPaths;
+    }
+
+    /**
+     * Size of the bundle as stored in the APK, 0 if it is compressed there and can't be known
+     * without reading it. Every bundle extension is listed in noCompress for that reason.
+     */
+    private long queryAssetSize(String assetPath) {
+        try (AssetFileDescriptor assetFd = context.getAssets().openFd(assetPath)) {
+            return assetFd.getLength();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Bundles that are up to date count as done, so the total stays the same whichever bundles
+     * actually need installing. The combined size is only known if every bundle size is.
+     */
+    private synchronized void onBundleProgress(int index, long bytesDone, double bytesPerSecond) {
+        if (taskProgressListener == null)
+            return;
+        bundlesBytesDone[index] = bytesDone;
+        bundlesBytesPerSecond[index] = Math.max(0, bytesPerSecond);
+        long done = 0;
+        long total = 0;
+        double rate = 0;
+        for (int i = 0; i < BUNDLES.length; i++) {
+            done += bundlesBytesDone[i];
+            rate += bundlesBytesPerSecond[i];
+            if (total >= 0)
+                total = bundlesSize[i] > 0 ? total + bundlesSize[i] : -1;
+        }
+        long etaMs = -1;
+        if (total > 0 && rate > 0)
+            etaMs = (long) (Math.max(0, total - done) * 1000 / rate);
+        taskProgressListener.onTransferProgress(done, Math.max(0, total), rate > 0 ? rate : -1, etaMs);
+    }
+
+    private static long awaitBundle(Future<Long> future) throws IOException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException)
+                throw (IOException) cause;
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            throw new IOException(cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted while installing dependencies", e);
+        }
+    }
+
+    private static class Bundle {
+        final String assetPath;
+        final String installPath;
+
+        Bundle(String assetPath, String installPath) {
+            this.assetPath = assetPath;
+            this.installPath = installPath;
+        }
+    }
+}
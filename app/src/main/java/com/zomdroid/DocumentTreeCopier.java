@@ -0,0 +1,214 @@
+package com.zomdroid;
+
+import android.content.ContentResolver;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.ParcelFileDescriptor;
+import android.provider.DocumentsContract;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+
+/**
+ * Copies the files below a Storage Access Framework tree URI, so game files that are already
+ * unpacked on shared storage can be installed without zipping them first. The tree is listed up
+ * front, then files are copied by several workers that each read a document and write its
+ * destination file. Sizes and CRC32s go to the same {@link InstallJournal} and
+ * {@link InstallManifest} the archive extractors produce, so resuming and verifying work the same.
+ */
+class DocumentTreeCopier {
+    private static final int BUFFER_SIZE = 256 * 1024;
+    private static final String[] CHILD_PROJECTION = {
+            DocumentsContract.Document.COLUMN_DOCUMENT_ID,
+            DocumentsContract.Document.COLUMN_DISPLAY_NAME,
+            DocumentsContract.Document.COLUMN_MIME_TYPE,
+            DocumentsContract.Document.COLUMN_SIZE
+    };
+
+    private final ContentResolver contentResolver;
+    private final Uri treeUri;
+    private final String destPath;
+    private final TaskProgressListener taskProgressListener;
+    private final InstallJournal journal;
+    private final InstallManifest manifest = new InstallManifest();
+    private final ArrayList<Document> documents = new ArrayList<>();
+    private final AtomicInteger nextDocument = new AtomicInteger();
+    /** Set by the first worker that fails, the others stop at their next file. */
+    private final AtomicBoolean isFailed = new AtomicBoolean();
+    private ProgressMeter progressMeter;
+
+    private DocumentTreeCopier(ContentResolver contentResolver, Uri treeUri, String destPath,
+                               TaskProgressListener taskProgressListener, InstallJournal journal) {
+        this.contentResolver = contentResolver;
+        this.treeUri = treeUri;
+        this.destPath = destPath;
+        this.taskProgressListener = taskProgressListener;
+        this.journal = journal;
+    }
+
+    /**
+     * Files already listed in {@code journal} with the same size are skipped, every newly copied
+     * file is appended to it once it is on disk.
+     */
+    @NonNull
+    static InstallManifest copy(@NonNull ContentResolver contentResolver, @NonNull Uri treeUri,
+                                @NonNull String destPath, TaskProgressListener taskProgressListener,
+                                @Nullable InstallJournal journal) throws IOException {
+        return new DocumentTreeCopier(contentResolver, treeUri, destPath, taskProgressListener, journal).copy();
+    }
+
+    private InstallManifest copy() throws IOException {
+        FileUtils.makeDirs(new File(destPath));
+        long totalSize = collect();
+        progressMeter = new ProgressMeter(taskProgressListener, totalSize);
+
+        int threads = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            ArrayList<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                futures.add(executor.submit(() -> {
+                    copyNext();
+                    return null;
+                }));
+            }
+            IOException failure = null;
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    if (failure == null) {
+                        Throwable cause = e.getCause();
+                        failure = cause instanceof IOException ? (IOException) cause : new IOException(cause);
+                    }
+                } catch (InterruptedException e) {
+                    isFailed.set(true);
+                    Thread.currentThread().interrupt();
+                    if (failure == null)
+                        failure = new InterruptedIOException("interrupted while copying files");
+                }
+            }
+            if (failure != null)
+                throw failure;
+        } finally {
+            executor.shutdown();
+        }
+        progressMeter.finish();
+        return manifest;
+    }
+
+    /**
+     * Lists the tree breadth first, creating its directories in the destination. Every query is a
+     * round trip to the documents provider, so this is done once instead of per file. Returns the
+     * total size of the files that still have to be copied.
+     */
+    private long collect() throws IOException {
+        long totalSize = 0;
+        ArrayDeque<String[]> pendingDirs = new ArrayDeque<>();
+        pendingDirs.add(new String[]{DocumentsContract.getTreeDocumentId(treeUri), ""});
+        while (!pendingDirs.isEmpty()) {
+            FileUtils.throwIfCancelled(taskProgressListener);
+            String[] dir = pendingDirs.poll();
+            Uri childrenUri = DocumentsContract.buildChildDocumentsUriUsingTree(treeUri, dir[0]);
+            try (Cursor cursor = contentResolver.query(childrenUri, CHILD_PROJECTION, null, null, null)) {
+                if (cursor == null)
+                    throw new IOException("failed to list " + childrenUri);
+                while (cursor.moveToNext()) {
+                    String documentId = cursor.getString(0);
+                    String name = cursor.getString(1);
+                    // names come from the provider and must not escape the destination
+                    if (name == null || name.isEmpty() || name.contains("/") || name.equals(".") || name.equals(".."))
+                        throw new IOException("invalid file name " + name + " in " + dir[1]);
+                    String path = dir[1] + name;
+                    if (DocumentsContract.Document.MIME_TYPE_DIR.equals(cursor.getString(2))) {
+                        FileUtils.makeDirs(new File(destPath, path));
+                        pendingDirs.add(new String[]{documentId, path + "/"});
+                        continue;
+                    }
+                    long size = cursor.isNull(3) ? -1 : cursor.getLong(3);
+                    InstallJournal.Record record = journal != null && journal.isCompleted(path, -1, size)
+                            ? journal.get(path) : null;
+                    if (record != null) {
+                        manifest.put(path, record.size, record.crc32);
+                        continue;
+                    }
+                    documents.add(new Document(documentId, path));
+                    totalSize += Math.max(0, size);
+                }
+            }
+        }
+        return totalSize;
+    }
+
+    private void copyNext() throws IOException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        CRC32 crc32 = new CRC32();
+        int index;
+        try {
+            while ((index = nextDocument.getAndIncrement()) < documents.size()) {
+                if (isFailed.get())
+                    return;
+                FileUtils.throwIfCancelled(taskProgressListener);
+                Document document = documents.get(index);
+                Uri documentUri = DocumentsContract.buildDocumentUriUsingTree(treeUri, document.id);
+                ParcelFileDescriptor fileDescriptor = contentResolver.openFileDescriptor(documentUri, "r");
+                if (fileDescriptor == null)
+                    throw new FileNotFoundException("failed to open " + documentUri);
+
+                crc32.reset();
+                long size = 0;
+                File file = new File(destPath, document.path);
+                // a file left from before may be linked to a blob, replace it instead of writing through
+                file.delete();
+                try (FileInputStream inStream = new ParcelFileDescriptor.AutoCloseInputStream(fileDescriptor);
+                     FileOutputStream outStream = new FileOutputStream(file)) {
+                    long statSize = fileDescriptor.getStatSize();
+                    if (statSize > 0)
+                        FileUtils.preallocate(outStream.getFD(), statSize);
+                    int bytesRead;
+                    while ((bytesRead = inStream.read(buffer)) != -1) {
+                        FileUtils.throwIfCancelled(taskProgressListener);
+                        crc32.update(buffer, 0, bytesRead);
+                        outStream.write(buffer, 0, bytesRead);
+                        size += bytesRead;
+                        progressMeter.add(bytesRead);
+                    }
+                    // preallocation may have reserved more than the provider actually returned
+                    outStream.getChannel().truncate(size);
+                }
+                manifest.put(document.path, size, crc32.getValue());
+                if (journal != null)
+                    journal.append(document.path, -1, size, crc32.getValue());
+            }
+        } catch (IOException | RuntimeException e) {
+            isFailed.set(true);
+            throw e;
+        }
+    }
+
+    private static class Document {
+        final String id;
+        final String path;
+
+        Document(String id, String path) {
+            this.id = id;
+            this.path = path;
+        }
+    }
+}
@@ -10,8 +10,11 @@ import android.os.Environment;
 import android.provider.DocumentsContract;
 import android.provider.MediaStore;
 import android.provider.OpenableColumns;
+import android.system.ErrnoException;
+import android.system.Os;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
 import org.apache.commons.compress.archivers.ArchiveEntry;
 import org.apache.commons.compress.archivers.ArchiveInputStream;
@@ -19,83 +22,205 @@ import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
 import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
 import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
 import org.apache.commons.compress.archivers.zip.ZipArchiveInputStream;
-import org.apache.commons.compress.compressors.xz.XZCompressorInputStream;
 import org.apache.commons.io.IOUtils;
 import org.jetbrains.annotations.NotNull;
 
 import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FileDescriptor;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
+import java.util.Set;
 import java.util.zip.CRC32;
 
 public class FileUtils {
 
-    static void extractTarXzToDisk(@NonNull InputStream inStream, @NonNull String destPath,
-                                   TaskProgressListener taskProgressListener, long tarXzSize) throws IOException {
-        XZCompressorInputStream xzCompressorInStream = new XZCompressorInputStream(inStream);
-        extractTarToDisk(xzCompressorInStream, destPath, taskProgressListener, tarXzSize);
-/*        TarArchiveInputStream tarArchiveInStream = new TarArchiveInputStream(xzCompressorInStream);
-        TarArchiveEntry entry;
-        while ((entry = tarArchiveInStream.getNextEntry()) != null) {
-            extractArchiveEntry(tarArchiveInStream, entry, destPath);
-        }*/
+    /**
+     * Extracts a tar bundle compressed with any {@link BundleCodec}, detected from the stream
+     * itself. {@code bundleSize} is the size of the compressed stream, 0 if unknown. With
+     * {@code installedManifest} set, only files whose content differs are rewritten and files that
+     * are no longer in the archive are left in place, see {@link #deleteStaleFiles}.
+     */
+    static InstallManifest extractTarBundleToDisk(@NonNull InputStream inStream, @NonNull String destPath,
+                                                  TaskProgressListener taskProgressListener, long bundleSize,
+                                                  @Nullable InstallManifest installedManifest) throws IOException {
+        return extractTarBundleToDisk(inStream, destPath, taskProgressListener, bundleSize, installedManifest, null);
     }
 
-    static void extractTarToDisk(@NonNull InputStream inStream, @NonNull String destPath,
-                                 TaskProgressListener taskProgressListener, long tarSize) throws IOException {
+    /**
+     * Rewrites only the entries in {@code damagedPaths}, as found by {@link InstallVerifier}. Every
+     * other entry listed in {@code installedManifest} is skipped without touching its file.
+     */
+    static InstallManifest repairTarBundleOnDisk(@NonNull InputStream inStream, @NonNull String destPath,
+                                                 TaskProgressListener taskProgressListener, long bundleSize,
+                                                 @NonNull InstallManifest installedManifest,
+                                                 @NonNull Set<String> damagedPaths) throws IOException {
+        return extractTarBundleToDisk(inStream, destPath, taskProgressListener, bundleSize, installedManifest, damagedPaths);
+    }
+
+    private static InstallManifest extractTarBundleToDisk(InputStream inStream, String destPath,
+                                                          TaskProgressListener taskProgressListener, long bundleSize,
+                                                          @Nullable InstallManifest installedManifest,
+                                                          @Nullable Set<String> damagedPaths) throws IOException {
+        ProgressMeter progressMeter = new ProgressMeter(taskProgressListener, bundleSize);
+        BufferedInputStream bufferedInStream = new BufferedInputStream(progressMeter.wrap(inStream), 64 * 1024);
+        BundleCodec codec = BundleCodec.detect(bufferedInStream);
+        try (InputStream decodedInStream = codec.decode(bufferedInStream)) {
+            return extractTar(decodedInStream, destPath, taskProgressListener, installedManifest, damagedPaths,
+                    progressMeter);
+        }
+    }
+
+    /**
+     * Progress is reported by {@code progressMeter}, which counts the source bytes as the copy
+     * loops pull them through, so it also moves within a single large entry. With
+     * {@code damagedPaths} set, only those entries are written.
+     */
+    private static InstallManifest extractTar(InputStream inStream, String destPath,
+                                              TaskProgressListener taskProgressListener,
+                                              @Nullable InstallManifest installedManifest,
+                                              @Nullable Set<String> damagedPaths,
+                                              ProgressMeter progressMeter) throws IOException {
         TarArchiveInputStream tarArchiveInStream = new TarArchiveInputStream(new BufferedInputStream(inStream, 1024 * 1024));
-        TarArchiveEntry entry;
-        while ((entry = tarArchiveInStream.getNextEntry()) != null) {
-            extractArchiveEntry(tarArchiveInStream, entry, destPath);
-            if (taskProgressListener != null) {
-                int progress = -1;
-                if (tarSize > 0)
-                    progress = (int) ((tarArchiveInStream.getBytesRead() / (float) tarSize) * 100);
-                taskProgressListener.onProgressUpdate(null, progress, 100);
+        InstallManifest manifest = new InstallManifest();
+        try (ArchiveEntryWriter entryWriter = new ArchiveEntryWriter(taskProgressListener)) {
+            TarArchiveEntry entry;
+            while ((entry = tarArchiveInStream.getNextEntry()) != null) {
+                throwIfCancelled(taskProgressListener);
+                if (damagedPaths != null && !damagedPaths.contains(entry.getName())) {
+                    InstallManifest.Record record = installedManifest.get(entry.getName());
+                    if (record != null) {
+                        manifest.put(entry.getName(), record.size, record.crc32);
+                        continue;
+                    }
+                }
+                // a damaged file is rewritten in full, comparing it against the entry would only read it twice
+                extractArchiveEntry(tarArchiveInStream, entry, destPath, entryWriter,
+                        damagedPaths == null ? installedManifest : null, manifest, null);
             }
+            entryWriter.finish();
         }
+        progressMeter.finish();
+        return manifest;
     }
 
-    static void extractZipToDisk(@NonNull InputStream inStream, @NonNull String destPath,
-                                 TaskProgressListener taskProgressListener, long zipSize) throws IOException {
-        ZipArchiveInputStream zipArchiveInStream = new ZipArchiveInputStream(new BufferedInputStream(inStream, 1024 * 1024));
-        ZipArchiveEntry entry;
-        while ((entry = zipArchiveInStream.getNextEntry()) != null) {
-            extractArchiveEntry(zipArchiveInStream, entry, destPath);
-            if (taskProgressListener != null) {
-                int progress = -1;
-                if (zipSize > 0)
-                    progress = (int) ((zipArchiveInStream.getBytesRead() / (float) zipSize) * 100);
-                taskProgressListener.onProgressUpdate(null, progress, 100);
+    static InstallManifest extractZipToDisk(@NonNull InputStream inStream, @NonNull String destPath,
+                                            TaskProgressListener taskProgressListener, long zipSize) throws IOException {
+        return extractZipToDisk(inStream, destPath, taskProgressListener, zipSize, null);
+    }
+
+    /**
+     * Entries already listed in {@code journal} are skipped, every newly written entry is appended
+     * to it once it is on disk.
+     */
+    static InstallManifest extractZipToDisk(@NonNull InputStream inStream, @NonNull String destPath,
+                                            TaskProgressListener taskProgressListener, long zipSize,
+                                            @Nullable InstallJournal journal) throws IOException {
+        ProgressMeter progressMeter = new ProgressMeter(taskProgressListener, zipSize);
+        ZipArchiveInputStream zipArchiveInStream = new ZipArchiveInputStream(
+                new BufferedInputStream(progressMeter.wrap(inStream), 1024 * 1024));
+        InstallManifest manifest = new InstallManifest();
+        try (ArchiveEntryWriter entryWriter = new ArchiveEntryWriter(taskProgressListener)) {
+            ZipArchiveEntry entry;
+            while ((entry = zipArchiveInStream.getNextEntry()) != null) {
+                throwIfCancelled(taskProgressListener);
+                InstallJournal.Record record = journal == null ? null : journal.get(entry.getName());
+                if (record != null && !entry.isDirectory() && journal.isCompleted(entry.getName(), -1, entry.getSize())) {
+                    manifest.put(record.name, record.size, record.crc32);
+                } else {
+                    extractArchiveEntry(zipArchiveInStream, entry, destPath, entryWriter, null, manifest, journal);
+                }
             }
+            entryWriter.finish();
         }
+        progressMeter.finish();
+        return manifest;
+    }
+
+    /**
+     * Extracts a ZIP archive through its central directory, inflating entries on several threads.
+     * {@code zipChannel} must be backed by a regular file, see {@link #extractZipToDisk(InputStream,
+     * String, TaskProgressListener, long, InstallJournal)} for non-seekable sources.
+     */
+    static InstallManifest extractZipToDisk(@NonNull FileChannel zipChannel, @NonNull String destPath,
+                                            TaskProgressListener taskProgressListener,
+                                            @Nullable InstallJournal journal,
+                                            @Nullable BlobStore blobStore) throws IOException {
+        return ParallelZipExtractor.extract(zipChannel, destPath, taskProgressListener, journal, blobStore);
     }
 
-    static void extractArchiveEntry(ArchiveInputStream<?> archiveInStream, ArchiveEntry archiveEntry, String destPath) throws IOException {
+    static void extractArchiveEntry(ArchiveInputStream<?> archiveInStream, ArchiveEntry archiveEntry, String destPath,
+                                    ArchiveEntryWriter entryWriter, @Nullable InstallManifest installedManifest,
+                                    @NonNull InstallManifest manifest, @Nullable InstallJournal journal) throws IOException {
         if (!archiveInStream.canReadEntryData(archiveEntry)) {
             throw new RuntimeException("Failed to read JRE archive entry");
         }
         File file = new File(destPath + "/" + archiveEntry.getName());
         if (archiveEntry.isDirectory()) {
-            if (!file.isDirectory() && !file.mkdirs()) {
-                throw new IOException("failed to create directory " + file);
-            }
-        } else {
+            entryWriter.write(archiveInStream, archiveEntry, file, null);
+            return;
+        }
+        ArchiveEntryWriter.OnEntryWrittenListener onWritten = journal == null ? null
+                : (size, crc32, sha256) -> journal.append(archiveEntry.getName(), -1, size, crc32);
+        InstallManifest.Record record = installedManifest == null ? null : installedManifest.get(archiveEntry.getName());
+        long crc32;
+        if (record != null && record.size == archiveEntry.getSize() && file.isFile() && file.length() == record.size)
+            crc32 = entryWriter.writeIfChanged(archiveInStream, file, onWritten);
+        else
+            crc32 = entryWriter.write(archiveInStream, archiveEntry, file, onWritten);
+        manifest.put(archiveEntry.getName(), archiveEntry.getSize(), crc32);
+    }
+
+    /**
+     * Deletes files listed in {@code installedManifest} that are missing from {@code manifest},
+     * along with any directories left empty by that.
+     */
+    static void deleteStaleFiles(@NonNull String destPath, @NonNull InstallManifest installedManifest,
+                                 @NonNull InstallManifest manifest) {
+        File destDir = new File(destPath);
+        for (String path : installedManifest.getPaths()) {
+            if (manifest.get(path) != null)
+                continue;
+            File file = new File(destDir, path);
+            if (!file.delete())
+                continue;
             File parent = file.getParentFile();
-            if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
-                throw new IOException("failed to create directory " + parent);
-            }
-            try (OutputStream fileOutStream = new BufferedOutputStream(new FileOutputStream(file), 1024 * 1024)) {
-                IOUtils.copy(archiveInStream, fileOutStream);
+            while (parent != null && !parent.equals(destDir) && parent.delete()) {
+                parent = parent.getParentFile();
             }
         }
     }
 
+    static void throwIfCancelled(@Nullable TaskProgressListener taskProgressListener) throws TaskCancelledException {
+        if (taskProgressListener != null && taskProgressListener.isCancelled())
+            throw new TaskCancelledException();
+    }
+
+    /**
+     * Creates {@code dir} and its parents. Safe to call from several threads for the same path.
+     */
+    static void makeDirs(@NonNull File dir) throws IOException {
+        if (!dir.isDirectory() && !dir.mkdirs() && !dir.isDirectory()) {
+            throw new IOException("failed to create directory " + dir);
+        }
+    }
+
+    /**
+     * Reserves {@code length} bytes for the file behind {@code fd} so it is not grown block by block
+     * while being written. Filesystems that don't support it are left to grow the file as usual.
+     */
+    static void preallocate(@NonNull FileDescriptor fd, long length) {
+        if (length <= 0)
+            return;
+        try {
+            Os.posix_fallocate(fd, 0, length);
+        } catch (ErrnoException ignored) {
+        }
+    }
+
     public static long queryFileSize(ContentResolver contentResolver, Uri uri) {
         try (Cursor cursor = contentResolver.query(uri, null, null, null, null)) {
             if (cursor == null) throw new RuntimeException("cursor is null");
@@ -128,12 +253,26 @@ public class FileUtils {
     }
 
     public static boolean deleteDirectory(File directory) {
+        try {
+            return deleteDirectory(directory, null);
+        } catch (TaskCancelledException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Like {@link #deleteDirectory(File)}, but stops with {@link TaskCancelledException} once
+     * the task is cancelled, leaving the rest of the tree in place.
+     */
+    public static boolean deleteDirectory(File directory, @Nullable TaskProgressListener taskProgressListener)
+            throws TaskCancelledException {
         if (directory.exists()) {
             File[] files = directory.listFiles();
             if (files != null) {
                 for (File file : files) {
+                    throwIfCancelled(taskProgressListener);
                     if (file.isDirectory()) {
-                        deleteDirectory(file);
+                        deleteDirectory(file, taskProgressListener);
                     } else {
                         file.delete();
                     }
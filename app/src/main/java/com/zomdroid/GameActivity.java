@@ -8,25 +8,32 @@ import com.zomdroid.input.GamepadManager;
 import android.system.ErrnoException;
 import android.util.Log;
 import android.view.GestureDetector;
+import android.view.Menu;
+import android.view.MenuItem;
 import android.view.MotionEvent;
 import android.view.Surface;
 import android.view.SurfaceHolder;
 import android.view.View;
 import android.view.WindowInsets;
 import android.view.WindowInsetsController;
+import android.widget.PopupMenu;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.appcompat.app.AppCompatActivity;
 
+import com.zomdroid.input.ControlLayoutStore;
 import com.zomdroid.input.GLFWBinding;
-import com.zomdroid.input.InputNativeInterface;
+import com.zomdroid.input.InputEventBuffer;
+import com.zomdroid.input.PointerDispatcher;
 import com.zomdroid.databinding.ActivityGameBinding;
 import com.zomdroid.game.GameInstance;
 import com.zomdroid.game.GameInstancesManager;
 
 import org.fmod.FMOD;
 
+import java.util.List;
+
 /**
  * Main game activity. Handles UI, surface, and input.
  * Integrates GamepadManager for hotplug and routes all gamepad input to the native interface.
@@ -44,6 +51,37 @@ public class GameActivity extends AppCompatActivity implements GamepadManager.Ga
     // Handles all gamepad connection/disconnection and input events
     private GamepadManager gamepadManager;
 
+    private volatile float renderScale = 1.f;
+    private final LauncherPreferences.OnChangeListener preferencesChangeListener = key -> {
+        if (key == LauncherPreferences.Key.RENDER_SCALE)
+            runOnUiThread(this::applyRenderScale);
+    };
+    /** Emulates the mouse with the first pointer that goes down on the game itself. */
+    private final PointerDispatcher.Target cursorPointerTarget = new PointerDispatcher.Target() {
+        private int pointerId = -1;
+
+        @Override
+        public void onPointerDown(int pointerId, float x, float y) {
+            if (this.pointerId >= 0) return;
+            this.pointerId = pointerId;
+            InputEventBuffer.sendCursorPos(x * renderScale, y * renderScale);
+            InputEventBuffer.sendMouseButton(GLFWBinding.MOUSE_BUTTON_LEFT.code, true);
+        }
+
+        @Override
+        public void onPointerMove(int pointerId, float x, float y) {
+            if (pointerId != this.pointerId) return;
+            InputEventBuffer.sendCursorPos(x * renderScale, y * renderScale);
+        }
+
+        @Override
+        public void onPointerUp(int pointerId) {
+            if (pointerId != this.pointerId) return;
+            this.pointerId = -1;
+            InputEventBuffer.sendMouseButton(GLFWBinding.MOUSE_BUTTON_LEFT.code, false);
+        }
+    };
+
     @SuppressLint({"UnsafeDynamicallyLoadedCode", "ClickableViewAccessibility"})
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -72,6 +110,10 @@ public class GameActivity extends AppCompatActivity implements GamepadManager.Ga
         if (gameInstance == null)
             throw new RuntimeException("Game instance with name " + gameInstanceName + " not found");
 
+        binding.inputControlsV.setLayoutName(gameInstance.getControlLayoutName());
+        binding.gameControlLayoutIb.setOnClickListener(v -> showControlLayoutMenu(v, gameInstance));
+        updateControlLayoutButton();
+
         System.loadLibrary("zomdroid");
 
         System.load(AppStorage.requireSingleton().getHomePath() + "/" + gameInstance.getFmodLibraryPath() + "/libfmod.so");
@@ -131,10 +173,7 @@ public class GameActivity extends AppCompatActivity implements GamepadManager.Ga
             @Override
             public void surfaceCreated(@NonNull SurfaceHolder holder) {
                 Log.d(LOG_TAG, "Game surface created.");
-                float renderScale = LauncherPreferences.requireSingleton().getRenderScale();
-                int width = (int) (binding.gameSv.getWidth() * renderScale);
-                int height = (int) (binding.gameSv.getHeight() * renderScale);
-                binding.gameSv.getHolder().setFixedSize(width, height);
+                applyRenderScale();
             }
 
             @Override
@@ -170,53 +209,66 @@ public class GameActivity extends AppCompatActivity implements GamepadManager.Ga
             }
         });
 
-        binding.gameSv.setOnTouchListener(new View.OnTouchListener() {
-            float renderScale = LauncherPreferences.requireSingleton().getRenderScale();
-            int pointerId = -1;
-            @Override
-            public boolean onTouch(View v, MotionEvent e) { // this should be in InputControlsView
-                int action = e.getActionMasked();
-                int actionIndex = e.getActionIndex();
-                int pointerId = e.getPointerId(actionIndex);
-                switch (action) {
-                    case MotionEvent.ACTION_DOWN:
-                    case MotionEvent.ACTION_POINTER_DOWN: {
-                        float x = e.getX(actionIndex);
-                        float y = e.getY(actionIndex);
-                        this.pointerId = pointerId;
-                        InputNativeInterface.sendCursorPos(x * this.renderScale, y * this.renderScale);
-                        InputNativeInterface.sendMouseButton(GLFWBinding.MOUSE_BUTTON_LEFT.code, true);
-                        return true;
-                    }
-                    case MotionEvent.ACTION_MOVE: {
-                        if (this.pointerId < 0) return false;
-                        int pointerIndex = e.findPointerIndex(this.pointerId);
-                        if (pointerIndex < 0) {
-                            this.pointerId = -1;
-                            return false;
-                        }
-                        float x = e.getX(pointerIndex);
-                        float y = e.getY(pointerIndex);
-                        InputNativeInterface.sendCursorPos(x * this.renderScale, y * this.renderScale);
-                        return false;
-                    }
-                    case MotionEvent.ACTION_UP: {
-                        if (pointerId != this.pointerId) return false;
-                        this.pointerId = -1;
-                        InputNativeInterface.sendMouseButton(GLFWBinding.MOUSE_BUTTON_LEFT.code, false);
-                        return true;
-                    }
-                }
-                return false;
-            }
-        });
+        // touches outside of the controls drive the cursor, through the controls view while it is
+        // shown and straight from the surface while it is hidden
+        binding.inputControlsV.setSurfacePointerTarget(cursorPointerTarget);
+        PointerDispatcher surfacePointerDispatcher = new PointerDispatcher((x, y) -> cursorPointerTarget);
+        binding.gameSv.setOnTouchListener((v, e) -> surfacePointerDispatcher.onTouchEvent(e));
+
+        renderScale = LauncherPreferences.requireSingleton().getRenderScale();
+        LauncherPreferences.requireSingleton().addOnChangeListener(preferencesChangeListener);
 
         // Initial state: assume no gamepad connected until GamepadManager notifies otherwise
         isGamepadConnected = false;
     }
+
+    /**
+     * Lists the control layouts over the game. Every layout is already built by the controls
+     * view, so picking one switches instantly. The choice is remembered for the instance.
+     */
+    private void showControlLayoutMenu(View anchor, GameInstance gameInstance) {
+        PopupMenu popupMenu = new PopupMenu(this, anchor);
+        List<String> names = ControlLayoutStore.requireSingleton().getLayoutNames();
+        for (int i = 0; i < names.size(); i++) {
+            String name = names.get(i);
+            MenuItem item = popupMenu.getMenu().add(Menu.NONE, i, i,
+                    ControlLayoutStore.DEFAULT_LAYOUT_NAME.equals(name) ? getString(R.string.control_layout_default) : name);
+            item.setCheckable(true);
+            item.setChecked(name.equals(binding.inputControlsV.getLayoutName()));
+        }
+        popupMenu.setOnMenuItemClickListener(item -> {
+            String name = names.get(item.getItemId());
+            binding.inputControlsV.setLayoutName(name);
+            GameInstancesManager.requireSingleton().setInstanceControlLayout(gameInstance,
+                    ControlLayoutStore.DEFAULT_LAYOUT_NAME.equals(name) ? null : name);
+            return true;
+        });
+        popupMenu.show();
+    }
+
+    private void updateControlLayoutButton() {
+        boolean hasChoice = ControlLayoutStore.requireSingleton().getLayoutNames().size() > 1;
+        binding.gameControlLayoutIb.setVisibility(hasChoice && !isGamepadConnected ? View.VISIBLE : View.GONE);
+    }
+
+    /**
+     * Sizes the game surface buffer to the view size times the current render scale. Called when
+     * the surface is created and whenever the render scale preference changes.
+     */
+    private void applyRenderScale() {
+        if (binding == null)
+            return;
+        renderScale = LauncherPreferences.requireSingleton().getRenderScale();
+        int width = (int) (binding.gameSv.getWidth() * renderScale);
+        int height = (int) (binding.gameSv.getHeight() * renderScale);
+        if (width > 0 && height > 0)
+            binding.gameSv.getHolder().setFixedSize(width, height);
+    }
+
     @Override
     protected void onDestroy() {
         super.onDestroy();
+        LauncherPreferences.requireSingleton().removeOnChangeListener(preferencesChangeListener);
         // Unregister GamepadManager to avoid leaks
         if (gamepadManager != null) {
             gamepadManager.unregister();
@@ -231,6 +283,7 @@ public class GameActivity extends AppCompatActivity implements GamepadManager.Ga
     @Override
     public boolean dispatchKeyEvent(android.view.KeyEvent event) {
         if (gamepadManager != null && gamepadManager.handleKeyEvent(event)) {
+            InputEventBuffer.flush();
             return true;
         }
         return super.dispatchKeyEvent(event);
@@ -240,6 +293,7 @@ public class GameActivity extends AppCompatActivity implements GamepadManager.Ga
     @Override
     public boolean dispatchGenericMotionEvent(MotionEvent event) {
         if (gamepadManager != null && gamepadManager.handleMotionEvent(event)) {
+            InputEventBuffer.flush();
             return true;
         }
         return super.dispatchGenericMotionEvent(event);
@@ -252,6 +306,7 @@ public class GameActivity extends AppCompatActivity implements GamepadManager.Ga
         if (binding.inputControlsV != null) {
             binding.inputControlsV.setVisibility(View.GONE);
         }
+        updateControlLayoutButton();
     }
 
     // Called when all physical gamepads are disconnected: show the virtual controller UI
@@ -261,24 +316,25 @@ public class GameActivity extends AppCompatActivity implements GamepadManager.Ga
         if (binding.inputControlsV != null) {
             binding.inputControlsV.setVisibility(View.VISIBLE);
         }
+        updateControlLayoutButton();
     }
 
     // Forward every gamepad button event to the native input interface
     @Override
     public void onGamepadButton(int button, boolean pressed) {
-        InputNativeInterface.sendJoystickButton(button, pressed);
+        InputEventBuffer.sendJoystickButton(button, pressed);
     }
 
     // Forward every gamepad axis event to the native input interface
     @Override
     public void onGamepadAxis(int axis, float value) {
-        InputNativeInterface.sendJoystickAxis(axis, value);
+        InputEventBuffer.sendJoystickAxis(axis, value);
     }
 
     // Forward every gamepad dpad event to the native input interface
     @Override
     public void onGamepadDpad(int dpad, char state) {
-        InputNativeInterface.sendJoystickDpad(dpad, state);
+        InputEventBuffer.sendJoystickDpad(dpad, state);
     }
 
 }
\ No newline at end of file
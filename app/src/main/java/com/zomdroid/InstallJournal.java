@@ -0,0 +1,169 @@
+package com.zomdroid;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only record of archive entries that have been fully written to disk. Each line holds
+ * the entry's offset in the archive (-1 when unknown), its size, CRC32 and name. An interrupted
+ * install reopens the journal and skips every entry it lists.
+ */
+public class InstallJournal implements Closeable {
+    private static final int VERIFIED_TAIL_LENGTH = 16;
+
+    private final File destDir;
+    private final HashMap<String, Record> records = new HashMap<>();
+    private FileOutputStream journalOutStream;
+
+    private InstallJournal(File destDir) {
+        this.destDir = destDir;
+    }
+
+    /**
+     * Opens the journal in {@code journalFile}, creating it if needed. Entry names are resolved
+     * against {@code destPath}. The last records are checked against the files on disk and the
+     * journal is cut back to the first one that doesn't match.
+     */
+    @NonNull
+    public static InstallJournal open(@NonNull File journalFile, @NonNull String destPath) throws IOException {
+        InstallJournal journal = new InstallJournal(new File(destPath));
+        ArrayList<Record> records = new ArrayList<>();
+        ArrayList<Long> recordEnds = new ArrayList<>();
+        if (journalFile.isFile()) {
+            try (InputStream inStream = new BufferedInputStream(new FileInputStream(journalFile))) {
+                ByteArrayOutputStream line = new ByteArrayOutputStream();
+                long position = 0;
+                int b;
+                while ((b = inStream.read()) != -1) {
+                    position++;
+                    if (b != '\n') {
+                        line.write(b);
+                        continue;
+                    }
+                    Record record = Record.parse(line.toString(StandardCharsets.UTF_8.name()));
+                    line.reset();
+                    if (record == null)
+                        break;
+                    records.add(record);
+                    recordEnds.add(position);
+                }
+            }
+        }
+
+        int validCount = records.size();
+        for (int i = Math.max(0, records.size() - VERIFIED_TAIL_LENGTH); i < records.size(); i++) {
+            if (!journal.isOnDisk(records.get(i))) {
+                validCount = i;
+                break;
+            }
+        }
+        long validLength = validCount == 0 ? 0 : recordEnds.get(validCount - 1);
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(journalFile, "rw")) {
+            randomAccessFile.setLength(validLength);
+        }
+        for (int i = 0; i < validCount; i++) {
+            Record record = records.get(i);
+            journal.records.put(record.name, record);
+        }
+        journal.journalOutStream = new FileOutputStream(journalFile, true);
+        return journal;
+    }
+
+    /**
+     * Whether an entry with this name, offset and size has already been written. Offset or size
+     * may be -1 when the archive doesn't provide them up front.
+     */
+    public synchronized boolean isCompleted(@NonNull String name, long offset, long size) {
+        Record record = records.get(name);
+        if (record == null)
+            return false;
+        if (offset >= 0 && record.offset >= 0 && offset != record.offset)
+            return false;
+        return size < 0 || size == record.size;
+    }
+
+    @Nullable
+    public synchronized Record get(@NonNull String name) {
+        return records.get(name);
+    }
+
+    public synchronized int size() {
+        return records.size();
+    }
+
+    public synchronized void append(@NonNull String name, long offset, long size, long crc32) throws IOException {
+        Record record = new Record(name, offset, size, crc32);
+        journalOutStream.write(record.toLine().getBytes(StandardCharsets.UTF_8));
+        records.put(name, record);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (journalOutStream != null) {
+            journalOutStream.close();
+            journalOutStream = null;
+        }
+    }
+
+    private boolean isOnDisk(Record record) {
+        File file = new File(destDir, record.name);
+        if (!file.isFile() || file.length() != record.size)
+            return false;
+        CRC32 crc32 = new CRC32();
+        try (InputStream inStream = new FileInputStream(file)) {
+            byte[] buffer = new byte[64 * 1024];
+            int bytesRead;
+            while ((bytesRead = inStream.read(buffer)) != -1) {
+                crc32.update(buffer, 0, bytesRead);
+            }
+        } catch (IOException e) {
+            return false;
+        }
+        return crc32.getValue() == record.crc32;
+    }
+
+    public static class Record {
+        public final String name;
+        public final long offset;
+        public final long size;
+        public final long crc32;
+
+        Record(String name, long offset, long size, long crc32) {
+            this.name = name;
+            this.offset = offset;
+            this.size = size;
+            this.crc32 = crc32;
+        }
+
+        String toLine() {
+            return offset + "\t" + size + "\t" + crc32 + "\t" + name + "\n";
+        }
+
+        @Nullable
+        static Record parse(String line) {
+            String[] fields = line.split("\t", 4);
+            if (fields.length != 4)
+                return null;
+            try {
+                return new Record(fields[3], Long.parseLong(fields[0]), Long.parseLong(fields[1]),
+                        Long.parseLong(fields[2]));
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+    }
+}
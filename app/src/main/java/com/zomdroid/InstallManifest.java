@@ -0,0 +1,96 @@
+package com.zomdroid;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Path, size and CRC32 of every file extracted from an archive. Stored as one tab separated
+ * line per file so that trees with tens of thousands of entries load without a JSON parser.
+ */
+public class InstallManifest {
+    private final LinkedHashMap<String, Record> records = new LinkedHashMap<>();
+
+    /**
+     * Returns the manifest stored in {@code file}, or null if it is missing or unreadable.
+     */
+    @Nullable
+    public static InstallManifest readFromFile(@NonNull File file) {
+        if (!file.isFile())
+            return null;
+        InstallManifest manifest = new InstallManifest();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split("\t", 3);
+                if (fields.length != 3)
+                    return null;
+                manifest.put(fields[2], Long.parseLong(fields[0]), Long.parseLong(fields[1]));
+            }
+        } catch (IOException | NumberFormatException e) {
+            return null;
+        }
+        return manifest;
+    }
+
+    /**
+     * Writes the manifest next to {@code file} and renames it into place, so a crash never leaves
+     * a truncated manifest behind.
+     */
+    public synchronized void writeToFile(@NonNull File file) throws IOException {
+        File tmpFile = new File(file.getPath() + ".tmp");
+        try (BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tmpFile), StandardCharsets.UTF_8))) {
+            for (Map.Entry<String, Record> entry : records.entrySet()) {
+                writer.write(Long.toString(entry.getValue().size));
+                writer.write('\t');
+                writer.write(Long.toString(entry.getValue().crc32));
+                writer.write('\t');
+                writer.write(entry.getKey());
+                writer.write('\n');
+            }
+        }
+        if (!tmpFile.renameTo(file))
+            throw new IOException("failed to move " + tmpFile + " to " + file);
+    }
+
+    public synchronized void put(@NonNull String path, long size, long crc32) {
+        records.put(path, new Record(size, crc32));
+    }
+
+    @Nullable
+    public synchronized Record get(@NonNull String path) {
+        return records.get(path);
+    }
+
+    @NonNull
+    public synchronized List<String> getPaths() {
+        return new ArrayList<>(records.keySet());
+    }
+
+    public synchronized int size() {
+        return records.size();
+    }
+
+    public static class Record {
+        public final long size;
+        public final long crc32;
+
+        Record(long size, long crc32) {
+            this.size = size;
+            this.crc32 = crc32;
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package com.zomdroid;
+
+import androidx.annotation.NonNull;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+/**
+ * Checks an installed tree against the sizes and CRC32s recorded in its {@link InstallManifest}.
+ * Files are hashed on several workers that take the next path from a shared cursor, and progress
+ * is reported in bytes hashed.
+ */
+class InstallVerifier {
+    private static final int BUFFER_SIZE = 256 * 1024;
+
+    private final File destDir;
+    private final InstallManifest manifest;
+    private final TaskProgressListener taskProgressListener;
+    private final List<String> paths;
+    private final AtomicInteger nextPath = new AtomicInteger();
+    private final List<String> damagedPaths = Collections.synchronizedList(new ArrayList<>());
+    private final AtomicLong bytesHashed = new AtomicLong();
+    private ProgressMeter progressMeter;
+
+    private InstallVerifier(String destPath, InstallManifest manifest, TaskProgressListener taskProgressListener) {
+        this.destDir = new File(destPath);
+        this.manifest = manifest;
+        this.taskProgressListener = taskProgressListener;
+        this.paths = manifest.getPaths();
+    }
+
+    @NonNull
+    static Result verify(@NonNull String destPath, @NonNull InstallManifest manifest,
+                         TaskProgressListener taskProgressListener) throws IOException {
+        return new InstallVerifier(destPath, manifest, taskProgressListener).verify();
+    }
+
+    private Result verify() throws IOException {
+        long totalSize = 0;
+        for (String path : paths) {
+            totalSize += Math.max(0, manifest.get(path).size);
+        }
+        progressMeter = new ProgressMeter(taskProgressListener, totalSize);
+        long startMs = System.currentTimeMillis();
+
+        int threads = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            ArrayList<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                futures.add(executor.submit(() -> {
+                    verifyNext();
+                    return null;
+                }));
+            }
+            IOException failure = null;
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    if (failure == null) {
+                        Throwable cause = e.getCause();
+                        failure = cause instanceof IOException ? (IOException) cause : new IOException(cause);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    if (failure == null)
+                        failure = new InterruptedIOException("interrupted while verifying files");
+                }
+            }
+            if (failure != null)
+                throw failure;
+        } finally {
+            executor.shutdown();
+        }
+        progressMeter.finish();
+        ArrayList<String> damaged = new ArrayList<>(damagedPaths);
+        Collections.sort(damaged);
+        return new Result(paths.size(), damaged, bytesHashed.get(), System.currentTimeMillis() - startMs);
+    }
+
+    private void verifyNext() throws IOException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        CRC32 crc32 = new CRC32();
+        int index;
+        while ((index = nextPath.getAndIncrement()) < paths.size()) {
+            FileUtils.throwIfCancelled(taskProgressListener);
+            String path = paths.get(index);
+            InstallManifest.Record record = manifest.get(path);
+            File file = new File(destDir, path);
+            if (!file.isFile() || file.length() != record.size) {
+                damagedPaths.add(path);
+                progressMeter.skip(Math.max(0, record.size));
+                continue;
+            }
+            crc32.reset();
+            try (InputStream inStream = new FileInputStream(file)) {
+                int bytesRead;
+                while ((bytesRead = inStream.read(buffer)) != -1) {
+                    FileUtils.throwIfCancelled(taskProgressListener);
+                    crc32.update(buffer, 0, bytesRead);
+                    progressMeter.add(bytesRead);
+                    bytesHashed.addAndGet(bytesRead);
+                }
+            } catch (TaskCancelledException e) {
+                throw e;
+            } catch (IOException e) {
+                // an unreadable file is as broken as a corrupt one
+                damagedPaths.add(path);
+                continue;
+            }
+            if (crc32.getValue() != record.crc32)
+                damagedPaths.add(path);
+        }
+    }
+
+    static class Result {
+        final int fileCount;
+        /** Paths relative to the tree root, sorted. */
+        final List<String> damagedPaths;
+        /** Bytes actually hashed, files rejected by their size alone are not counted. */
+        final long bytesVerified;
+        final long elapsedMs;
+
+        Result(int fileCount, List<String> damagedPaths, long bytesVerified, long elapsedMs) {
+            this.fileCount = fileCount;
+            this.damagedPaths = damagedPaths;
+            this.bytesVerified = bytesVerified;
+            this.elapsedMs = elapsedMs;
+        }
+
+        boolean isIntact() {
+            return damagedPaths.isEmpty();
+        }
+
+        double getBytesPerSecond() {
+            return elapsedMs <= 0 ? 0 : bytesVerified * 1000.0 / elapsedMs;
+        }
+    }
+}
@@ -6,6 +6,7 @@ import android.app.NotificationManager;
 import android.app.PendingIntent;
 import android.app.Service;
 import android.content.ContentResolver;
+import android.content.Context;
 import android.content.Intent;
 import android.content.SharedPreferences;
 import android.content.pm.PackageManager;
@@ -14,6 +15,8 @@ import android.os.Binder;
 import android.os.Handler;
 import android.os.IBinder;
 import android.os.Looper;
+import android.os.ParcelFileDescriptor;
+import android.text.format.DateUtils;
 import android.util.Log;
 
 import androidx.annotation.Nullable;
@@ -30,197 +33,423 @@ import com.zomdroid.game.GameInstance;
 import com.zomdroid.game.GameInstancesManager;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-
-public class InstallerService extends Service implements TaskProgressListener {
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs installer tasks as queued jobs, each with its own id and progress stream. Extraction jobs
+ * share one lane ordered by task priority, so a dependency install jumps ahead of queued
+ * instance creations. Deletions run on a separate I/O lane alongside them.
+ */
+public class InstallerService extends Service {
     private static final String LOG_TAG = InstallerService.class.getName();
     private static final String CHANNEL_ID = "com.zomdroid.InstallerService.NOTIFICATION_CHANNEL";
     private static final int NOTIFICATION_ID = 1;
     public static final String ACTION_STARTED = "com.zomdroid.InstallerService.ACTION_STARTED";
+    public static final String ACTION_CANCEL = "com.zomdroid.InstallerService.ACTION_CANCEL";
     public static final String EXTRA_COMMAND = "com.zomdroid.InstallerService.EXTRA_COMMAND";
     public static final String EXTRA_GAME_INSTANCE_NAME = "com.zomdroid.InstallerService.EXTRA_GAME_INSTANCE_NAME";
     public static final String EXTRA_ARCHIVE_URI = "com.zomdroid.InstallerService.EXTRA_ARCHIVE_URI";
+    public static final String EXTRA_FOLDER_URI = "com.zomdroid.InstallerService.EXTRA_FOLDER_URI";
+    public static final String EXTRA_VERIFY = "com.zomdroid.InstallerService.EXTRA_VERIFY";
+    public static final String EXTRA_JOB_ID = "com.zomdroid.InstallerService.EXTRA_JOB_ID";
+    public static final String EXTRA_SOURCE_GAME_INSTANCE_NAME = "com.zomdroid.InstallerService.EXTRA_SOURCE_GAME_INSTANCE_NAME";
     private final IBinder binder = new LocalBinder();
-    private static final ExecutorService executorService = Executors.newSingleThreadExecutor();
+    private static final ThreadPoolExecutor extractionLane = new ThreadPoolExecutor(1, 1,
+            0L, TimeUnit.MILLISECONDS, new PriorityBlockingQueue<>());
+    private static final ThreadPoolExecutor ioLane = new ThreadPoolExecutor(1, 1,
+            0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>());
+    private static final AtomicInteger nextJobId = new AtomicInteger(1);
+    /** Names of the instances a job that is not done yet works on, guarded by itself. */
+    private static final HashSet<String> busyInstanceNames = new HashSet<>();
     private NotificationManagerCompat notificationManager;
     private NotificationCompat.Builder notificationBuilder;
     private final Handler handler = new Handler(Looper.getMainLooper());
-    private long lastProgressUpdateMs;
-    private final MutableLiveData<TaskState> taskState = new MutableLiveData<>();
+    private final ArrayList<Job> jobList = new ArrayList<>();
+    private final MutableLiveData<List<Job>> jobs = new MutableLiveData<>(Collections.emptyList());
 
     @Override
     public int onStartCommand(Intent intent, int flags, int startId) {
+        if (ACTION_CANCEL.equals(intent.getAction())) {
+            int jobId = intent.getIntExtra(EXTRA_JOB_ID, -1);
+            if (jobId < 0)
+                cancelAllJobs();
+            else
+                cancelJob(jobId);
+            return START_NOT_STICKY;
+        }
+
         NotificationChannel channel = new NotificationChannel(CHANNEL_ID, "GameInstallerServiceChannel", NotificationManager.IMPORTANCE_LOW);
 
         notificationManager = NotificationManagerCompat.from(this);
         notificationManager.createNotificationChannel(channel);
 
+        Task task = Task.values()[intent.getIntExtra(EXTRA_COMMAND, 0)];
+        Job job = new Job(nextJobId.getAndIncrement(), task);
+
+        startForeground(NOTIFICATION_ID, buildNotification(job.title));
+
+        synchronized (jobList) {
+            jobList.add(job);
+        }
+        onJobStateChanged(true);
+
         Intent serviceStartedBroadcast = new Intent(ACTION_STARTED);
         LocalBroadcastManager.getInstance(this).sendBroadcast(serviceStartedBroadcast);
 
-        Task task = Task.values()[intent.getIntExtra(EXTRA_COMMAND, 0)];
         switch (task) {
             case CREATE_GAME_INSTANCE: {
-                doCreateGameInstance(intent);
+                doCreateGameInstance(job, intent);
                 break;
             }
             case DELETE_GAME_INSTANCE: {
-                doDeleteGameInstance(intent);
+                doDeleteGameInstance(job, intent);
                 break;
             }
             case INSTALL_DEPENDENCIES: {
-                doInstallDependencies(intent);
+                doInstallDependencies(job, intent);
+                break;
+            }
+            case VERIFY_GAME_INSTANCE: {
+                doVerifyGameInstance(job, intent);
+                break;
+            }
+            case CLONE_GAME_INSTANCE: {
+                doCloneGameInstance(job, intent);
             }
         }
 
         return START_NOT_STICKY;
     }
 
-    private void doCreateGameInstance(Intent intent) {
-        String taskTitle = getString(R.string.dialog_title_creating_instance);
-
-        startForeground(NOTIFICATION_ID, buildNotification(taskTitle));
-
-        this.taskState.postValue(new TaskState(taskTitle, null, -1, 0, false, false));
-
+    private void doCreateGameInstance(Job job, Intent intent) {
         String gameInstanceName = intent.getStringExtra(EXTRA_GAME_INSTANCE_NAME);
         if (gameInstanceName == null) {
-            finishWithError(getString(R.string.dialog_title_failed_to_create_instance),
+            job.finishWithError(getString(R.string.dialog_title_failed_to_create_instance),
                     "Game instance name intent extra is missing");
             return;
         }
         GameInstance gameInstance = GameInstancesManager.requireSingleton().getInstanceByName(gameInstanceName);
         if (gameInstance == null) {
-            finishWithError(getString(R.string.dialog_title_failed_to_create_instance),
+            job.finishWithError(getString(R.string.dialog_title_failed_to_create_instance),
                     "Game instance with name " + gameInstanceName + " not found");
             return;
         }
 
         Uri gameFilesArchiveUri = intent.getParcelableExtra(EXTRA_ARCHIVE_URI);
-        if (gameFilesArchiveUri == null) {
-            finishWithError(getString(R.string.dialog_title_failed_to_create_instance),
-                    "Game files archive URI intent extra is missing");
+        Uri gameFilesFolderUri = intent.getParcelableExtra(EXTRA_FOLDER_URI);
+        if (gameFilesArchiveUri == null && gameFilesFolderUri == null) {
+            job.finishWithError(getString(R.string.dialog_title_failed_to_create_instance),
+                    "Game files archive or folder URI intent extra is missing");
             return;
         }
-        executorService.submit(()-> {
-            try {
-                installGameFromZip(gameInstance, gameFilesArchiveUri);
+        if (!job.claimInstances(gameInstanceName)) {
+            job.finishWithError(getString(R.string.dialog_title_failed_to_create_instance),
+                    getString(R.string.task_instance_busy, gameInstanceName));
+            return;
+        }
+        job.enqueue(() -> {
+            File journalFile = new File(gameInstance.getInstallJournalPath());
+            try (InstallJournal journal = InstallJournal.open(journalFile, gameInstance.getGamePath())) {
+                InstallManifest manifest = gameFilesArchiveUri != null
+                        ? installGameFromZip(gameInstance, gameFilesArchiveUri, journal, job)
+                        : installGameFromFolder(gameInstance, gameFilesFolderUri, journal, job);
+                manifest.writeToFile(new File(gameInstance.getInstallManifestPath()));
+            } catch (TaskCancelledException e) {
+                discardCancelledInstall(gameInstance);
+                job.finishCancelled(getString(R.string.dialog_title_instance_creation_cancelled));
+                return;
             } catch (Exception e) {
-                finishWithError(getString(R.string.dialog_title_failed_to_create_instance), e.toString());
+                job.finishWithError(getString(R.string.dialog_title_failed_to_create_instance), e.toString());
                 return;
             }
 
             GameInstancesManager.requireSingleton().setInstanceInstalled(gameInstance);
+            journalFile.delete();
 
-            finish(getString(R.string.dialog_title_instance_created), null);
-        });
+            job.finish(getString(R.string.dialog_title_instance_created), null);
+        }, () -> discardCancelledInstall(gameInstance));
     }
 
-    private void doDeleteGameInstance(Intent intent) {
-        String taskTitle = getString(R.string.dialog_title_deleting_instance);
-
-        startForeground(NOTIFICATION_ID, buildNotification(taskTitle));
-
-        this.taskState.postValue(new TaskState(taskTitle, null, -1, 0, false, false));
+    /**
+     * Removes an instance whose creation was cancelled, unless its install journal already lists
+     * files. Then the files and the journal are kept, so the installation can be resumed.
+     */
+    private void discardCancelledInstall(GameInstance gameInstance) {
+        if (new File(gameInstance.getInstallJournalPath()).length() > 0)
+            return;
+        FileUtils.deleteDirectory(new File(gameInstance.getHomePath()));
+        GameInstancesManager.requireSingleton().unregisterInstance(gameInstance);
+        releaseGameFilesFolder(gameInstance);
+    }
 
+    private void doDeleteGameInstance(Job job, Intent intent) {
         String gameInstanceName = intent.getStringExtra(EXTRA_GAME_INSTANCE_NAME);
         if (gameInstanceName == null) {
-            finishWithError(getString(R.string.dialog_title_failed_to_delete_instance),
+            job.finishWithError(getString(R.string.dialog_title_failed_to_delete_instance),
                     "Game instance name intent extra is missing");
             return;
         }
         GameInstance gameInstance = GameInstancesManager.requireSingleton().getInstanceByName(gameInstanceName);
         if (gameInstance == null) {
-            finishWithError(getString(R.string.dialog_title_failed_to_delete_instance),
+            job.finishWithError(getString(R.string.dialog_title_failed_to_delete_instance),
                     "Game instance with name " + gameInstanceName + " not found");
             return;
         }
+        if (!job.claimInstances(gameInstanceName)) {
+            job.finishWithError(getString(R.string.dialog_title_failed_to_delete_instance),
+                    getString(R.string.task_instance_busy, gameInstanceName));
+            return;
+        }
 
-        executorService.submit(()-> {
+        job.enqueue(() -> {
+            if (TrashPurger.moveToTrash(new File(gameInstance.getHomePath()))) {
+                GameInstancesManager.requireSingleton().unregisterInstance(gameInstance);
+                releaseGameFilesFolder(gameInstance);
+                job.finish(getString(R.string.dialog_title_instance_deleted), null);
+                TrashPurger.purge();
+                return;
+            }
+
+            // the instance could not be renamed away, so it has to be deleted in place
             try {
-                FileUtils.deleteDirectory(new File(gameInstance.getHomePath()));
+                FileUtils.deleteDirectory(new File(gameInstance.getHomePath()), job);
+                BlobStore.open().prune();
+            } catch (TaskCancelledException e) {
+                // part of the files is gone, so the instance can no longer be launched
+                GameInstancesManager.requireSingleton().setInstanceUninstalled(gameInstance);
+                job.finishCancelled(getString(R.string.dialog_title_instance_deletion_cancelled));
+                return;
             } catch (Exception e) {
-                finishWithError(getString(R.string.dialog_title_failed_to_delete_instance), e.toString());
+                job.finishWithError(getString(R.string.dialog_title_failed_to_delete_instance), e.toString());
                 return;
             }
 
             GameInstancesManager.requireSingleton().unregisterInstance(gameInstance);
+            releaseGameFilesFolder(gameInstance);
 
-            finish(getString(R.string.dialog_title_instance_deleted), null);
+            job.finish(getString(R.string.dialog_title_instance_deleted), null);
         });
     }
 
-    private void doInstallDependencies(Intent intent) {
-        String taskTitle = getString(R.string.dialog_title_installing_dependencies);
-
-        startForeground(NOTIFICATION_ID, buildNotification(taskTitle));
-
-        this.taskState.postValue(new TaskState(taskTitle, null, -1, 0, false, false));
-
-        executorService.submit(() -> {
-            SharedPreferences prefs = getSharedPreferences(C.shprefs.NAME, MODE_PRIVATE);
-            Gson gson = new Gson();
+    /**
+     * Gives up the persisted access to the folder a deleted instance was installed from, unless
+     * another instance was installed from it too. Apps can only hold a limited number of them.
+     */
+    private void releaseGameFilesFolder(GameInstance gameInstance) {
+        String folderUri = gameInstance.getGameFilesFolderUri();
+        if (folderUri == null)
+            return;
+        for (GameInstance otherGameInstance : GameInstancesManager.requireSingleton().getInstances()) {
+            if (folderUri.equals(otherGameInstance.getGameFilesFolderUri()))
+                return;
+        }
+        try {
+            getContentResolver().releasePersistableUriPermission(Uri.parse(folderUri), Intent.FLAG_GRANT_READ_URI_PERMISSION);
+        } catch (SecurityException e) {
+            // already released, e.g. by the user in the system settings
+        }
+    }
 
-            String bundlesJson = prefs.getString(C.shprefs.keys.INSTALLED_BUNDLES, "[]");
+    /**
+     * Checks the game files against the manifest recorded at install time. Damaged files are left
+     * out of a new install journal, which makes the instance resumable so that only they are
+     * extracted again. With an archive or folder URI that happens right away, otherwise the user
+     * resumes the installation from the instance menu.
+     */
+    private void doVerifyGameInstance(Job job, Intent intent) {
+        String gameInstanceName = intent.getStringExtra(EXTRA_GAME_INSTANCE_NAME);
+        if (gameInstanceName == null) {
+            job.finishWithError(getString(R.string.dialog_title_failed_to_verify_instance),
+                    "Game instance name intent extra is missing");
+            return;
+        }
+        GameInstance gameInstance = GameInstancesManager.requireSingleton().getInstanceByName(gameInstanceName);
+        if (gameInstance == null) {
+            job.finishWithError(getString(R.string.dialog_title_failed_to_verify_instance),
+                    "Game instance with name " + gameInstanceName + " not found");
+            return;
+        }
+        Uri gameFilesArchiveUri = intent.getParcelableExtra(EXTRA_ARCHIVE_URI);
+        Uri gameFilesFolderUri = intent.getParcelableExtra(EXTRA_FOLDER_URI);
+        if (!job.claimInstances(gameInstanceName)) {
+            job.finishWithError(getString(R.string.dialog_title_failed_to_verify_instance),
+                    getString(R.string.task_instance_busy, gameInstanceName));
+            return;
+        }
 
-            Type mapType = new TypeToken<HashMap<String, Long>>(){}.getType();
-            HashMap<String, Long> oldBundlesHashesMap = gson.fromJson(bundlesJson, mapType);
+        job.enqueue(() -> {
+            File manifestFile = new File(gameInstance.getInstallManifestPath());
+            InstallManifest manifest = InstallManifest.readFromFile(manifestFile);
+            if (manifest == null) {
+                job.finishWithError(getString(R.string.dialog_title_failed_to_verify_instance),
+                        getString(R.string.verify_no_manifest));
+                return;
+            }
 
-            HashMap<String, Long> newBundlesHashesMap = new HashMap<>();
+            InstallVerifier.Result result;
+            try {
+                result = InstallVerifier.verify(gameInstance.getGamePath(), manifest, job);
+            } catch (TaskCancelledException e) {
+                job.finishCancelled(getString(R.string.dialog_title_instance_verification_cancelled));
+                return;
+            } catch (Exception e) {
+                job.finishWithError(getString(R.string.dialog_title_failed_to_verify_instance), e.toString());
+                return;
+            }
+            String throughput = getString(R.string.task_throughput, result.getBytesPerSecond() / (1024 * 1024));
+            if (result.isIntact()) {
+                job.finish(getString(R.string.dialog_title_instance_verified),
+                        getString(R.string.verify_result_intact, result.fileCount, throughput));
+                return;
+            }
 
-            Long jreHashOld = oldBundlesHashesMap.get(C.assets.BUNDLES_JRE);
+            File journalFile = new File(gameInstance.getInstallJournalPath());
+            HashSet<String> damagedPaths = new HashSet<>(result.damagedPaths);
+            // a damaged file that is linked from the store damaged the blob too, so the repair
+            // must not link it again
+            BlobStore blobStore = BlobStore.open();
+            for (String path : damagedPaths) {
+                InstallManifest.Record record = manifest.get(path);
+                blobStore.evict(new File(gameInstance.getGamePath(), path), record.size, record.crc32);
+            }
             try {
-                Long jreHashNew = FileUtils.generateCRC32ForAsset(this, C.assets.BUNDLES_JRE);
-                newBundlesHashesMap.put(C.assets.BUNDLES_JRE, jreHashNew);
-                if (jreHashOld == null || !jreHashOld.equals(jreHashNew)) {
-                    String jrePath = AppStorage.requireSingleton().getHomePath() + "/dependencies/jre";
-                    File jreDir = new File(jrePath);
-                    if (jreDir.exists())
-                        FileUtils.deleteDirectory(jreDir);
-                    InputStream libsBundleInStream = getAssets().open(C.assets.BUNDLES_JRE);
-                    FileUtils.extractTarXzToDisk(libsBundleInStream, jrePath, this, 0);
+                journalFile.delete();
+                try (InstallJournal journal = InstallJournal.open(journalFile, gameInstance.getGamePath())) {
+                    for (String path : manifest.getPaths()) {
+                        if (damagedPaths.contains(path))
+                            continue;
+                        InstallManifest.Record record = manifest.get(path);
+                        journal.append(path, -1, record.size, record.crc32);
+                    }
                 }
             } catch (IOException e) {
-                finishWithError(getString(R.string.dialog_title_failed_to_install_dependencies), e.toString());
+                job.finishWithError(getString(R.string.dialog_title_failed_to_verify_instance), e.toString());
+                return;
+            }
+            GameInstancesManager.requireSingleton().setInstanceUninstalled(gameInstance);
+
+            if (gameFilesArchiveUri == null && gameFilesFolderUri == null) {
+                job.finish(getString(R.string.dialog_title_instance_damaged),
+                        getString(R.string.verify_result_damaged, damagedPaths.size(), result.fileCount, throughput));
                 return;
             }
 
-            Long libsHashOld = oldBundlesHashesMap.get(C.assets.BUNDLES_LIBS);
+            try (InstallJournal journal = InstallJournal.open(journalFile, gameInstance.getGamePath())) {
+                InstallManifest repairedManifest = gameFilesArchiveUri != null
+                        ? installGameFromZip(gameInstance, gameFilesArchiveUri, journal, job)
+                        : installGameFromFolder(gameInstance, gameFilesFolderUri, journal, job);
+                repairedManifest.writeToFile(manifestFile);
+            } catch (TaskCancelledException e) {
+                // the journal is kept, so the repair can still be resumed from the instance menu
+                job.finishCancelled(getString(R.string.dialog_title_instance_verification_cancelled));
+                return;
+            } catch (Exception e) {
+                job.finishWithError(getString(R.string.dialog_title_failed_to_verify_instance), e.toString());
+                return;
+            }
+            GameInstancesManager.requireSingleton().setInstanceInstalled(gameInstance);
+            journalFile.delete();
+
+            job.finish(getString(R.string.dialog_title_instance_repaired),
+                    getString(R.string.verify_result_repaired, damagedPaths.size(), throughput));
+        });
+    }
+
+    /**
+     * Fills an instance registered by {@link GameInstancesManager#cloneInstance} from its source.
+     * Game files are hardlinked where the filesystem allows it and copied otherwise, everything
+     * else in the instance home, like saves and configs, is copied so the two stay independent.
+     */
+    private void doCloneGameInstance(Job job, Intent intent) {
+        String gameInstanceName = intent.getStringExtra(EXTRA_GAME_INSTANCE_NAME);
+        String sourceGameInstanceName = intent.getStringExtra(EXTRA_SOURCE_GAME_INSTANCE_NAME);
+        if (gameInstanceName == null || sourceGameInstanceName == null) {
+            job.finishWithError(getString(R.string.dialog_title_failed_to_clone_instance),
+                    "Game instance name intent extra is missing");
+            return;
+        }
+        GameInstance gameInstance = GameInstancesManager.requireSingleton().getInstanceByName(gameInstanceName);
+        GameInstance sourceGameInstance = GameInstancesManager.requireSingleton().getInstanceByName(sourceGameInstanceName);
+        if (gameInstance == null || sourceGameInstance == null) {
+            job.finishWithError(getString(R.string.dialog_title_failed_to_clone_instance),
+                    "Game instance with name " + (gameInstance == null ? gameInstanceName : sourceGameInstanceName)
+                            + " not found");
+            return;
+        }
+        if (!job.claimInstances(gameInstanceName, sourceGameInstanceName)) {
+            job.finishWithError(getString(R.string.dialog_title_failed_to_clone_instance),
+                    getString(R.string.task_instance_busy, sourceGameInstanceName));
+            return;
+        }
+
+        job.enqueue(() -> {
             try {
-                Long libsHashNew = FileUtils.generateCRC32ForAsset(this, C.assets.BUNDLES_LIBS);
-                newBundlesHashesMap.put(C.assets.BUNDLES_LIBS, libsHashNew);
-                if (libsHashOld == null || !libsHashOld.equals(libsHashNew)) {
-                    String libsPath = AppStorage.requireSingleton().getHomePath() + "/dependencies/libs";
-                    File libsDir = new File(libsPath);
-                    if (libsDir.exists())
-                        FileUtils.deleteDirectory(libsDir);
-                    InputStream libsBundleInStream = getAssets().open(C.assets.BUNDLES_LIBS);
-                    FileUtils.extractTarXzToDisk(libsBundleInStream, libsPath, this, 0);
-                }
-            } catch (IOException e) {
-                finishWithError(getString(R.string.dialog_title_failed_to_install_dependencies), e.toString());
+                if (!sourceGameInstance.isInstalled())
+                    throw new IOException("Game instance " + sourceGameInstanceName + " is not installed");
+                TreeCloner.clone(new File(sourceGameInstance.getGamePath()), new File(gameInstance.getGamePath()),
+                        true, Collections.emptySet(), job);
+                HashSet<String> excludedNames = new HashSet<>();
+                excludedNames.add(GameInstance.getGameDirName());
+                excludedNames.add(GameInstance.getInstallJournalName());
+                TreeCloner.clone(new File(sourceGameInstance.getHomePath()), new File(gameInstance.getHomePath()),
+                        false, excludedNames, job);
+            } catch (Exception e) {
+                discardClone(gameInstance);
+                if (e instanceof TaskCancelledException)
+                    job.finishCancelled(getString(R.string.dialog_title_instance_cloning_cancelled));
+                else
+                    job.finishWithError(getString(R.string.dialog_title_failed_to_clone_instance), e.toString());
                 return;
             }
 
-            Long jarsHashOld = oldBundlesHashesMap.get(C.assets.BUNDLES_JARS);
+            GameInstancesManager.requireSingleton().setInstanceInstalled(gameInstance);
+
+            job.finish(getString(R.string.dialog_title_instance_cloned), null);
+        }, () -> discardClone(gameInstance));
+    }
+
+    private void discardClone(GameInstance gameInstance) {
+        if (!TrashPurger.moveToTrash(new File(gameInstance.getHomePath())))
+            FileUtils.deleteDirectory(new File(gameInstance.getHomePath()));
+        TrashPurger.purge();
+        GameInstancesManager.requireSingleton().unregisterInstance(gameInstance);
+    }
+
+    private void doInstallDependencies(Job job, Intent intent) {
+        boolean isVerifyMode = intent.getBooleanExtra(EXTRA_VERIFY, false);
+
+        job.enqueue(() -> {
+            SharedPreferences prefs = getSharedPreferences(C.shprefs.NAME, MODE_PRIVATE);
+            Gson gson = JsonUtils.getGson();
+
+            String bundlesJson = prefs.getString(C.shprefs.keys.INSTALLED_BUNDLES, "[]");
+
+            Type mapType = new TypeToken<HashMap<String, Long>>(){}.getType();
+            HashMap<String, Long> oldBundlesHashesMap = gson.fromJson(bundlesJson, mapType);
+
+            HashMap<String, Long> newBundlesHashesMap;
+            DependenciesInstaller dependenciesInstaller = new DependenciesInstaller(this, job, isVerifyMode);
             try {
-                Long jarsHashNew = FileUtils.generateCRC32ForAsset(this, C.assets.BUNDLES_JARS);
-                newBundlesHashesMap.put(C.assets.BUNDLES_JARS, jarsHashNew);
-                if (jarsHashOld == null || !jarsHashOld.equals(jarsHashNew)) {
-                    String jarsPath = AppStorage.requireSingleton().getHomePath() + "/dependencies/jars";
-                    File jarsDir = new File(jarsPath);
-                    if (jarsDir.exists())
-                        FileUtils.deleteDirectory(jarsDir);
-                    InputStream jarsBundleInStream = getAssets().open(C.assets.BUNDLES_JARS);
-                    FileUtils.extractTarToDisk(jarsBundleInStream, jarsPath, this, 0);
-                }
+                newBundlesHashesMap = dependenciesInstaller.install(oldBundlesHashesMap);
+            } catch (TaskCancelledException e) {
+                job.finishCancelled(getString(R.string.dialog_title_dependencies_installation_cancelled));
+                return;
             } catch (IOException e) {
-                finishWithError(getString(R.string.dialog_title_failed_to_install_dependencies), e.toString());
+                job.finishWithError(getString(R.string.dialog_title_failed_to_install_dependencies), e.toString());
                 return;
             }
 
@@ -230,25 +459,107 @@ public class InstallerService extends Service implements TaskProgressListener {
                     .putBoolean(C.shprefs.keys.ARE_DEPENDENCIES_INSTALLED, true)
                     .apply();
 
-            finish(getString(R.string.dialog_title_dependencies_installed), null);
+            String message = null;
+            if (isVerifyMode) {
+                message = getString(R.string.verify_result_dependencies, dependenciesInstaller.getVerifiedFileCount(),
+                        dependenciesInstaller.getRepairedFileCount(), getString(R.string.task_throughput,
+                                dependenciesInstaller.getVerifiedBytesPerSecond() / (1024 * 1024)));
+            }
+            job.finish(getString(R.string.dialog_title_dependencies_installed), message);
         });
     }
 
-    private void finish(String title, String message) {
-        this.taskState.postValue(new TaskState(title, message, -1, 0, true, false));
+    /**
+     * Asks the job with this id to stop. A queued job stops as soon as it reaches the front of
+     * its lane, a running one between entries or inside its copy loops, and then removes the
+     * partial output it can't resume from.
+     */
+    public void cancelJob(int jobId) {
+        synchronized (jobList) {
+            for (Job job : jobList) {
+                if (job.id == jobId)
+                    job.cancel();
+            }
+        }
+    }
+
+    public void cancelAllJobs() {
+        synchronized (jobList) {
+            for (Job job : jobList) {
+                job.cancel();
+            }
+        }
+    }
+
+    /**
+     * Drops finished, failed and cancelled jobs from {@link #getJobs()} once they have been shown.
+     */
+    public void clearDoneJobs() {
+        synchronized (jobList) {
+            jobList.removeIf(Job::isDone);
+            jobs.postValue(new ArrayList<>(jobList));
+        }
     }
 
-    private void finishWithError(String title, String error) {
-        Log.e(LOG_TAG, error);
-        this.taskState.postValue(new TaskState(title, error, -1, 0, false, true));
+    /**
+     * The job list is only republished when a job is added or done, progress goes through the
+     * job's own state stream.
+     */
+    private void onJobStateChanged(boolean isListChanged) {
+        if (isListChanged) {
+            synchronized (jobList) {
+                jobs.postValue(new ArrayList<>(jobList));
+            }
+        }
+        handler.post(this::updateNotification);
     }
 
-    private void installGameFromZip(GameInstance gameInstance, Uri zipUri) throws IOException {
+    /**
+     * With the shared game store enabled, files the store already holds with the same SHA-256
+     * are linked instead of written where the archive's central directory can be read up front,
+     * and every installed file ends up shared with the store.
+     */
+    private InstallManifest installGameFromZip(GameInstance gameInstance, Uri zipUri, InstallJournal journal,
+                                               TaskProgressListener taskProgressListener) throws IOException {
+        BlobStore blobStore = LauncherPreferences.requireSingleton().isSharedGameStoreEnabled() ? BlobStore.open() : null;
+        InstallManifest manifest = extractGameZip(gameInstance, zipUri, journal, blobStore, taskProgressListener);
+        if (blobStore != null)
+            blobStore.addAll(gameInstance.getGamePath(), manifest, taskProgressListener);
+        return manifest;
+    }
+
+    /**
+     * Copies game files that are already unpacked from a folder picked through the Storage Access
+     * Framework. With the shared game store enabled, the copied files end up shared with it.
+     */
+    private InstallManifest installGameFromFolder(GameInstance gameInstance, Uri treeUri, InstallJournal journal,
+                                                  TaskProgressListener taskProgressListener) throws IOException {
+        InstallManifest manifest = DocumentTreeCopier.copy(getApplicationContext().getContentResolver(), treeUri,
+                gameInstance.getGamePath(), taskProgressListener, journal);
+        if (LauncherPreferences.requireSingleton().isSharedGameStoreEnabled())
+            BlobStore.open().addAll(gameInstance.getGamePath(), manifest, taskProgressListener);
+        return manifest;
+    }
+
+    private InstallManifest extractGameZip(GameInstance gameInstance, Uri zipUri, InstallJournal journal,
+                                           @Nullable BlobStore blobStore,
+                                           TaskProgressListener taskProgressListener) throws IOException {
         ContentResolver contentResolver = getApplicationContext().getContentResolver();
 
+        ParcelFileDescriptor zipFileDescriptor = contentResolver.openFileDescriptor(zipUri, "r");
+        if (zipFileDescriptor != null) {
+            try (FileInputStream zipInStream = new ParcelFileDescriptor.AutoCloseInputStream(zipFileDescriptor)) {
+                // stat size is only known for regular files, pipes and sockets can't be read at random
+                if (zipFileDescriptor.getStatSize() >= 0) {
+                    return FileUtils.extractZipToDisk(zipInStream.getChannel(), gameInstance.getGamePath(),
+                            taskProgressListener, journal, blobStore);
+                }
+            }
+        }
+
         try (InputStream inputStream = contentResolver.openInputStream(zipUri)) {
             long fileSize = FileUtils.queryFileSize(contentResolver, zipUri);
-            FileUtils.extractZipToDisk(inputStream, gameInstance.getGamePath(), this, fileSize);
+            return FileUtils.extractZipToDisk(inputStream, gameInstance.getGamePath(), taskProgressListener, fileSize, journal);
         }
     }
 
@@ -282,6 +593,14 @@ public class InstallerService extends Service implements TaskProgressListener {
                 notificationIntent,
                 PendingIntent.FLAG_IMMUTABLE | PendingIntent.FLAG_UPDATE_CURRENT
         );
+        Intent cancelIntent = new Intent(this, InstallerService.class);
+        cancelIntent.setAction(ACTION_CANCEL);
+        PendingIntent cancelPendingIntent = PendingIntent.getService(
+                this,
+                0,
+                cancelIntent,
+                PendingIntent.FLAG_IMMUTABLE | PendingIntent.FLAG_UPDATE_CURRENT
+        );
         notificationBuilder = new NotificationCompat.Builder(this, CHANNEL_ID)
                 .setContentTitle(title)
                 .setForegroundServiceBehavior(NotificationCompat.FOREGROUND_SERVICE_IMMEDIATE)
@@ -289,38 +608,57 @@ public class InstallerService extends Service implements TaskProgressListener {
                 .setCategory(NotificationCompat.CATEGORY_SERVICE)
                 .setContentIntent(pendingIntent)
                 .setSmallIcon(R.mipmap.ic_launcher_foreground)
+                .addAction(0, getString(R.string.dialog_button_cancel), cancelPendingIntent)
                 .setAutoCancel(false);
         return notificationBuilder.build();
     }
 
-    @Override
-    public void onProgressUpdate(String message, int progress, int progressMax) {
-        if (System.currentTimeMillis() - lastProgressUpdateMs < 500) return;
-        lastProgressUpdateMs = System.currentTimeMillis();
-
-        TaskState currentState = this.taskState.getValue();
-        this.taskState.postValue(new TaskState(currentState == null ? null : currentState.title,
-                message, progress, progressMax, false, false));
-
-        handler.post(() -> {
-            if (ActivityCompat.checkSelfPermission(this, android.Manifest.permission.POST_NOTIFICATIONS)
-                    != PackageManager.PERMISSION_GRANTED) {
-                return;
-            }
-            if (message != null) {
-                notificationBuilder.setContentText(message);
+    /**
+     * Shows the running job with the highest priority, or the first queued one, and how many
+     * more are active. Leaves the foreground once every job is done.
+     */
+    private void updateNotification() {
+        Job leadJob = null;
+        int activeCount = 0;
+        synchronized (jobList) {
+            for (Job job : jobList) {
+                if (job.isDone())
+                    continue;
+                activeCount++;
+                if (leadJob == null || (job.isStarted && !leadJob.isStarted)
+                        || (job.isStarted == leadJob.isStarted && job.task.priority > leadJob.task.priority))
+                    leadJob = job;
             }
-            if (progress < 0)
-                notificationBuilder.setProgress(0, 0, true);
-            else
-                notificationBuilder.setProgress(progressMax, progress, false);
-            notificationManager.notify(NOTIFICATION_ID, notificationBuilder.build());
-        });
+        }
+        if (leadJob == null) {
+            stopForeground(STOP_FOREGROUND_REMOVE);
+            return;
+        }
+        if (notificationBuilder == null || ActivityCompat.checkSelfPermission(this,
+                android.Manifest.permission.POST_NOTIFICATIONS) != PackageManager.PERMISSION_GRANTED) {
+            return;
+        }
+        TaskState state = leadJob.getCurrentState();
+        notificationBuilder.setContentTitle(state.title);
+        if (activeCount > 1)
+            notificationBuilder.setContentText(getString(R.string.notification_more_jobs, activeCount - 1));
+        else if (state.message == null && state.bytesPerSecond >= 0)
+            notificationBuilder.setContentText(state.describeThroughput(this));
+        else
+            notificationBuilder.setContentText(state.message);
+        if (state.progress < 0)
+            notificationBuilder.setProgress(0, 0, true);
+        else
+            notificationBuilder.setProgress(state.progressMax, state.progress, false);
+        notificationManager.notify(NOTIFICATION_ID, notificationBuilder.build());
     }
 
-
-    public LiveData<TaskState> getTaskState() {
-        return taskState;
+    /**
+     * All jobs of this service in submission order, including done ones until
+     * {@link #clearDoneJobs()} is called.
+     */
+    public LiveData<List<Job>> getJobs() {
+        return jobs;
     }
 
     public class LocalBinder extends Binder {
@@ -330,9 +668,214 @@ public class InstallerService extends Service implements TaskProgressListener {
     }
 
     public enum Task {
-        CREATE_GAME_INSTANCE,
-        DELETE_GAME_INSTANCE,
-        INSTALL_DEPENDENCIES
+        CREATE_GAME_INSTANCE(1, false, R.string.dialog_title_creating_instance,
+                R.string.dialog_title_instance_creation_cancelled),
+        DELETE_GAME_INSTANCE(0, true, R.string.dialog_title_deleting_instance,
+                R.string.dialog_title_instance_deletion_cancelled),
+        INSTALL_DEPENDENCIES(2, false, R.string.dialog_title_installing_dependencies,
+                R.string.dialog_title_dependencies_installation_cancelled),
+        VERIFY_GAME_INSTANCE(1, false, R.string.dialog_title_verifying_instance,
+                R.string.dialog_title_instance_verification_cancelled),
+        CLONE_GAME_INSTANCE(1, true, R.string.dialog_title_cloning_instance,
+                R.string.dialog_title_instance_cloning_cancelled);
+
+        /** Queued jobs with a higher priority run first within their lane. */
+        public final int priority;
+        /** Whether the task runs on the I/O lane instead of the extraction lane. */
+        public final boolean isIoBound;
+        public final int titleResId;
+        public final int cancelledTitleResId;
+
+        Task(int priority, boolean isIoBound, int titleResId, int cancelledTitleResId) {
+            this.priority = priority;
+            this.isIoBound = isIoBound;
+            this.titleResId = titleResId;
+            this.cancelledTitleResId = cancelledTitleResId;
+        }
+    }
+
+    /**
+     * One queued or running task. Its progress is published through its own {@link #getState()}
+     * stream, so concurrent jobs never overwrite each other's state.
+     */
+    public class Job implements TaskProgressListener {
+        public final int id;
+        public final Task task;
+        private final String title;
+        private final MutableLiveData<TaskState> state = new MutableLiveData<>();
+        private volatile TaskState currentState;
+        private volatile boolean isCancelRequested;
+        private volatile boolean isStarted;
+        private final ArrayList<String> claimedInstanceNames = new ArrayList<>();
+        /** Progress percent last shown in the notification, -1 if indeterminate. Guarded by this job. */
+        private int notifiedPercent = -1;
+
+        private Job(int id, Task task) {
+            this.id = id;
+            this.task = task;
+            this.title = getString(task.titleResId);
+            setState(new TaskState(title, null, -1, 0, false, false, false));
+        }
+
+        public LiveData<TaskState> getState() {
+            return state;
+        }
+
+        /**
+         * Latest state, already updated when the {@link #getState()} stream has yet to deliver it.
+         */
+        public TaskState getCurrentState() {
+            return currentState;
+        }
+
+        public boolean isStarted() {
+            return isStarted;
+        }
+
+        public boolean isDone() {
+            TaskState s = currentState;
+            return s.isFinished || s.isFinishedWithError || s.isCancelled;
+        }
+
+        public void cancel() {
+            isCancelRequested = true;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return isCancelRequested;
+        }
+
+        /**
+         * Updates that would not change what is shown are dropped, the rest are published as is.
+         */
+        @Override
+        public void onProgressUpdate(String message, int progress, int progressMax) {
+            TaskState s = currentState;
+            if (s.progress == progress && s.progressMax == progressMax && Objects.equals(s.message, message))
+                return;
+            setState(new TaskState(title, message, progress, progressMax, false, false, false));
+        }
+
+        /**
+         * Progress is shown in KiB. Transfer updates are already rate limited by the meter that
+         * produces them, the notification is only refreshed when the percent changes.
+         */
+        @Override
+        public void onTransferProgress(long bytesDone, long bytesTotal, double bytesPerSecond, long etaMs) {
+            int progress = -1;
+            int progressMax = 0;
+            if (bytesTotal > 0) {
+                progress = (int) (Math.min(bytesDone, bytesTotal) / 1024);
+                progressMax = (int) (bytesTotal / 1024);
+            }
+            setState(new TaskState(title, null, progress, progressMax, bytesPerSecond, etaMs));
+        }
+
+        /**
+         * Reserves instances for this job until it is done, so that e.g. a verify can not mark an
+         * instance installed again after a delete removed it. Reserves nothing and returns false if
+         * another job holds one of them.
+         */
+        private boolean claimInstances(String... names) {
+            synchronized (busyInstanceNames) {
+                for (String name : names) {
+                    if (busyInstanceNames.contains(name))
+                        return false;
+                }
+                Collections.addAll(busyInstanceNames, names);
+                Collections.addAll(claimedInstanceNames, names);
+                return true;
+            }
+        }
+
+        private void releaseInstances() {
+            synchronized (busyInstanceNames) {
+                for (String name : claimedInstanceNames) {
+                    busyInstanceNames.remove(name);
+                }
+                claimedInstanceNames.clear();
+            }
+        }
+
+        private void enqueue(Runnable body) {
+            enqueue(body, null);
+        }
+
+        /**
+         * @param onCancelledWhileQueued cleanup to run instead of {@code body} if the job is
+         *                               cancelled before it starts
+         */
+        private void enqueue(Runnable body, @Nullable Runnable onCancelledWhileQueued) {
+            (task.isIoBound ? ioLane : extractionLane).execute(new JobRunnable(this, body, onCancelledWhileQueued));
+        }
+
+        private void finish(String title, String message) {
+            setState(new TaskState(title, message, -1, 0, true, false, false));
+        }
+
+        private void finishWithError(String title, String error) {
+            Log.e(LOG_TAG, error);
+            setState(new TaskState(title, error, -1, 0, false, true, false));
+        }
+
+        private void finishCancelled(String title) {
+            setState(new TaskState(title, null, -1, 0, false, false, true));
+        }
+
+        /**
+         * Called from extractor worker threads as well, so the state change and the notification
+         * throttle are updated together.
+         */
+        private synchronized void setState(TaskState newState) {
+            TaskState oldState = currentState;
+            currentState = newState;
+            boolean isDone = isDone();
+            if (isDone)
+                releaseInstances();
+            state.postValue(newState);
+            int percent = newState.progressMax > 0 ? (int) (100L * newState.progress / newState.progressMax) : -1;
+            if (isDone || oldState == null || percent != notifiedPercent
+                    || !Objects.equals(newState.message, oldState.message)) {
+                notifiedPercent = percent;
+                onJobStateChanged(isDone);
+            }
+        }
+    }
+
+    /**
+     * Orders queued jobs by task priority, then by submission.
+     */
+    private class JobRunnable implements Runnable, Comparable<JobRunnable> {
+        private final Job job;
+        private final Runnable body;
+        private final Runnable onCancelledWhileQueued;
+
+        JobRunnable(Job job, Runnable body, Runnable onCancelledWhileQueued) {
+            this.job = job;
+            this.body = body;
+            this.onCancelledWhileQueued = onCancelledWhileQueued;
+        }
+
+        @Override
+        public void run() {
+            if (job.isCancelled()) {
+                if (onCancelledWhileQueued != null)
+                    onCancelledWhileQueued.run();
+                job.finishCancelled(getString(job.task.cancelledTitleResId));
+                return;
+            }
+            job.isStarted = true;
+            onJobStateChanged(false);
+            body.run();
+        }
+
+        @Override
+        public int compareTo(JobRunnable other) {
+            if (job.task.priority != other.job.task.priority)
+                return Integer.compare(other.job.task.priority, job.task.priority);
+            return Integer.compare(job.id, other.job.id);
+        }
     }
 
     public static class TaskState {
@@ -342,14 +885,48 @@ public class InstallerService extends Service implements TaskProgressListener {
         public final int progressMax;
         public final boolean isFinished;
         public final boolean isFinishedWithError;
+        public final boolean isCancelled;
+        /** Smoothed throughput of a running transfer, negative if unknown. */
+        public final double bytesPerSecond;
+        /** Estimated time left for a running transfer, negative if unknown. */
+        public final long etaMs;
+
+        public TaskState(String title, String message, int progress, int progressMax, boolean isFinished,
+                         boolean isFinishedWithError, boolean isCancelled) {
+            this(title, message, progress, progressMax, isFinished, isFinishedWithError, isCancelled, -1, -1);
+        }
+
+        public TaskState(String title, String message, int progress, int progressMax, double bytesPerSecond,
+                         long etaMs) {
+            this(title, message, progress, progressMax, false, false, false, bytesPerSecond, etaMs);
+        }
 
-        public TaskState(String title, String message, int progress, int progressMax, boolean isFinished, boolean isFinishedWithError) {
+        private TaskState(String title, String message, int progress, int progressMax, boolean isFinished,
+                          boolean isFinishedWithError, boolean isCancelled, double bytesPerSecond, long etaMs) {
             this.title = title;
             this.message = message;
             this.progress = progress;
             this.progressMax = progressMax;
             this.isFinished = isFinished;
             this.isFinishedWithError = isFinishedWithError;
+            this.isCancelled = isCancelled;
+            this.bytesPerSecond = bytesPerSecond;
+            this.etaMs = etaMs;
+        }
+
+        /**
+         * Throughput in MB/s followed by the time left when it is known, null if there is no
+         * throughput to show.
+         */
+        @Nullable
+        public String describeThroughput(Context context) {
+            if (bytesPerSecond < 0)
+                return null;
+            double megabytesPerSecond = bytesPerSecond / (1024 * 1024);
+            if (etaMs < 0)
+                return context.getString(R.string.task_throughput, megabytesPerSecond);
+            return context.getString(R.string.task_throughput_eta, megabytesPerSecond,
+                    DateUtils.formatElapsedTime(etaMs / 1000));
         }
     }
 }
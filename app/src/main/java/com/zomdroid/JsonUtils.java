@@ -0,0 +1,85 @@
+package com.zomdroid;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import com.zomdroid.game.GameInstance;
+import com.zomdroid.input.ControlElementDescription;
+
+import java.io.IOException;
+import java.util.ArrayList;
+
+/**
+ * Shared {@link Gson} for persisted launcher state. Classes that are loaded on startup come with
+ * hand written streaming adapters, so reading them needs no reflection and the adapters are set up
+ * once per process instead of once per {@code new Gson()}.
+ */
+public class JsonUtils {
+    private static final Gson gson = new GsonBuilder()
+            .registerTypeAdapter(GameInstance.class, new GameInstance.JsonAdapter().nullSafe())
+            .registerTypeAdapter(LauncherPreferences.class, new LauncherPreferences.JsonAdapter().nullSafe())
+            .registerTypeAdapter(ControlElementDescription.class, new ControlElementDescription.JsonAdapter().nullSafe())
+            .create();
+
+    @NonNull
+    public static Gson getGson() {
+        return gson;
+    }
+
+    @Nullable
+    public static String[] readStringArray(@NonNull JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        ArrayList<String> values = new ArrayList<>();
+        in.beginArray();
+        while (in.hasNext()) {
+            values.add(readString(in));
+        }
+        in.endArray();
+        return values.toArray(new String[0]);
+    }
+
+    public static void writeStringArray(@NonNull JsonWriter out, @Nullable String[] values) throws IOException {
+        if (values == null) {
+            out.nullValue();
+            return;
+        }
+        out.beginArray();
+        for (String value : values) {
+            out.value(value);
+        }
+        out.endArray();
+    }
+
+    @Nullable
+    public static String readString(@NonNull JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        return in.nextString();
+    }
+
+    /**
+     * Returns the constant named by the next string, or {@code fallback} if it is null or names
+     * no constant, e.g. one removed in a later version.
+     */
+    public static <E extends Enum<E>> E readEnum(@NonNull JsonReader in, @NonNull Class<E> enumClass, E fallback)
+            throws IOException {
+        String name = readString(in);
+        if (name == null)
+            return fallback;
+        try {
+            return Enum.valueOf(enumClass, name);
+        } catch (IllegalArgumentException e) {
+            return fallback;
+        }
+    }
+}
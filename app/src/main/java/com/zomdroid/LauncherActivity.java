@@ -10,8 +10,11 @@ import android.provider.DocumentsContract;
 import android.util.Log;
 import android.view.View;
 import android.view.WindowInsets;
+import android.widget.Toast;
 
 import androidx.activity.EdgeToEdge;
+import androidx.activity.result.ActivityResultLauncher;
+import androidx.activity.result.contract.ActivityResultContracts;
 import androidx.annotation.NonNull;
 import androidx.appcompat.app.AppCompatActivity;
 
@@ -21,12 +24,47 @@ import androidx.navigation.ui.AppBarConfiguration;
 import androidx.navigation.ui.NavigationUI;
 
 import com.zomdroid.databinding.ActivityLauncherBinding;
+import com.zomdroid.input.ControlLayoutStore;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 
 public class LauncherActivity extends AppCompatActivity {
     private static final String LOG_TAG = LauncherActivity.class.getName();
     ActivityLauncherBinding binding;
     private NavController navController;
     private AppBarConfiguration appBarConfiguration;
+    private static final String CONTROLS_JSON_MIME = "application/json";
+    private static final String CONTROLS_EXPORT_FILE_NAME = "zomdroid_controls.json";
+
+    private final ActivityResultLauncher<String[]> importControlsLauncher = registerForActivityResult(
+            new ActivityResultContracts.OpenDocument(), uri -> {
+                if (uri == null) return;
+                try (InputStream inStream = getContentResolver().openInputStream(uri)) {
+                    if (inStream == null)
+                        throw new IOException("failed to open " + uri);
+                    ControlLayoutStore.requireSingleton().importJson(ControlLayoutStore.DEFAULT_LAYOUT_NAME, inStream);
+                    Toast.makeText(this, R.string.controls_imported, Toast.LENGTH_SHORT).show();
+                } catch (IOException e) {
+                    Log.e(LOG_TAG, "Failed to import controls", e);
+                    Toast.makeText(this, R.string.controls_import_failed, Toast.LENGTH_SHORT).show();
+                }
+            });
+
+    private final ActivityResultLauncher<String> exportControlsLauncher = registerForActivityResult(
+            new ActivityResultContracts.CreateDocument(CONTROLS_JSON_MIME), uri -> {
+                if (uri == null) return;
+                try (OutputStream outStream = getContentResolver().openOutputStream(uri)) {
+                    if (outStream == null)
+                        throw new IOException("failed to open " + uri);
+                    ControlLayoutStore.requireSingleton().exportJson(ControlLayoutStore.DEFAULT_LAYOUT_NAME, outStream);
+                    Toast.makeText(this, R.string.controls_exported, Toast.LENGTH_SHORT).show();
+                } catch (IOException e) {
+                    Log.e(LOG_TAG, "Failed to export controls", e);
+                    Toast.makeText(this, R.string.controls_export_failed, Toast.LENGTH_SHORT).show();
+                }
+            });
 
 
     @Override
@@ -82,6 +120,12 @@ public class LauncherActivity extends AppCompatActivity {
                 Intent intent = new Intent(this, ControlsEditorActivity.class);
                 startActivity(intent);
                 return true;
+            } else if (item.getItemId() == R.id.action_import_controls) {
+                importControlsLauncher.launch(new String[]{CONTROLS_JSON_MIME, "text/plain"});
+                return true;
+            } else if (item.getItemId() == R.id.action_export_controls) {
+                exportControlsLauncher.launch(CONTROLS_EXPORT_FILE_NAME);
+                return true;
             } else if (item.getItemId() == R.id.action_open_gamepad_mapper) {
                 navController.navigate(R.id.gamepad_mapper_fragment);
                 return true;
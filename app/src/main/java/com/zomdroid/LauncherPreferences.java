@@ -4,38 +4,63 @@ import static android.content.Context.MODE_PRIVATE;
 
 import android.content.Context;
 import android.content.SharedPreferences;
+import android.util.Log;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
-import com.google.gson.Gson;
-import com.google.gson.reflect.TypeToken;
+import com.google.gson.JsonParseException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
 
-import java.lang.reflect.Type;
+import java.io.IOException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * Launcher settings. Setters only update memory and mark the preferences dirty, writes are
+ * coalesced and done on a background thread once no change has been made for
+ * {@link #FLUSH_DEBOUNCE_MS}, or at the latest {@link #FLUSH_MAX_DELAY_MS} after the first
+ * pending change. {@link #saveToDisk()} flushes right away and is called whenever an activity
+ * pauses.
+ */
 public class LauncherPreferences {
+    private static final String LOG_TAG = LauncherPreferences.class.getName();
+    private static final long FLUSH_DEBOUNCE_MS = 500;
+    private static final long FLUSH_MAX_DELAY_MS = 2000;
+    private static final ScheduledExecutorService flushExecutor = Executors.newSingleThreadScheduledExecutor(
+            runnable -> new Thread(runnable, "LauncherPreferences"));
     private static LauncherPreferences singleton;
     transient private SharedPreferences sharedPreferences;
-    transient private Gson gson;
+    transient private final CopyOnWriteArrayList<OnChangeListener> onChangeListeners = new CopyOnWriteArrayList<>();
+    transient private boolean isDirty;
+    transient private long firstPendingChangeMs;
+    transient private ScheduledFuture<?> pendingFlush;
 
     private float renderScale = 1.f;
     private Renderer renderer = Renderer.ZINK_ZFA;
     private VulkanDriver vulkanDriver = VulkanDriver.FREEDRENO;
     private boolean isDebug = false;
+    private boolean isSharedGameStoreEnabled = false;
 
     public static void init(@NonNull Context context) {
         SharedPreferences sharedPreferences = context.getSharedPreferences(C.shprefs.NAME, MODE_PRIVATE);
         String json = sharedPreferences.getString(C.shprefs.keys.LAUNCHER_PREFS, null);
-        LauncherPreferences launcherPreferences;
-        Gson gson = new Gson();
-        if (json == null) {
-            launcherPreferences = new LauncherPreferences();
-        } else {
-            Type type = new TypeToken<LauncherPreferences>(){}.getType();
-            launcherPreferences = gson.fromJson(json, type);
+        LauncherPreferences launcherPreferences = null;
+        if (json != null) {
+            try {
+                launcherPreferences = JsonUtils.getGson().fromJson(json, LauncherPreferences.class);
+            } catch (JsonParseException e) {
+                Log.e(LOG_TAG, "Discarding malformed launcher preferences", e);
+            }
         }
+        if (launcherPreferences == null)
+            launcherPreferences = new LauncherPreferences();
         launcherPreferences.sharedPreferences = sharedPreferences;
-        launcherPreferences.gson = gson;
         singleton = launcherPreferences;
     }
 
@@ -52,48 +77,190 @@ public class LauncherPreferences {
         return singleton;
     }
 
+    /**
+     * Writes pending changes now. Safe to call from any thread, does nothing if there are none.
+     */
     public void saveToDisk() {
-        String json = gson.toJson(this);
-        this.sharedPreferences
-                .edit()
-                .putString(C.shprefs.keys.LAUNCHER_PREFS, json)
-                .apply();
+        synchronized (this) {
+            if (pendingFlush != null) {
+                pendingFlush.cancel(false);
+                pendingFlush = null;
+            }
+            if (!isDirty)
+                return;
+            isDirty = false;
+            // applied under the lock, so an older snapshot can never be applied after a newer one
+            this.sharedPreferences
+                    .edit()
+                    .putString(C.shprefs.keys.LAUNCHER_PREFS, JsonUtils.getGson().toJson(this))
+                    .apply();
+        }
+    }
+
+    public void addOnChangeListener(@NonNull OnChangeListener listener) {
+        onChangeListeners.addIfAbsent(listener);
+    }
+
+    public void removeOnChangeListener(@NonNull OnChangeListener listener) {
+        onChangeListeners.remove(listener);
+    }
+
+    /**
+     * Schedules a debounced flush. Must be called with the lock held, listeners are notified
+     * after it is released so they can read other preferences without contention.
+     */
+    private void markDirty() {
+        long now = System.currentTimeMillis();
+        if (!isDirty) {
+            isDirty = true;
+            firstPendingChangeMs = now;
+        }
+        if (pendingFlush != null)
+            pendingFlush.cancel(false);
+        long delayMs = Math.max(0, Math.min(FLUSH_DEBOUNCE_MS, firstPendingChangeMs + FLUSH_MAX_DELAY_MS - now));
+        pendingFlush = flushExecutor.schedule(this::saveToDisk, delayMs, TimeUnit.MILLISECONDS);
+    }
+
+    private void notifyChanged(Key key) {
+        for (OnChangeListener listener : onChangeListeners) {
+            listener.onLauncherPreferenceChanged(key);
+        }
     }
 
-    public float getRenderScale() {
+    public synchronized float getRenderScale() {
         return renderScale;
     }
 
     public void setRenderScale(float renderScale) {
-        this.renderScale = Math.clamp(renderScale, 0.25f, 1.f);
-        saveToDisk();
+        synchronized (this) {
+            float clampedRenderScale = Math.clamp(renderScale, 0.25f, 1.f);
+            if (this.renderScale == clampedRenderScale)
+                return;
+            this.renderScale = clampedRenderScale;
+            markDirty();
+        }
+        notifyChanged(Key.RENDER_SCALE);
     }
 
-    public Renderer getRenderer() {
+    public synchronized Renderer getRenderer() {
         return renderer;
     }
 
     public void setRenderer(Renderer renderer) {
-        this.renderer = renderer;
-        saveToDisk();
+        synchronized (this) {
+            if (this.renderer == renderer)
+                return;
+            this.renderer = renderer;
+            markDirty();
+        }
+        notifyChanged(Key.RENDERER);
     }
 
-    public VulkanDriver getVulkanDriver() {
+    public synchronized VulkanDriver getVulkanDriver() {
         return vulkanDriver;
     }
 
     public void setVulkanDriver(VulkanDriver vulkanDriver) {
-        this.vulkanDriver = vulkanDriver;
-        saveToDisk();
+        synchronized (this) {
+            if (this.vulkanDriver == vulkanDriver)
+                return;
+            this.vulkanDriver = vulkanDriver;
+            markDirty();
+        }
+        notifyChanged(Key.VULKAN_DRIVER);
     }
 
-    public boolean isDebug() {
+    public synchronized boolean isDebug() {
         return isDebug;
     }
 
     public void setDebug(boolean debug) {
-        isDebug = debug;
-        saveToDisk();
+        synchronized (this) {
+            if (isDebug == debug)
+                return;
+            isDebug = debug;
+            markDirty();
+        }
+        notifyChanged(Key.DEBUG);
+    }
+
+    /**
+     * Whether new game installs share identical files with other instances through
+     * {@link BlobStore} instead of keeping a full copy each.
+     */
+    public synchronized boolean isSharedGameStoreEnabled() {
+        return isSharedGameStoreEnabled;
+    }
+
+    public void setSharedGameStoreEnabled(boolean sharedGameStoreEnabled) {
+        synchronized (this) {
+            if (isSharedGameStoreEnabled == sharedGameStoreEnabled)
+                return;
+            isSharedGameStoreEnabled = sharedGameStoreEnabled;
+            markDirty();
+        }
+        notifyChanged(Key.SHARED_GAME_STORE);
+    }
+
+    public enum Key {
+        RENDER_SCALE,
+        RENDERER,
+        VULKAN_DRIVER,
+        DEBUG,
+        SHARED_GAME_STORE
+    }
+
+    /**
+     * Called on the thread that made the change, after it has been applied in memory.
+     */
+    public interface OnChangeListener {
+        void onLauncherPreferenceChanged(@NonNull Key key);
+    }
+
+    /**
+     * Streaming codec for the persisted fields. Unknown names are skipped and unknown enum
+     * constants keep their default, so preferences written by other versions still load.
+     */
+    public static class JsonAdapter extends TypeAdapter<LauncherPreferences> {
+        @Override
+        public void write(JsonWriter out, LauncherPreferences value) throws IOException {
+            out.beginObject();
+            out.name("renderScale").value(value.renderScale);
+            out.name("renderer").value(value.renderer == null ? null : value.renderer.name());
+            out.name("vulkanDriver").value(value.vulkanDriver == null ? null : value.vulkanDriver.name());
+            out.name("isDebug").value(value.isDebug);
+            out.name("isSharedGameStoreEnabled").value(value.isSharedGameStoreEnabled);
+            out.endObject();
+        }
+
+        @Override
+        public LauncherPreferences read(JsonReader in) throws IOException {
+            LauncherPreferences value = new LauncherPreferences();
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "renderScale":
+                        value.renderScale = (float) in.nextDouble();
+                        break;
+                    case "renderer":
+                        value.renderer = JsonUtils.readEnum(in, Renderer.class, value.renderer);
+                        break;
+                    case "vulkanDriver":
+                        value.vulkanDriver = JsonUtils.readEnum(in, VulkanDriver.class, value.vulkanDriver);
+                        break;
+                    case "isDebug":
+                        value.isDebug = in.nextBoolean();
+                        break;
+                    case "isSharedGameStoreEnabled":
+                        value.isSharedGameStoreEnabled = in.nextBoolean();
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+            return value;
+        }
     }
 
     public enum Renderer {
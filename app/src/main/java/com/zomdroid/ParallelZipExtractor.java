@@ -0,0 +1,218 @@
+package com.zomdroid;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Extracts a ZIP archive from a seekable file using its central directory. Entries are split
+ * into contiguous ranges of roughly equal compressed size and each range is inflated by its own
+ * worker. Progress is reported in bytes of uncompressed data. An entry whose inflated data doesn't
+ * match the size and CRC32 in the central directory fails the extraction.
+ */
+class ParallelZipExtractor {
+    private final ZipFile zipFile;
+    private final String destPath;
+    private final TaskProgressListener taskProgressListener;
+    private final InstallJournal journal;
+    private final BlobStore blobStore;
+    private final InstallManifest manifest = new InstallManifest();
+    private final AtomicBoolean isFailed = new AtomicBoolean();
+    private ProgressMeter progressMeter;
+
+    private ParallelZipExtractor(ZipFile zipFile, String destPath, TaskProgressListener taskProgressListener,
+                                 InstallJournal journal, BlobStore blobStore) {
+        this.zipFile = zipFile;
+        this.destPath = destPath;
+        this.taskProgressListener = taskProgressListener;
+        this.journal = journal;
+        this.blobStore = blobStore;
+    }
+
+    /**
+     * Entries already listed in {@code journal} are skipped, every newly written entry is appended
+     * to it once it is on disk. An entry that {@code blobStore} may hold is hashed first and
+     * linked from the blob with the same SHA-256 instead of being written, every other entry is
+     * added to the store once it is on disk.
+     */
+    static InstallManifest extract(@NonNull FileChannel channel, @NonNull String destPath,
+                                   TaskProgressListener taskProgressListener, @Nullable InstallJournal journal,
+                                   @Nullable BlobStore blobStore) throws IOException {
+        try (ZipFile zipFile = ZipFile.builder().setSeekableByteChannel(channel).get()) {
+            return new ParallelZipExtractor(zipFile, destPath, taskProgressListener, journal, blobStore).extract();
+        }
+    }
+
+    private InstallManifest extract() throws IOException {
+        ArrayList<ZipArchiveEntry> entries = new ArrayList<>();
+        long totalCompressedSize = 0;
+        long totalSize = 0;
+        long resumedSize = 0;
+        for (ZipArchiveEntry entry : Collections.list(zipFile.getEntriesInPhysicalOrder())) {
+            if (!zipFile.canReadEntryData(entry))
+                throw new IOException("unsupported zip entry " + entry.getName());
+            if (entry.isDirectory()) {
+                FileUtils.makeDirs(new File(destPath + "/" + entry.getName()));
+                continue;
+            }
+            totalSize += Math.max(0, entry.getSize());
+            if (journal != null && journal.isCompleted(entry.getName(), entry.getLocalHeaderOffset(), entry.getSize())) {
+                manifest.put(entry.getName(), entry.getSize(), entry.getCrc());
+                resumedSize += Math.max(0, entry.getSize());
+                continue;
+            }
+            entries.add(entry);
+            totalCompressedSize += Math.max(0, entry.getCompressedSize());
+        }
+
+        progressMeter = new ProgressMeter(taskProgressListener, totalSize);
+        progressMeter.skip(resumedSize);
+
+        int threads = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
+        List<List<ZipArchiveEntry>> ranges = splitByCompressedSize(entries, threads, totalCompressedSize);
+        ExecutorService executor = Executors.newFixedThreadPool(ranges.size());
+        try {
+            ArrayList<Future<?>> futures = new ArrayList<>();
+            for (List<ZipArchiveEntry> range : ranges) {
+                futures.add(executor.submit(() -> {
+                    extractRange(range);
+                    return null;
+                }));
+            }
+            IOException failure = null;
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    if (failure == null) {
+                        Throwable cause = e.getCause();
+                        failure = cause instanceof IOException ? (IOException) cause : new IOException(cause);
+                    }
+                } catch (InterruptedException e) {
+                    isFailed.set(true);
+                    Thread.currentThread().interrupt();
+                    if (failure == null)
+                        failure = new InterruptedIOException("interrupted while extracting zip");
+                }
+            }
+            if (failure != null)
+                throw failure;
+        } finally {
+            executor.shutdown();
+        }
+        progressMeter.finish();
+        return manifest;
+    }
+
+    /**
+     * Each range is inflated on its own worker and written through its own
+     * {@link ArchiveEntryWriter}, which shares its buffer pools with every other writer.
+     */
+    private void extractRange(List<ZipArchiveEntry> range) throws IOException {
+        try (ArchiveEntryWriter entryWriter = new ArchiveEntryWriter(taskProgressListener, 1, blobStore != null)) {
+            for (ZipArchiveEntry entry : range) {
+                if (isFailed.get())
+                    return;
+                FileUtils.throwIfCancelled(taskProgressListener);
+                File file = new File(destPath + "/" + entry.getName());
+                if (blobStore != null && blobStore.hasCandidates(entry.getSize(), entry.getCrc())
+                        && linkFromStore(entryWriter, entry, file))
+                    continue;
+                try (InputStream inStream = progressMeter.wrap(openEntry(entry))) {
+                    entryWriter.write(inStream, entry, file,
+                            (size, crc32, sha256) -> onEntryWritten(entry, file, size, crc32, sha256));
+                }
+            }
+            entryWriter.finish();
+        } catch (IOException | RuntimeException e) {
+            isFailed.set(true);
+            throw e;
+        }
+    }
+
+    /**
+     * Hashes the entry data and links {@code file} to the stored blob with the same content.
+     * Returns false if the store doesn't have it, in which case the entry is inflated once more
+     * to be written.
+     */
+    private boolean linkFromStore(ArchiveEntryWriter entryWriter, ZipArchiveEntry entry, File file)
+            throws IOException {
+        ArchiveEntryWriter.EntryDigest digest;
+        try (InputStream inStream = openEntry(entry)) {
+            digest = entryWriter.hash(inStream);
+        }
+        // a damaged entry is left to fail its checks when it is written
+        if (digest.size != entry.getSize() || digest.crc32 != entry.getCrc()
+                || !blobStore.link(digest.size, digest.crc32, digest.sha256, file))
+            return false;
+        recordEntry(entry);
+        progressMeter.skip(entry.getSize());
+        return true;
+    }
+
+    private InputStream openEntry(ZipArchiveEntry entry) throws IOException {
+        // resolving an entry's data offset moves the shared channel, reading the data itself does not
+        synchronized (zipFile) {
+            return zipFile.getInputStream(entry);
+        }
+    }
+
+    /**
+     * The manifest and the journal vouch for the file, so it must hold exactly what the central
+     * directory describes. Called from a writer thread once the file is complete, before the file
+     * is shared with the store under the SHA-256 of what was written.
+     */
+    private void onEntryWritten(ZipArchiveEntry entry, File file, long size, long crc32,
+                                @Nullable byte[] sha256) throws IOException {
+        if (size != entry.getSize())
+            throw new IOException("zip entry " + entry.getName() + " has " + size
+                    + " bytes, expected " + entry.getSize());
+        if (crc32 != entry.getCrc())
+            throw new IOException("zip entry " + entry.getName() + " failed its CRC32 check");
+        if (blobStore != null && sha256 != null)
+            blobStore.add(file, size, crc32, sha256);
+        recordEntry(entry);
+    }
+
+    private void recordEntry(ZipArchiveEntry entry) throws IOException {
+        manifest.put(entry.getName(), entry.getSize(), entry.getCrc());
+        if (journal != null)
+            journal.append(entry.getName(), entry.getLocalHeaderOffset(), entry.getSize(), entry.getCrc());
+    }
+
+    private static List<List<ZipArchiveEntry>> splitByCompressedSize(List<ZipArchiveEntry> entries, int count,
+                                                                     long totalCompressedSize) {
+        List<List<ZipArchiveEntry>> ranges = new ArrayList<>();
+        long targetSize = Math.max(1, totalCompressedSize / count);
+        List<ZipArchiveEntry> range = new ArrayList<>();
+        long rangeSize = 0;
+        for (ZipArchiveEntry entry : entries) {
+            range.add(entry);
+            rangeSize += Math.max(0, entry.getCompressedSize());
+            if (rangeSize >= targetSize && ranges.size() < count - 1) {
+                ranges.add(range);
+                range = new ArrayList<>();
+                rangeSize = 0;
+            }
+        }
+        if (!range.isEmpty() || ranges.isEmpty())
+            ranges.add(range);
+        return ranges;
+    }
+}
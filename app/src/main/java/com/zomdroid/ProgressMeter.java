@@ -0,0 +1,115 @@
+package com.zomdroid;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts bytes as they are copied and reports them to a {@link TaskProgressListener} at most
+ * every {@link #REPORT_INTERVAL_NS}, together with an exponentially smoothed throughput and the
+ * ETA derived from it. Can be fed from several threads.
+ */
+class ProgressMeter {
+    private static final long REPORT_INTERVAL_NS = 250_000_000L;
+    private static final double SMOOTHING = 0.3;
+
+    private final TaskProgressListener taskProgressListener;
+    private final long totalBytes;
+    private final AtomicLong bytesDone = new AtomicLong();
+    private volatile long lastReportNs = System.nanoTime();
+    private long lastReportBytes;
+    private double bytesPerSecond = -1;
+
+    /**
+     * @param totalBytes 0 or less if unknown, progress is then reported as indeterminate
+     */
+    ProgressMeter(@Nullable TaskProgressListener taskProgressListener, long totalBytes) {
+        this.taskProgressListener = taskProgressListener;
+        this.totalBytes = Math.max(0, totalBytes);
+    }
+
+    void add(long bytes) {
+        long done = bytesDone.addAndGet(bytes);
+        if (taskProgressListener != null && System.nanoTime() - lastReportNs >= REPORT_INTERVAL_NS)
+            report(done, false);
+    }
+
+    /**
+     * Counts bytes that were done without being copied, e.g. resumed from a journal, so they
+     * don't inflate the throughput.
+     */
+    synchronized void skip(long bytes) {
+        lastReportBytes += bytes;
+        bytesDone.addAndGet(bytes);
+    }
+
+    /**
+     * Reports the final count regardless of when the last report was made.
+     */
+    void finish() {
+        if (taskProgressListener != null)
+            report(bytesDone.get(), true);
+    }
+
+    long getBytesDone() {
+        return bytesDone.get();
+    }
+
+    /**
+     * Returns a stream that counts every byte read or skipped through it.
+     */
+    @NonNull
+    InputStream wrap(@NonNull InputStream inStream) {
+        return new FilterInputStream(inStream) {
+            @Override
+            public int read() throws IOException {
+                int b = super.read();
+                if (b >= 0)
+                    add(1);
+                return b;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                int bytesRead = super.read(b, off, len);
+                if (bytesRead > 0)
+                    add(bytesRead);
+                return bytesRead;
+            }
+
+            @Override
+            public long skip(long n) throws IOException {
+                long skipped = super.skip(n);
+                if (skipped > 0)
+                    add(skipped);
+                return skipped;
+            }
+
+            @Override
+            public boolean markSupported() {
+                return false;
+            }
+        };
+    }
+
+    private synchronized void report(long done, boolean force) {
+        long now = System.nanoTime();
+        long elapsedNs = now - lastReportNs;
+        if (!force && elapsedNs < REPORT_INTERVAL_NS)
+            return;
+        if (elapsedNs > 0) {
+            double rate = Math.max(0, done - lastReportBytes) * 1e9 / elapsedNs;
+            bytesPerSecond = bytesPerSecond < 0 ? rate : SMOOTHING * rate + (1 - SMOOTHING) * bytesPerSecond;
+        }
+        lastReportNs = now;
+        lastReportBytes = done;
+        long etaMs = -1;
+        if (totalBytes > 0 && bytesPerSecond > 0)
+            etaMs = (long) (Math.max(0, totalBytes - done) * 1000 / bytesPerSecond);
+        taskProgressListener.onTransferProgress(done, totalBytes, bytesPerSecond, etaMs);
+    }
+}
@@ -0,0 +1,13 @@
+package com.zomdroid;
+
+import java.io.InterruptedIOException;
+
+/**
+ * Thrown from file operations once the task they belong to has been cancelled. It extends
+ * {@link InterruptedIOException} so that it travels through the same paths as I/O failures.
+ */
+public class TaskCancelledException extends InterruptedIOException {
+    public TaskCancelledException() {
+        super("task was cancelled");
+    }
+}
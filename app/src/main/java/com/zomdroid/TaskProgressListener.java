@@ -2,4 +2,25 @@ package com.zomdroid;
 
 public interface TaskProgressListener {
     void onProgressUpdate(String message, int progress, int progressMax);
+
+    /**
+     * Byte level progress reported by a {@link ProgressMeter} while data is being copied.
+     * {@code bytesTotal} is 0 when the size is unknown, {@code bytesPerSecond} and {@code etaMs}
+     * are negative until they can be estimated. By default it is forwarded to
+     * {@link #onProgressUpdate} in KiB.
+     */
+    default void onTransferProgress(long bytesDone, long bytesTotal, double bytesPerSecond, long etaMs) {
+        if (bytesTotal <= 0)
+            onProgressUpdate(null, -1, 0);
+        else
+            onProgressUpdate(null, (int) (Math.min(bytesDone, bytesTotal) / 1024), (int) (bytesTotal / 1024));
+    }
+
+    /**
+     * Polled by long running file operations between entries and inside copy loops. Once it
+     * returns true they stop and throw {@link TaskCancelledException}.
+     */
+    default boolean isCancelled() {
+        return false;
+    }
 }
@@ -0,0 +1,130 @@
+package com.zomdroid;
+
+import android.os.Process;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Deletes directory trees in the background. A tree is first renamed into the trash directory,
+ * which is instant, and then removed by a low priority purge that splits it into subtrees and
+ * deletes them on several workers. Trash left behind by a killed process is purged on the next
+ * {@link #purge()}. Each pass ends by pruning {@link BlobStore} blobs that are no longer linked.
+ */
+public class TrashPurger {
+    private static final String LOG_TAG = TrashPurger.class.getName();
+    private static final String TRASH_DIR_NAME = "trash";
+    private static final int MAX_SPLIT_DEPTH = 3;
+    private static final ThreadPoolExecutor purgeLane = new ThreadPoolExecutor(1, 1,
+            0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(),
+            runnable -> new Thread(() -> {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                runnable.run();
+            }, "TrashPurger"));
+
+    private static File getTrashDir() {
+        return new File(AppStorage.requireSingleton().getHomePath() + "/" + TRASH_DIR_NAME);
+    }
+
+    /**
+     * Renames {@code dir} into the trash directory. Returns false if it could not be moved, in
+     * which case it is left where it was. Does not start a purge.
+     */
+    public static boolean moveToTrash(@NonNull File dir) {
+        if (!dir.exists())
+            return true;
+        File trashDir = getTrashDir();
+        if (!trashDir.isDirectory() && !trashDir.mkdirs() && !trashDir.isDirectory())
+            return false;
+        File target = new File(trashDir, System.nanoTime() + "-" + dir.getName());
+        return dir.renameTo(target);
+    }
+
+    /**
+     * Schedules deletion of everything currently in the trash directory. Purges run one at a
+     * time, so scheduling while one is running only adds a pass for the newly trashed trees.
+     */
+    public static void purge() {
+        if (purgeLane.getQueue().isEmpty())
+            purgeLane.execute(TrashPurger::doPurge);
+    }
+
+    private static void doPurge() {
+        File[] trashed = getTrashDir().listFiles();
+        if (trashed == null || trashed.length == 0)
+            return;
+
+        int threads = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() - 1));
+        ArrayList<File> subtrees = new ArrayList<>();
+        ArrayList<File> splitDirs = new ArrayList<>();
+        for (File file : trashed) {
+            split(file, 0, threads * 4, subtrees, splitDirs);
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads, runnable -> new Thread(() -> {
+            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+            runnable.run();
+        }));
+        try {
+            ArrayList<Future<?>> futures = new ArrayList<>();
+            for (File subtree : subtrees) {
+                futures.add(executor.submit(() -> {
+                    if (subtree.isDirectory())
+                        FileUtils.deleteDirectory(subtree);
+                    else
+                        subtree.delete();
+                }));
+            }
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    Log.e(LOG_TAG, "failed to purge trash", e.getCause());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        // split directories were collected parents first, so children are removed before them
+        for (int i = splitDirs.size() - 1; i >= 0; i--) {
+            splitDirs.get(i).delete();
+        }
+
+        // purged instances may have held the last links to shared game files
+        BlobStore.open().prune();
+    }
+
+    /**
+     * Breaks {@code file} into subtrees for the purge workers, descending until there are at
+     * least {@code target} of them or {@link #MAX_SPLIT_DEPTH} is reached. Directories that were
+     * descended into go to {@code splitDirs} and have to be removed after their subtrees.
+     */
+    private static void split(File file, int depth, int target, ArrayList<File> subtrees, ArrayList<File> splitDirs) {
+        File[] children = depth < MAX_SPLIT_DEPTH && subtrees.size() < target ? file.listFiles() : null;
+        if (children == null) {
+            subtrees.add(file);
+            return;
+        }
+        splitDirs.add(file);
+        for (File child : children) {
+            if (child.isDirectory())
+                split(child, depth + 1, target, subtrees, splitDirs);
+            else
+                subtrees.add(child);
+        }
+    }
+}
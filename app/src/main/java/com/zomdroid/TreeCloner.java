@@ -0,0 +1,158 @@
+package com.zomdroid;
+
+import android.system.ErrnoException;
+import android.system.Os;
+
+import androidx.annotation.NonNull;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Recreates a directory tree somewhere else. Directories are created up front, then files are
+ * handled by several workers, either as hardlinks to the source files or as full copies. Linking
+ * falls back to copying for good once the filesystem refuses it, e.g. across mount points.
+ */
+class TreeCloner {
+    private final File srcDir;
+    private final File destDir;
+    private final Set<String> excludedNames;
+    private final TaskProgressListener taskProgressListener;
+    private final ArrayList<String> paths = new ArrayList<>();
+    private final AtomicInteger nextPath = new AtomicInteger();
+    private final AtomicBoolean canLink;
+    private ProgressMeter progressMeter;
+
+    private TreeCloner(File srcDir, File destDir, boolean link, Set<String> excludedNames,
+                       TaskProgressListener taskProgressListener) {
+        this.srcDir = srcDir;
+        this.destDir = destDir;
+        this.canLink = new AtomicBoolean(link);
+        this.excludedNames = excludedNames;
+        this.taskProgressListener = taskProgressListener;
+    }
+
+    /**
+     * @param link whether files may be hardlinked instead of copied, only for trees that are
+     *             never modified in place
+     * @param excludedNames names of top level entries of {@code srcDir} to leave out
+     */
+    static void clone(@NonNull File srcDir, @NonNull File destDir, boolean link, @NonNull Set<String> excludedNames,
+                      TaskProgressListener taskProgressListener) throws IOException {
+        new TreeCloner(srcDir, destDir, link, excludedNames, taskProgressListener).clone();
+    }
+
+    private void clone() throws IOException {
+        FileUtils.makeDirs(destDir);
+        long totalSize = collect(srcDir, "");
+        progressMeter = new ProgressMeter(taskProgressListener, totalSize);
+
+        int threads = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            ArrayList<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                futures.add(executor.submit(() -> {
+                    cloneNext();
+                    return null;
+                }));
+            }
+            IOException failure = null;
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    if (failure == null) {
+                        Throwable cause = e.getCause();
+                        failure = cause instanceof IOException ? (IOException) cause : new IOException(cause);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    if (failure == null)
+                        failure = new InterruptedIOException("interrupted while cloning files");
+                }
+            }
+            if (failure != null)
+                throw failure;
+        } finally {
+            executor.shutdown();
+        }
+        progressMeter.finish();
+    }
+
+    /**
+     * Creates the directories below {@code dir} in the destination and lists its files. Returns
+     * their total size.
+     */
+    private long collect(File dir, String prefix) throws IOException {
+        File[] children = dir.listFiles();
+        if (children == null)
+            return 0;
+        long size = 0;
+        for (File child : children) {
+            FileUtils.throwIfCancelled(taskProgressListener);
+            if (prefix.isEmpty() && excludedNames.contains(child.getName()))
+                continue;
+            String path = prefix + child.getName();
+            if (child.isDirectory()) {
+                FileUtils.makeDirs(new File(destDir, path));
+                size += collect(child, path + "/");
+            } else {
+                paths.add(path);
+                size += child.length();
+            }
+        }
+        return size;
+    }
+
+    private void cloneNext() throws IOException {
+        int index;
+        while ((index = nextPath.getAndIncrement()) < paths.size()) {
+            FileUtils.throwIfCancelled(taskProgressListener);
+            File src = new File(srcDir, paths.get(index));
+            File dest = new File(destDir, paths.get(index));
+            if (canLink.get()) {
+                try {
+                    Os.link(src.getPath(), dest.getPath());
+                    progressMeter.add(src.length());
+                    continue;
+                } catch (ErrnoException e) {
+                    canLink.set(false);
+                }
+            }
+            copy(src, dest);
+        }
+    }
+
+    private void copy(File src, File dest) throws IOException {
+        try (FileInputStream inStream = new FileInputStream(src);
+             FileOutputStream outStream = new FileOutputStream(dest)) {
+            FileChannel inChannel = inStream.getChannel();
+            FileChannel outChannel = outStream.getChannel();
+            long size = inChannel.size();
+            FileUtils.preallocate(outStream.getFD(), size);
+            long position = 0;
+            while (position < size) {
+                FileUtils.throwIfCancelled(taskProgressListener);
+                long transferred = inChannel.transferTo(position, Math.min(size - position, 8 * 1024 * 1024), outChannel);
+                if (transferred <= 0)
+                    break;
+                position += transferred;
+                progressMeter.add(transferred);
+            }
+            outChannel.truncate(position);
+        }
+    }
+}
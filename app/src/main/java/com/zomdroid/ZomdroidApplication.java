@@ -1,11 +1,17 @@
 package com.zomdroid;
 
+import android.app.Activity;
 import android.app.Application;
 import android.content.SharedPreferences;
 import android.content.pm.PackageManager;
+import android.os.Bundle;
 import android.util.Log;
 
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
 import com.zomdroid.game.GameInstancesManager;
+import com.zomdroid.input.ControlLayoutStore;
 
 import java.io.File;
 import java.io.IOException;
@@ -17,10 +23,45 @@ public class ZomdroidApplication extends Application {
     @Override
     public void onCreate() {
         super.onCreate();
+        long startNs = System.nanoTime();
         GameInstancesManager.init(this);
         LauncherPreferences.init(this);
+        ControlLayoutStore.init(this);
+        Log.i(LOG_TAG, "Loaded launcher state in " + (System.nanoTime() - startNs) / 1000 + " us");
+        registerActivityLifecycleCallbacks(new ActivityLifecycleCallbacks() {
+            @Override
+            public void onActivityPaused(@NonNull Activity activity) {
+                // pending preference changes must not be lost if the process is killed in background
+                LauncherPreferences.requireSingleton().saveToDisk();
+            }
+
+            @Override
+            public void onActivityCreated(@NonNull Activity activity, @Nullable Bundle savedInstanceState) {
+            }
+
+            @Override
+            public void onActivityStarted(@NonNull Activity activity) {
+            }
+
+            @Override
+            public void onActivityResumed(@NonNull Activity activity) {
+            }
+
+            @Override
+            public void onActivityStopped(@NonNull Activity activity) {
+            }
+
+            @Override
+            public void onActivitySaveInstanceState(@NonNull Activity activity, @NonNull Bundle outState) {
+            }
+
+            @Override
+            public void onActivityDestroyed(@NonNull Activity activity) {
+            }
+        });
         captureLogcatToFile();
         updateLauncherVersion();
+        TrashPurger.purge();
     }
 
     private void updateLauncherVersion() {
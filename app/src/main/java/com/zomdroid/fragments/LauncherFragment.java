@@ -10,6 +10,7 @@ import android.content.Intent;
 import android.content.IntentFilter;
 import android.content.ServiceConnection;
 import android.content.SharedPreferences;
+import android.content.UriPermission;
 import android.content.pm.PackageManager;
 import android.graphics.Insets;
 import android.net.Uri;
@@ -25,7 +26,9 @@ import android.view.MenuItem;
 import android.view.View;
 import android.view.ViewGroup;
 import android.view.WindowInsets;
+import android.widget.EditText;
 import android.widget.ImageButton;
+import android.widget.LinearLayout;
 import android.widget.PopupMenu;
 import android.widget.TextView;
 import android.widget.Toast;
@@ -33,12 +36,14 @@ import android.widget.Toast;
 import androidx.activity.result.ActivityResultLauncher;
 import androidx.activity.result.contract.ActivityResultContracts;
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.appcompat.app.AlertDialog;
 import androidx.core.app.ActivityCompat;
 import androidx.core.view.MenuHost;
 import androidx.core.view.MenuProvider;
 import androidx.fragment.app.Fragment;
 import androidx.lifecycle.Lifecycle;
+import androidx.lifecycle.Observer;
 import androidx.localbroadcastmanager.content.LocalBroadcastManager;
 import androidx.navigation.Navigation;
 import androidx.recyclerview.widget.LinearLayoutManager;
@@ -46,17 +51,28 @@ import androidx.recyclerview.widget.RecyclerView;
 
 import com.google.android.material.dialog.MaterialAlertDialogBuilder;
 import com.zomdroid.C;
+import com.zomdroid.ControlsEditorActivity;
 import com.zomdroid.GameActivity;
 import com.zomdroid.InstallerService;
 import com.zomdroid.R;
 
 import com.zomdroid.databinding.FragmentLauncherBinding;
 import com.zomdroid.databinding.TaskProgressDialogBinding;
+import com.zomdroid.databinding.TaskProgressItemBinding;
 import com.zomdroid.game.GameInstance;
 import com.zomdroid.game.GameInstancesManager;
+import com.zomdroid.input.ControlLayoutStore;
+
+import java.nio.file.FileSystemException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 
 public class LauncherFragment extends Fragment {
     private static final String LOG_TAG = LauncherFragment.class.getName();
+    private static final String ZIP_MIME = "application/zip";
 
     private FragmentLauncherBinding binding;
     private RecyclerView.Adapter<?> adapter;
@@ -64,43 +80,64 @@ public class LauncherFragment extends Fragment {
     private TaskProgressDialogBinding taskProgressDialogBinding;
     private BroadcastReceiver taskProgressReceiver;
     private AlertDialog taskProgressDialog;
+    private final LinkedHashMap<Integer, JobRow> jobRows = new LinkedHashMap<>();
+    private int doneJobCount;
 
     private boolean isInstallerServiceBound;
+    private InstallerService installerService;
+    private String resumingGameInstanceName;
 
     private final ServiceConnection installerServiceConnection = new ServiceConnection() {
         @Override
         public void onServiceConnected(ComponentName className, IBinder service) {
             InstallerService.LocalBinder binder = (InstallerService.LocalBinder) service;
-            InstallerService installerService = binder.getService();
+            installerService = binder.getService();
             isInstallerServiceBound = true;
 
-            handleTaskState(installerService.getTaskState().getValue());
-            installerService.getTaskState().observe(LauncherFragment.this, this::handleTaskState);
+            handleJobs(installerService.getJobs().getValue());
+            installerService.getJobs().observe(LauncherFragment.this, this::handleJobs);
         }
 
         @Override
         public void onServiceDisconnected(ComponentName arg0) {
             Log.e(LOG_TAG, "Connection to installer service has been lost");
             isInstallerServiceBound = false;
+            installerService = null;
             taskProgressDialog.dismiss();
+            clearJobRows();
         }
 
-        private void handleTaskState(InstallerService.TaskState state) {
-            if (state == null)
+        private void handleJobs(List<InstallerService.Job> jobs) {
+            if (jobs == null || jobs.isEmpty())
                 return;
-            if (state.isFinished) {
+            int doneCount = 0;
+            boolean isAllFinished = true;
+            for (InstallerService.Job job : jobs) {
+                if (!job.isDone())
+                    continue;
+                doneCount++;
+                if (!job.getCurrentState().isFinished)
+                    isAllFinished = false;
+            }
+            if (doneCount != doneJobCount) {
+                doneJobCount = doneCount;
                 adapter.notifyDataSetChanged();
+            }
+            if (doneCount < jobs.size()) {
+                showJobsDialog(jobs, false);
+                return;
+            }
+
+            if (isAllFinished) {
                 taskProgressDialog.dismiss();
-                unbindInstallerService();
-                requireContext().stopService(new Intent(requireContext(), InstallerService.class));
-            } else if (state.isFinishedWithError) {
-                adapter.notifyDataSetChanged();
-                showTaskFinishedDialog(state.title, state.message);
-                unbindInstallerService();
-                requireContext().stopService(new Intent(requireContext(), InstallerService.class));
+                clearJobRows();
             } else {
-                showTaskProgressDialog(state.title, state.message, state.progress, state.progressMax);
+                showJobsDialog(jobs, true);
             }
+            doneJobCount = 0;
+            installerService.clearDoneJobs();
+            unbindInstallerService();
+            requireContext().stopService(new Intent(requireContext(), InstallerService.class));
         }
     };
 
@@ -111,6 +148,22 @@ public class LauncherFragment extends Fragment {
                 }
             });
 
+    private final ActivityResultLauncher<String> resumeInstallArchiveLauncher =
+            registerForActivityResult(new ActivityResultContracts.GetContent(), uri -> {
+                if (uri == null || resumingGameInstanceName == null) return;
+                resumeInstall(InstallerService.EXTRA_ARCHIVE_URI, uri);
+            });
+
+    private final ActivityResultLauncher<Uri> resumeInstallFolderLauncher =
+            registerForActivityResult(new ActivityResultContracts.OpenDocumentTree(), uri -> {
+                if (uri == null || resumingGameInstanceName == null) return;
+                requireContext().getContentResolver().takePersistableUriPermission(uri, Intent.FLAG_GRANT_READ_URI_PERMISSION);
+                GameInstance gameInstance = GameInstancesManager.requireSingleton().getInstanceByName(resumingGameInstanceName);
+                if (gameInstance != null)
+                    GameInstancesManager.requireSingleton().setInstanceGameFilesFolderUri(gameInstance, uri.toString());
+                resumeInstall(InstallerService.EXTRA_FOLDER_URI, uri);
+            });
+
     @Override
     public View onCreateView(@NonNull LayoutInflater inflater, ViewGroup container, Bundle savedInstanceState) {
         binding = FragmentLauncherBinding.inflate(inflater, container, false);
@@ -139,12 +192,16 @@ public class LauncherFragment extends Fragment {
                 ImageButton launchIb = itemView.findViewById(R.id.game_instance_item_launch_ib);
                 ImageButton settingsIb = itemView.findViewById(R.id.game_instance_item_settings_ib);
 
-                nameTv.setText(gameInstance.getName());
+                boolean isResumable = gameInstance.isResumable();
+                if (isResumable)
+                    nameTv.setText(getString(R.string.game_instance_resumable, gameInstance.getName()));
+                else
+                    nameTv.setText(gameInstance.getName());
 
                 launchIb.setOnClickListener(v -> {
                     if (!gameInstance.isInstalled()) {
-                        Toast.makeText(getContext(), R.string.game_instance_not_installed,
-                                Toast.LENGTH_SHORT).show();
+                        Toast.makeText(getContext(), isResumable ? R.string.game_instance_install_interrupted
+                                : R.string.game_instance_not_installed, Toast.LENGTH_SHORT).show();
                         return;
                     }
                     boolean areDependenciesInstalled = requireContext().getSharedPreferences(C.shprefs.NAME, MODE_PRIVATE)
@@ -164,6 +221,9 @@ public class LauncherFragment extends Fragment {
                 settingsIb.setOnClickListener(v -> {
                     PopupMenu popupMenu = new PopupMenu(requireContext(), v);
                     popupMenu.getMenuInflater().inflate(R.menu.menu_game_instance, popupMenu.getMenu());
+                    popupMenu.getMenu().findItem(R.id.action_game_instance_resume_install).setVisible(isResumable);
+                    popupMenu.getMenu().findItem(R.id.action_game_instance_verify).setVisible(gameInstance.isInstalled());
+                    popupMenu.getMenu().findItem(R.id.action_game_instance_clone).setVisible(gameInstance.isInstalled());
 
                     popupMenu.setOnMenuItemClickListener(new PopupMenu.OnMenuItemClickListener() {
                         @Override
@@ -183,6 +243,20 @@ public class LauncherFragment extends Fragment {
                                 gameInstallerIntent.putExtra(InstallerService.EXTRA_COMMAND, InstallerService.Task.DELETE_GAME_INSTANCE.ordinal());
                                 gameInstallerIntent.putExtra(InstallerService.EXTRA_GAME_INSTANCE_NAME, gameInstance.getName());
                                 requireContext().startForegroundService(gameInstallerIntent);
+                            } else if (itemId == R.id.action_game_instance_clone) {
+                                showCloneDialog(gameInstance);
+                            } else if (itemId == R.id.action_game_instance_control_layout) {
+                                showControlLayoutDialog(gameInstance);
+                            } else if (itemId == R.id.action_game_instance_edit_controls) {
+                                openControlsEditor(ControlLayoutStore.requireSingleton()
+                                        .resolveLayoutName(gameInstance.getControlLayoutName()));
+                            } else if (itemId == R.id.action_game_instance_verify) {
+                                Intent gameInstallerIntent = new Intent(requireContext(), InstallerService.class);
+                                gameInstallerIntent.putExtra(InstallerService.EXTRA_COMMAND, InstallerService.Task.VERIFY_GAME_INSTANCE.ordinal());
+                                gameInstallerIntent.putExtra(InstallerService.EXTRA_GAME_INSTANCE_NAME, gameInstance.getName());
+                                requireContext().startForegroundService(gameInstallerIntent);
+                            } else if (itemId == R.id.action_game_instance_resume_install) {
+                                showResumeInstallDialog(gameInstance);
                             }
                             return false;
                         }
@@ -235,13 +309,20 @@ public class LauncherFragment extends Fragment {
 
         taskProgressDialogBinding = TaskProgressDialogBinding.inflate(getLayoutInflater());
 
+        // jobs keep running when the dialog is dismissed, it comes back when another job is queued
         taskProgressDialog = new MaterialAlertDialogBuilder(requireContext())
                 .setView(taskProgressDialogBinding.getRoot())
-                .setCancelable(false)
+                .setOnCancelListener(dialog -> {
+                    if (taskProgressDialogBinding.progressDialogOkMb.getVisibility() != View.VISIBLE)
+                        return;
+                    clearJobRows();
+                    adapter.notifyDataSetChanged();
+                })
                 .create();
 
         taskProgressDialogBinding.progressDialogOkMb.setOnClickListener(v -> {
             taskProgressDialog.dismiss();
+            clearJobRows();
             adapter.notifyDataSetChanged();
         });
 
@@ -291,55 +372,263 @@ public class LauncherFragment extends Fragment {
         }
     }
 
-    private void showTaskProgressDialog(String title, String message, int progress, int progressMax) {
-        if (title != null) {
-            taskProgressDialogBinding.progressDialogTitleTv.setText(title);
-            taskProgressDialogBinding.progressDialogTitleTv.setVisibility(View.VISIBLE);
+    /**
+     * Shows one row per job. Rows follow their job's own state stream, the job list only decides
+     * which rows exist. A dialog the user dismissed stays hidden until a job is added or all are
+     * done.
+     */
+    private void showJobsDialog(List<InstallerService.Job> jobs, boolean isFinal) {
+        LinearLayout jobsLl = taskProgressDialogBinding.progressDialogJobsLl;
+
+        HashSet<Integer> jobIds = new HashSet<>();
+        for (InstallerService.Job job : jobs) {
+            jobIds.add(job.id);
+        }
+        Iterator<JobRow> rowsIterator = jobRows.values().iterator();
+        while (rowsIterator.hasNext()) {
+            JobRow row = rowsIterator.next();
+            if (jobIds.contains(row.job.id))
+                continue;
+            stopObservingJob(row);
+            jobsLl.removeView(row.binding.getRoot());
+            rowsIterator.remove();
+        }
+
+        boolean hasNewJobs = false;
+        for (InstallerService.Job job : jobs) {
+            JobRow row = jobRows.get(job.id);
+            if (row == null) {
+                hasNewJobs = true;
+                TaskProgressItemBinding itemBinding = TaskProgressItemBinding.inflate(getLayoutInflater(), jobsLl, true);
+                itemBinding.taskProgressItemCancelMb.setOnClickListener(v -> {
+                    job.cancel();
+                    v.setEnabled(false);
+                });
+                row = new JobRow(job, itemBinding);
+                jobRows.put(job.id, row);
+            }
+            if (row.observer == null) {
+                JobRow observedRow = row;
+                row.observer = state -> bindJobRow(observedRow, state);
+                job.getState().observe(this, row.observer);
+            }
+            bindJobRow(row, job.getCurrentState());
+        }
+
+        taskProgressDialogBinding.progressDialogOkMb.setVisibility(isFinal ? View.VISIBLE : View.GONE);
+
+        if (hasNewJobs || isFinal)
+            taskProgressDialog.show();
+    }
+
+    private void bindJobRow(JobRow row, InstallerService.TaskState state) {
+        if (state == null)
+            return;
+        TaskProgressItemBinding itemBinding = row.binding;
+        boolean isDone = state.isFinished || state.isFinishedWithError || state.isCancelled;
+
+        if (state.title != null) {
+            itemBinding.taskProgressItemTitleTv.setText(state.title);
+            itemBinding.taskProgressItemTitleTv.setVisibility(View.VISIBLE);
         } else {
-            taskProgressDialogBinding.progressDialogTitleTv.setVisibility(View.GONE);
+            itemBinding.taskProgressItemTitleTv.setVisibility(View.GONE);
         }
 
+        String message = state.message;
+        if (message == null && !isDone && !row.job.isStarted())
+            message = getString(R.string.task_queued);
+        if (message == null && !isDone)
+            message = state.describeThroughput(requireContext());
         if (message != null) {
-            taskProgressDialogBinding.progressDialogMessageTv.setText(message);
-            taskProgressDialogBinding.progressDialogMessageTv.setVisibility(View.VISIBLE);
+            itemBinding.taskProgressItemMessageTv.setText(message);
+            itemBinding.taskProgressItemMessageTv.setVisibility(View.VISIBLE);
         } else {
-            taskProgressDialogBinding.progressDialogMessageTv.setVisibility(View.GONE);
+            itemBinding.taskProgressItemMessageTv.setVisibility(View.GONE);
         }
 
-        taskProgressDialogBinding.progressDialogProgressLpi.setVisibility(View.VISIBLE);
-        if (progress < 0)
-            taskProgressDialogBinding.progressDialogProgressLpi.setIndeterminate(true);
-        else {
-            taskProgressDialogBinding.progressDialogProgressLpi.setIndeterminate(false);
-            taskProgressDialogBinding.progressDialogProgressLpi.setMax(progressMax);
-            taskProgressDialogBinding.progressDialogProgressLpi.setProgress(progress);
+        if (isDone) {
+            itemBinding.taskProgressItemProgressLpi.setVisibility(View.GONE);
+        } else {
+            itemBinding.taskProgressItemProgressLpi.setVisibility(View.VISIBLE);
+            if (state.progress < 0)
+                itemBinding.taskProgressItemProgressLpi.setIndeterminate(true);
+            else {
+                itemBinding.taskProgressItemProgressLpi.setIndeterminate(false);
+                itemBinding.taskProgressItemProgressLpi.setMax(state.progressMax);
+                itemBinding.taskProgressItemProgressLpi.setProgress(state.progress);
+            }
         }
 
-        taskProgressDialogBinding.progressDialogOkMb.setVisibility(View.GONE);
+        itemBinding.taskProgressItemCancelMb.setVisibility(isDone ? View.GONE : View.VISIBLE);
+    }
 
-        taskProgressDialog.show();
+    private void stopObservingJob(JobRow row) {
+        if (row.observer != null) {
+            row.job.getState().removeObserver(row.observer);
+            row.observer = null;
+        }
     }
 
-    private void showTaskFinishedDialog(String title, String message) {
-        if (title != null) {
-            taskProgressDialogBinding.progressDialogTitleTv.setText(title);
-            taskProgressDialogBinding.progressDialogTitleTv.setVisibility(View.VISIBLE);
-        } else {
-            taskProgressDialogBinding.progressDialogTitleTv.setVisibility(View.GONE);
+    private void clearJobRows() {
+        for (JobRow row : jobRows.values()) {
+            stopObservingJob(row);
         }
+        jobRows.clear();
+        taskProgressDialogBinding.progressDialogJobsLl.removeAllViews();
+    }
 
-        if (message != null) {
-            taskProgressDialogBinding.progressDialogMessageTv.setText(message);
-            taskProgressDialogBinding.progressDialogMessageTv.setVisibility(View.VISIBLE);
-        } else {
-            taskProgressDialogBinding.progressDialogMessageTv.setVisibility(View.GONE);
+    /**
+     * Lets the user pick where the missing files come from: the folder the instance was installed
+     * from if access to it is still held, another folder, or an archive.
+     */
+    private void showResumeInstallDialog(GameInstance gameInstance) {
+        Uri folderUri = getPermittedGameFilesFolderUri(gameInstance);
+        ArrayList<String> items = new ArrayList<>();
+        ArrayList<Runnable> actions = new ArrayList<>();
+        if (folderUri != null) {
+            String documentId = DocumentsContract.getTreeDocumentId(folderUri);
+            items.add(getString(R.string.game_instance_resume_from_same_folder,
+                    documentId.substring(documentId.indexOf(':') + 1)));
+            actions.add(() -> resumeInstall(InstallerService.EXTRA_FOLDER_URI, folderUri));
         }
+        items.add(getString(R.string.game_instance_resume_from_folder));
+        actions.add(() -> resumeInstallFolderLauncher.launch(folderUri));
+        items.add(getString(R.string.game_instance_resume_from_archive));
+        actions.add(() -> resumeInstallArchiveLauncher.launch(ZIP_MIME));
+
+        new MaterialAlertDialogBuilder(requireContext())
+                .setTitle(R.string.game_instance_resume_install)
+                .setItems(items.toArray(new String[0]), (dialog, which) -> {
+                    resumingGameInstanceName = gameInstance.getName();
+                    actions.get(which).run();
+                })
+                .show();
+    }
 
-        taskProgressDialogBinding.progressDialogProgressLpi.setVisibility(View.GONE);
+    @Nullable
+    private Uri getPermittedGameFilesFolderUri(GameInstance gameInstance) {
+        if (gameInstance.getGameFilesFolderUri() == null)
+            return null;
+        Uri folderUri = Uri.parse(gameInstance.getGameFilesFolderUri());
+        for (UriPermission permission : requireContext().getContentResolver().getPersistedUriPermissions()) {
+            if (permission.isReadPermission() && permission.getUri().equals(folderUri))
+                return folderUri;
+        }
+        return null;
+    }
 
-        taskProgressDialogBinding.progressDialogOkMb.setVisibility(View.VISIBLE);
+    /**
+     * @param uriExtra {@link InstallerService#EXTRA_ARCHIVE_URI} or {@link InstallerService#EXTRA_FOLDER_URI}
+     */
+    private void resumeInstall(String uriExtra, Uri uri) {
+        Intent installerIntent = new Intent(requireContext(), InstallerService.class);
+        installerIntent.putExtra(InstallerService.EXTRA_COMMAND, InstallerService.Task.CREATE_GAME_INSTANCE.ordinal());
+        installerIntent.putExtra(InstallerService.EXTRA_GAME_INSTANCE_NAME, resumingGameInstanceName);
+        installerIntent.putExtra(uriExtra, uri);
+        resumingGameInstanceName = null;
+        requireContext().startForegroundService(installerIntent);
+    }
 
-        taskProgressDialog.show();
+    private void showCloneDialog(GameInstance sourceGameInstance) {
+        EditText nameEt = new EditText(requireContext());
+        nameEt.setSingleLine(true);
+        nameEt.setHint(R.string.game_instance_clone_name_hint);
+        AlertDialog cloneDialog = new MaterialAlertDialogBuilder(requireContext())
+                .setTitle(R.string.game_instance_clone)
+                .setView(nameEt)
+                .setPositiveButton(R.string.dialog_button_ok, null)
+                .setNegativeButton(R.string.dialog_button_cancel, null)
+                .create();
+        cloneDialog.setOnShowListener(dialog -> cloneDialog.getButton(AlertDialog.BUTTON_POSITIVE).setOnClickListener(v -> {
+            String name = nameEt.getText().toString();
+            if (!GameInstance.isValidName(name)) {
+                nameEt.setError(getString(R.string.game_instance_name_invalid));
+                return;
+            }
+            if (!GameInstance.isUniqueName(name)) {
+                nameEt.setError(getString(R.string.game_instance_name_already_exists));
+                return;
+            }
+            try {
+                GameInstancesManager.requireSingleton().cloneInstance(sourceGameInstance, name);
+            } catch (FileSystemException e) {
+                throw new RuntimeException(e);
+            }
+            adapter.notifyDataSetChanged();
+            cloneDialog.dismiss();
+
+            Intent installerIntent = new Intent(requireContext(), InstallerService.class);
+            installerIntent.putExtra(InstallerService.EXTRA_COMMAND, InstallerService.Task.CLONE_GAME_INSTANCE.ordinal());
+            installerIntent.putExtra(InstallerService.EXTRA_GAME_INSTANCE_NAME, name);
+            installerIntent.putExtra(InstallerService.EXTRA_SOURCE_GAME_INSTANCE_NAME, sourceGameInstance.getName());
+            requireContext().startForegroundService(installerIntent);
+        }));
+        cloneDialog.show();
+    }
+
+    /**
+     * Lets the user pick the control layout of an instance, or create a new one as a copy of its
+     * current layout and open it in the editor.
+     */
+    private void showControlLayoutDialog(GameInstance gameInstance) {
+        ControlLayoutStore layoutStore = ControlLayoutStore.requireSingleton();
+        List<String> names = layoutStore.getLayoutNames();
+        String currentName = layoutStore.resolveLayoutName(gameInstance.getControlLayoutName());
+        String[] items = new String[names.size() + 1];
+        for (int i = 0; i < names.size(); i++) {
+            items[i] = ControlLayoutStore.DEFAULT_LAYOUT_NAME.equals(names.get(i))
+                    ? getString(R.string.control_layout_default) : names.get(i);
+        }
+        items[names.size()] = getString(R.string.control_layout_new);
+        new MaterialAlertDialogBuilder(requireContext())
+                .setTitle(R.string.game_instance_control_layout)
+                .setSingleChoiceItems(items, names.indexOf(currentName), (dialog, which) -> {
+                    dialog.dismiss();
+                    if (which == names.size()) {
+                        showNewControlLayoutDialog(gameInstance, currentName);
+                        return;
+                    }
+                    String name = names.get(which);
+                    GameInstancesManager.requireSingleton().setInstanceControlLayout(gameInstance,
+                            ControlLayoutStore.DEFAULT_LAYOUT_NAME.equals(name) ? null : name);
+                })
+                .setNegativeButton(R.string.dialog_button_cancel, null)
+                .show();
+    }
+
+    private void showNewControlLayoutDialog(GameInstance gameInstance, String sourceName) {
+        EditText nameEt = new EditText(requireContext());
+        nameEt.setSingleLine(true);
+        nameEt.setHint(R.string.control_layout_name_hint);
+        AlertDialog newLayoutDialog = new MaterialAlertDialogBuilder(requireContext())
+                .setTitle(R.string.control_layout_new)
+                .setView(nameEt)
+                .setPositiveButton(R.string.dialog_button_ok, null)
+                .setNegativeButton(R.string.dialog_button_cancel, null)
+                .create();
+        newLayoutDialog.setOnShowListener(dialog -> newLayoutDialog.getButton(AlertDialog.BUTTON_POSITIVE).setOnClickListener(v -> {
+            String name = nameEt.getText().toString();
+            ControlLayoutStore layoutStore = ControlLayoutStore.requireSingleton();
+            if (!ControlLayoutStore.isValidLayoutName(name)) {
+                nameEt.setError(getString(R.string.control_layout_name_invalid));
+                return;
+            }
+            if (layoutStore.getLayoutNames().contains(name)) {
+                nameEt.setError(getString(R.string.control_layout_name_already_exists));
+                return;
+            }
+            layoutStore.copyLayout(sourceName, name);
+            GameInstancesManager.requireSingleton().setInstanceControlLayout(gameInstance, name);
+            newLayoutDialog.dismiss();
+            openControlsEditor(name);
+        }));
+        newLayoutDialog.show();
+    }
+
+    private void openControlsEditor(String layoutName) {
+        Intent intent = new Intent(requireContext(), ControlsEditorActivity.class);
+        intent.putExtra(ControlsEditorActivity.EXTRA_LAYOUT_NAME, layoutName);
+        startActivity(intent);
     }
 
     private void updateDependencies() {
@@ -359,8 +648,13 @@ public class LauncherFragment extends Fragment {
 
     private void unbindInstallerService() {
         if (this.isInstallerServiceBound) {
+            installerService.getJobs().removeObservers(this);
+            for (JobRow row : jobRows.values()) {
+                stopObservingJob(row);
+            }
             requireContext().unbindService(this.installerServiceConnection);
             isInstallerServiceBound = false;
+            installerService = null;
         }
     }
 
@@ -383,4 +677,15 @@ public class LauncherFragment extends Fragment {
 
         LocalBroadcastManager.getInstance(requireContext()).unregisterReceiver(taskProgressReceiver);
     }
+
+    private static class JobRow {
+        final InstallerService.Job job;
+        final TaskProgressItemBinding binding;
+        Observer<InstallerService.TaskState> observer;
+
+        JobRow(InstallerService.Job job, TaskProgressItemBinding binding) {
+            this.job = job;
+            this.binding = binding;
+        }
+    }
 }
@@ -7,6 +7,7 @@ import android.content.Intent;
 import android.database.Cursor;
 import android.net.Uri;
 import android.os.Bundle;
+import android.provider.DocumentsContract;
 import android.provider.MediaStore;
 import android.text.Editable;
 import android.text.TextWatcher;
@@ -47,6 +48,7 @@ public class NewGameInstanceFragment extends Fragment {
 
     private final String ZIP_MIME = "application/zip";
     private Uri gameFilesZipUri = null;
+    private Uri gameFilesFolderUri = null;
 
 
     private final ActivityResultLauncher<String> actionOpenDocumentLauncher = registerForActivityResult(new ActivityResultContracts.GetContent(),
@@ -55,6 +57,7 @@ public class NewGameInstanceFragment extends Fragment {
                 ContentResolver contentResolver = requireContext().getContentResolver();
                 if (Objects.equals(contentResolver.getType(uri), ZIP_MIME)) {
                     gameFilesZipUri = uri;
+                    gameFilesFolderUri = null;
                     String fileName = null;
                     Cursor cursor = requireContext().getContentResolver().query(
                             uri,
@@ -77,6 +80,18 @@ public class NewGameInstanceFragment extends Fragment {
                 }
             });
 
+    private final ActivityResultLauncher<Uri> actionOpenDocumentTreeLauncher = registerForActivityResult(new ActivityResultContracts.OpenDocumentTree(),
+            uri -> {
+                if (uri == null) return;
+                // kept across restarts, so the installation can be resumed from this folder later
+                requireContext().getContentResolver().takePersistableUriPermission(uri, Intent.FLAG_GRANT_READ_URI_PERMISSION);
+                gameFilesFolderUri = uri;
+                gameFilesZipUri = null;
+                // tree document ids look like "primary:Games/ProjectZomboid", show the path part
+                String documentId = DocumentsContract.getTreeDocumentId(uri);
+                binding.newGameInstanceFilesPathEt.setText(documentId.substring(documentId.indexOf(':') + 1));
+            });
+
     @Override
     public View onCreateView(@NonNull LayoutInflater inflater, ViewGroup container, Bundle savedInstanceState) {
         binding = FragmentNewGameInstanceBinding.inflate(inflater, container, false);
@@ -106,7 +121,7 @@ public class NewGameInstanceFragment extends Fragment {
                         Toast.makeText(requireContext(), R.string.game_instance_name_already_exists, Toast.LENGTH_SHORT).show();
                         return false;
                     }
-                    if (gameFilesZipUri == null) {
+                    if (gameFilesZipUri == null && gameFilesFolderUri == null) {
                         Toast.makeText(requireContext(), R.string.game_instance_no_file_selected, Toast.LENGTH_SHORT).show();
                         return false;
                     }
@@ -119,11 +134,17 @@ public class NewGameInstanceFragment extends Fragment {
                     }
 
                     GameInstancesManager.requireSingleton().registerInstance(gameInstance);
+                    if (gameFilesFolderUri != null)
+                        GameInstancesManager.requireSingleton().setInstanceGameFilesFolderUri(gameInstance,
+                                gameFilesFolderUri.toString());
 
                     Intent installerIntent = new Intent(requireContext(), InstallerService.class);
                     installerIntent.putExtra(InstallerService.EXTRA_COMMAND, InstallerService.Task.CREATE_GAME_INSTANCE.ordinal());
                     installerIntent.putExtra(InstallerService.EXTRA_GAME_INSTANCE_NAME, gameInstance.getName());
-                    installerIntent.putExtra(InstallerService.EXTRA_ARCHIVE_URI, gameFilesZipUri);
+                    if (gameFilesZipUri != null)
+                        installerIntent.putExtra(InstallerService.EXTRA_ARCHIVE_URI, gameFilesZipUri);
+                    else
+                        installerIntent.putExtra(InstallerService.EXTRA_FOLDER_URI, gameFilesFolderUri);
                     Navigation.findNavController(binding.getRoot()).navigateUp();
                     requireContext().startForegroundService(installerIntent);
 
@@ -172,6 +193,10 @@ public class NewGameInstanceFragment extends Fragment {
             actionOpenDocumentLauncher.launch(ZIP_MIME);
         });
 
+        binding.newGameInstanceFolderBrowseIb.setOnClickListener(v -> {
+            actionOpenDocumentTreeLauncher.launch(null);
+        });
+
 
 
     }
@@ -84,6 +84,10 @@ public class SettingsFragment extends Fragment {
         });
 
         binding.settingsResolutionScaleSb.setProgress((int) (LauncherPreferences.requireSingleton().getRenderScale() * 100));
+
+        binding.settingsSharedGameStoreMs.setChecked(LauncherPreferences.requireSingleton().isSharedGameStoreEnabled());
+        binding.settingsSharedGameStoreMs.setOnCheckedChangeListener((buttonView, isChecked) ->
+                LauncherPreferences.requireSingleton().setSharedGameStoreEnabled(isChecked));
     }
 
 
@@ -1,9 +1,14 @@
 package com.zomdroid.game;
 
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
 import com.zomdroid.AppStorage;
 import com.zomdroid.FileUtils;
+import com.zomdroid.JsonUtils;
 
 import java.io.File;
+import java.io.IOException;
 import java.nio.file.FileSystemException;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -12,10 +17,15 @@ import java.util.StringJoiner;
 public class GameInstance {
     private static final String ROOT_DIR_NAME = "instances";
     private static final String GAME_FILES_DIR_NAME = "game";
+    private static final String INSTALL_JOURNAL_FILE_NAME = "install.journal";
+    private static final String INSTALL_MANIFEST_FILE_NAME = "game.manifest";
 
     private String name;
     private String homePath;
     private boolean isInstalled = false;
+    private long createdAtMs;
+    private String controlLayoutName;
+    private String gameFilesFolderUri;
 
     private String[] classPath;
     private String[] extraClassPath;
@@ -29,8 +39,12 @@ public class GameInstance {
     private String javaAgentArgs;
 
 
+    private GameInstance() {
+    }
+
     public GameInstance(String name, InstallationPreset preset) throws FileSystemException {
         this.name = name;
+        this.createdAtMs = System.currentTimeMillis();
         makeDirs();
         this.classPath = preset.classPathArray;
         this.extraClassPath = preset.extraJars;
@@ -44,6 +58,28 @@ public class GameInstance {
         this.javaAgentArgs = preset.javaAgentArgs;
     }
 
+    /**
+     * Creates the directories of a new instance named {@code name} with the same launch
+     * configuration as {@code source}. Files are not copied, see
+     * {@link GameInstancesManager#cloneInstance}.
+     */
+    public GameInstance(String name, GameInstance source) throws FileSystemException {
+        this.name = name;
+        this.createdAtMs = System.currentTimeMillis();
+        makeDirs();
+        this.classPath = source.classPath;
+        this.extraClassPath = source.extraClassPath;
+        this.libraryPath = source.libraryPath;
+        this.libraryPathForEmulation = source.libraryPathForEmulation;
+        this.fmodLibraryPath = source.fmodLibraryPath;
+        this.extraJvmArgs = source.extraJvmArgs;
+        this.args = source.args;
+        this.mainClassName = source.mainClassName;
+        this.javaAgentPath = source.javaAgentPath;
+        this.javaAgentArgs = source.javaAgentArgs;
+        this.controlLayoutName = source.controlLayoutName;
+    }
+
     private static String buildHomePath(String name) {
         return AppStorage.requireSingleton().getHomePath() + "/" + ROOT_DIR_NAME + "/" + name;
     }
@@ -69,6 +105,31 @@ public class GameInstance {
         return this.homePath + "/" + GAME_FILES_DIR_NAME;
     }
 
+    /**
+     * Name of the game files directory inside {@link #getHomePath()}.
+     */
+    public static String getGameDirName() {
+        return GAME_FILES_DIR_NAME;
+    }
+
+    /**
+     * Name of the install journal inside {@link #getHomePath()}.
+     */
+    public static String getInstallJournalName() {
+        return INSTALL_JOURNAL_FILE_NAME;
+    }
+
+    public String getInstallJournalPath() {
+        return this.homePath + "/" + INSTALL_JOURNAL_FILE_NAME;
+    }
+
+    /**
+     * Sizes and checksums of the game files as they were installed, used to verify them later.
+     */
+    public String getInstallManifestPath() {
+        return this.homePath + "/" + INSTALL_MANIFEST_FILE_NAME;
+    }
+
     public String getLdLibraryPathForEmulation() {
         StringJoiner joiner = new StringJoiner(":");
         for(String path: this.libraryPathForEmulation) {
@@ -152,4 +213,144 @@ public class GameInstance {
     public boolean isInstalled() {
         return this.isInstalled;
     }
+
+    /**
+     * Name of the on-screen control layout used by this instance, null for the default layout.
+     * See {@link com.zomdroid.input.ControlLayoutStore}.
+     */
+    public String getControlLayoutName() {
+        return this.controlLayoutName;
+    }
+
+    void setControlLayoutName(String controlLayoutName) {
+        this.controlLayoutName = controlLayoutName;
+    }
+
+    /**
+     * Storage Access Framework tree the game files were last installed from, null if they only
+     * came from archives. Read access to it is persisted, so an installation can be resumed or
+     * repaired from the same folder without picking it again.
+     */
+    public String getGameFilesFolderUri() {
+        return this.gameFilesFolderUri;
+    }
+
+    void setGameFilesFolderUri(String gameFilesFolderUri) {
+        this.gameFilesFolderUri = gameFilesFolderUri;
+    }
+
+    /**
+     * Keeps instances in the order they were created, records are loaded in no particular order.
+     */
+    long getCreatedAtMs() {
+        return this.createdAtMs;
+    }
+
+    void setCreatedAtMs(long createdAtMs) {
+        this.createdAtMs = createdAtMs;
+    }
+
+    /**
+     * Whether an installation was started for this instance and didn't finish, so it can be
+     * resumed from its install journal.
+     */
+    public boolean isResumable() {
+        return !this.isInstalled && new File(getInstallJournalPath()).exists();
+    }
+
+    /**
+     * Streaming codec for instance records, field names match the ones reflective Gson used so
+     * existing records keep loading. Unknown names are skipped.
+     */
+    public static class JsonAdapter extends TypeAdapter<GameInstance> {
+        @Override
+        public void write(JsonWriter out, GameInstance value) throws IOException {
+            out.beginObject();
+            out.name("name").value(value.name);
+            out.name("homePath").value(value.homePath);
+            out.name("isInstalled").value(value.isInstalled);
+            out.name("createdAtMs").value(value.createdAtMs);
+            out.name("classPath");
+            JsonUtils.writeStringArray(out, value.classPath);
+            out.name("extraClassPath");
+            JsonUtils.writeStringArray(out, value.extraClassPath);
+            out.name("libraryPath");
+            JsonUtils.writeStringArray(out, value.libraryPath);
+            out.name("libraryPathForEmulation");
+            JsonUtils.writeStringArray(out, value.libraryPathForEmulation);
+            out.name("fmodLibraryPath").value(value.fmodLibraryPath);
+            out.name("extraJvmArgs");
+            JsonUtils.writeStringArray(out, value.extraJvmArgs);
+            out.name("args");
+            JsonUtils.writeStringArray(out, value.args);
+            out.name("mainClassName").value(value.mainClassName);
+            out.name("javaAgentPath").value(value.javaAgentPath);
+            out.name("javaAgentArgs").value(value.javaAgentArgs);
+            out.name("controlLayoutName").value(value.controlLayoutName);
+            out.name("gameFilesFolderUri").value(value.gameFilesFolderUri);
+            out.endObject();
+        }
+
+        @Override
+        public GameInstance read(JsonReader in) throws IOException {
+            GameInstance value = new GameInstance();
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "name":
+                        value.name = JsonUtils.readString(in);
+                        break;
+                    case "homePath":
+                        value.homePath = JsonUtils.readString(in);
+                        break;
+                    case "isInstalled":
+                        value.isInstalled = in.nextBoolean();
+                        break;
+                    case "createdAtMs":
+                        value.createdAtMs = in.nextLong();
+                        break;
+                    case "classPath":
+                        value.classPath = JsonUtils.readStringArray(in);
+                        break;
+                    case "extraClassPath":
+                        value.extraClassPath = JsonUtils.readStringArray(in);
+                        break;
+                    case "libraryPath":
+                        value.libraryPath = JsonUtils.readStringArray(in);
+                        break;
+                    case "libraryPathForEmulation":
+                        value.libraryPathForEmulation = JsonUtils.readStringArray(in);
+                        break;
+                    case "fmodLibraryPath":
+                        value.fmodLibraryPath = JsonUtils.readString(in);
+                        break;
+                    case "extraJvmArgs":
+                        value.extraJvmArgs = JsonUtils.readStringArray(in);
+                        break;
+                    case "args":
+                        value.args = JsonUtils.readStringArray(in);
+                        break;
+                    case "mainClassName":
+                        value.mainClassName = JsonUtils.readString(in);
+                        break;
+                    case "javaAgentPath":
+                        value.javaAgentPath = JsonUtils.readString(in);
+                        break;
+                    case "javaAgentArgs":
+                        value.javaAgentArgs = JsonUtils.readString(in);
+                        break;
+                    case "controlLayoutName":
+                        value.controlLayoutName = JsonUtils.readString(in);
+                        break;
+                    case "gameFilesFolderUri":
+                        value.gameFilesFolderUri = JsonUtils.readString(in);
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+            return value;
+        }
+    }
 }
@@ -4,25 +4,56 @@ import static android.content.Context.MODE_PRIVATE;
 
 import android.content.Context;
 import android.content.SharedPreferences;
+import android.util.Log;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
 import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
 import com.google.gson.reflect.TypeToken;
+import com.zomdroid.AppStorage;
 import com.zomdroid.C;
-
+import com.zomdroid.JsonUtils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
 import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystemException;
 import java.util.ArrayList;
-
+import java.util.Comparator;
+import java.util.HashMap;
+
+/**
+ * Registry of game instances. Each instance is persisted as its own record file, so registering
+ * or updating one instance rewrites only that record, and lookups by name go through an in-memory
+ * index. Records are written next to their final name and renamed into place, so a crash never
+ * leaves a truncated one behind. Instances saved by older versions as a single JSON list in the
+ * shared preferences are moved to record files on first start.
+ */
 public class GameInstancesManager {
+    private static final String LOG_TAG = GameInstancesManager.class.getName();
+    private static final String RECORDS_DIR_NAME = "instance_records";
+    private static final String RECORD_FILE_SUFFIX = ".json";
+    private static final String TMP_FILE_SUFFIX = ".tmp";
+
     private static GameInstancesManager singleton;
-    private ArrayList<GameInstance> gameInstances = new ArrayList<>();
-    private Gson gson = new Gson();
-    private SharedPreferences sharedPreferences;
+    private final ArrayList<GameInstance> gameInstances = new ArrayList<>();
+    private final HashMap<String, GameInstance> instancesByName = new HashMap<>();
+    private final Gson gson = JsonUtils.getGson();
+    private final SharedPreferences sharedPreferences;
+    private final File recordsDir;
 
 
     private GameInstancesManager(Context applicationContext) {
         this.sharedPreferences = applicationContext.getSharedPreferences(C.shprefs.NAME, MODE_PRIVATE);
+        this.recordsDir = new File(AppStorage.requireSingleton().getHomePath() + "/" + RECORDS_DIR_NAME);
+        migrateLegacyInstances();
         loadInstancesFromDisk();
     }
     public static void init(Context applicationContext) {
@@ -41,48 +72,155 @@ public class GameInstancesManager {
         return singleton;
     }
 
+    /**
+     * Instances in the order they were created. The list is owned by the manager and must not be
+     * modified.
+     */
     @NonNull
     public ArrayList<GameInstance> getInstances() {
         return gameInstances;
     }
 
-    public GameInstance getInstanceByName(String name) {
-        for (GameInstance gameInstance : this.gameInstances) {
-            if (gameInstance.getName().equals(name))
-                return gameInstance;
-        }
-        return null;
+    @Nullable
+    public synchronized GameInstance getInstanceByName(String name) {
+        return instancesByName.get(name);
     }
 
-    public void registerInstance(@NonNull GameInstance gameInstance) {
+    public synchronized void registerInstance(@NonNull GameInstance gameInstance) {
         this.gameInstances.add(gameInstance);
-        saveInstancesToDisk();
+        this.instancesByName.put(gameInstance.getName(), gameInstance);
+        saveInstanceToDisk(gameInstance);
     }
 
-    public void unregisterInstance(@NonNull GameInstance gameInstance) {
+    public synchronized void unregisterInstance(@NonNull GameInstance gameInstance) {
         this.gameInstances.remove(gameInstance);
-        saveInstancesToDisk();
+        this.instancesByName.remove(gameInstance.getName());
+        File recordFile = getRecordFile(gameInstance.getName());
+        if (recordFile.exists() && !recordFile.delete())
+            Log.e(LOG_TAG, "failed to delete " + recordFile);
     }
 
-    public void setInstanceInstalled(@NonNull GameInstance gameInstance) {
+    /**
+     * Registers a new, not yet installed instance with the configuration of {@code source}. Its
+     * files are filled in by the installer service.
+     */
+    @NonNull
+    public GameInstance cloneInstance(@NonNull GameInstance source, @NonNull String name) throws FileSystemException {
+        GameInstance gameInstance = new GameInstance(name, source);
+        registerInstance(gameInstance);
+        return gameInstance;
+    }
+
+    public synchronized void setInstanceInstalled(@NonNull GameInstance gameInstance) {
         gameInstance.setInstalled(true);
-        saveInstancesToDisk();
+        saveInstanceToDisk(gameInstance);
+    }
+
+    public synchronized void setInstanceUninstalled(@NonNull GameInstance gameInstance) {
+        gameInstance.setInstalled(false);
+        saveInstanceToDisk(gameInstance);
+    }
+
+    public synchronized void setInstanceControlLayout(@NonNull GameInstance gameInstance, String controlLayoutName) {
+        gameInstance.setControlLayoutName(controlLayoutName);
+        saveInstanceToDisk(gameInstance);
+    }
+
+    public synchronized void setInstanceGameFilesFolderUri(@NonNull GameInstance gameInstance, String gameFilesFolderUri) {
+        gameInstance.setGameFilesFolderUri(gameFilesFolderUri);
+        saveInstanceToDisk(gameInstance);
+    }
+
+    private File getRecordFile(String name) {
+        return new File(recordsDir, name + RECORD_FILE_SUFFIX);
     }
 
     private void loadInstancesFromDisk() {
-        String json = this.sharedPreferences.getString(C.shprefs.keys.GAME_INSTANCES, null);
-        if (json != null) {
-            Type type = new TypeToken<ArrayList<GameInstance>>(){}.getType();
-            ArrayList<GameInstance> savedInstances = gson.fromJson(json, type);
-            if (savedInstances != null) {
-                gameInstances.addAll(savedInstances);
+        File[] files = recordsDir.listFiles();
+        if (files == null)
+            return;
+        for (File file : files) {
+            String fileName = file.getName();
+            if (fileName.endsWith(TMP_FILE_SUFFIX)) {
+                // left behind by a write that never got renamed into place
+                file.delete();
+                continue;
+            }
+            if (!fileName.endsWith(RECORD_FILE_SUFFIX))
+                continue;
+            GameInstance gameInstance = readRecord(file);
+            if (gameInstance == null || gameInstance.getName() == null) {
+                Log.e(LOG_TAG, "skipping unreadable instance record " + file);
+                continue;
             }
+            gameInstances.add(gameInstance);
+            instancesByName.put(gameInstance.getName(), gameInstance);
+        }
+        gameInstances.sort(Comparator.comparingLong(GameInstance::getCreatedAtMs));
+    }
+
+    @Nullable
+    private GameInstance readRecord(File file) {
+        try (Reader reader = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)) {
+            return gson.fromJson(reader, GameInstance.class);
+        } catch (IOException | JsonParseException e) {
+            Log.e(LOG_TAG, "failed to read " + file, e);
+            return null;
+        }
+    }
+
+    private void saveInstanceToDisk(GameInstance gameInstance) {
+        try {
+            writeRecord(gameInstance);
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "failed to save instance " + gameInstance.getName(), e);
         }
     }
 
-    private void saveInstancesToDisk() {
-        String json = this.gson.toJson(this.gameInstances);
-        this.sharedPreferences.edit().putString(C.shprefs.keys.GAME_INSTANCES, json).apply();
+    private void writeRecord(GameInstance gameInstance) throws IOException {
+        if (!recordsDir.isDirectory() && !recordsDir.mkdirs() && !recordsDir.isDirectory())
+            throw new IOException("failed to create " + recordsDir);
+        File recordFile = getRecordFile(gameInstance.getName());
+        File tmpFile = new File(recordFile.getPath() + TMP_FILE_SUFFIX);
+        try (FileOutputStream outStream = new FileOutputStream(tmpFile)) {
+            outStream.write(gson.toJson(gameInstance).getBytes(StandardCharsets.UTF_8));
+            outStream.getFD().sync();
+        }
+        if (!tmpFile.renameTo(recordFile))
+            throw new IOException("failed to move " + tmpFile + " to " + recordFile);
+    }
+
+    /**
+     * Writes a record for every instance in the legacy list and drops the list once all of them
+     * are on disk. An interrupted migration runs again on the next start.
+     */
+    private void migrateLegacyInstances() {
+        String json = this.sharedPreferences.getString(C.shprefs.keys.GAME_INSTANCES, null);
+        if (json == null)
+            return;
+        Type type = new TypeToken<ArrayList<GameInstance>>(){}.getType();
+        ArrayList<GameInstance> savedInstances;
+        try {
+            savedInstances = gson.fromJson(json, type);
+        } catch (JsonParseException e) {
+            Log.e(LOG_TAG, "failed to parse legacy game instances", e);
+            return;
+        }
+        if (savedInstances != null) {
+            // legacy instances have no creation time, keep the order they were listed in
+            long createdAtMs = 0;
+            for (GameInstance gameInstance : savedInstances) {
+                if (gameInstance.getCreatedAtMs() == 0)
+                    gameInstance.setCreatedAtMs(++createdAtMs);
+                try {
+                    writeRecord(gameInstance);
+                } catch (IOException e) {
+                    Log.e(LOG_TAG, "failed to migrate instance " + gameInstance.getName(), e);
+                    return;
+                }
+            }
+        }
+        this.sharedPreferences.edit().remove(C.shprefs.keys.GAME_INSTANCES).commit();
     }
 
 }
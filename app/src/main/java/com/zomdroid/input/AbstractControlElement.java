@@ -5,13 +5,17 @@ import android.graphics.Color;
 import android.graphics.ColorFilter;
 import android.graphics.PorterDuff;
 import android.graphics.PorterDuffColorFilter;
+import android.graphics.RectF;
 import android.util.Log;
-import android.view.MotionEvent;
 
 import java.util.ArrayList;
 
 
-public abstract class AbstractControlElement {
+/**
+ * Control drawn over the game. Pointers are routed to it by the {@link PointerDispatcher} of its
+ * view: it receives the pointers that go down over it and owns them until they go up.
+ */
+public abstract class AbstractControlElement implements PointerDispatcher.Target {
     private static final String LOG_TAG = AbstractControlElement.class.getName();
     protected static final float MIN_SCALE = 0.5f;
     protected static final float MAX_SCALE = 2.0f;
@@ -52,10 +56,13 @@ public abstract class AbstractControlElement {
     public float getCenterX() {
         throw new UnsupportedOperationException();
     }
-    public abstract boolean handleMotionEvent(MotionEvent e);
-
     public abstract void draw(Canvas canvas);
     public abstract boolean isPointOver(float x, float y);
+
+    /**
+     * Sets {@code outBounds} to a rectangle containing every point {@link #isPointOver} accepts.
+     */
+    public abstract void getBounds(RectF outBounds);
     public abstract void setHighlighted(boolean highlighted);
     public abstract void setAlpha(int alpha);
     public abstract int getAlpha();
@@ -141,13 +148,13 @@ public abstract class AbstractControlElement {
                 && binding.ordinal() <= GLFWBinding.GAMEPAD_MAX_ORDINAL) {
             switch (binding) {
                 case GAMEPAD_LTRIGGER:
-                    InputNativeInterface.sendJoystickAxis(GLFWBinding.GAMEPAD_AXIS_LT.code, isPressed ? 1 : 0);
+                    InputEventBuffer.sendJoystickAxis(GLFWBinding.GAMEPAD_AXIS_LT.code, isPressed ? 1 : 0);
                     break;
                 case GAMEPAD_RTRIGGER:
-                    InputNativeInterface.sendJoystickAxis(GLFWBinding.GAMEPAD_AXIS_RT.code, isPressed ? 1 : 0);
+                    InputEventBuffer.sendJoystickAxis(GLFWBinding.GAMEPAD_AXIS_RT.code, isPressed ? 1 : 0);
                     break;
                 default:
-                    InputNativeInterface.sendJoystickButton(binding.code, isPressed);
+                    InputEventBuffer.sendJoystickButton(binding.code, isPressed);
                     break;
             }
         }
@@ -157,10 +164,10 @@ public abstract class AbstractControlElement {
         Log.v(LOG_TAG, "handleMNKBinding binding=" + binding + " isPressed=" + isPressed);
         if (binding.ordinal() >= GLFWBinding.MOUSE_BUTTON_LEFT.ordinal()
                 && binding.ordinal() <= GLFWBinding.MOUSE_BUTTON_8.ordinal()) {
-            InputNativeInterface.sendMouseButton(binding.code, isPressed);
+            InputEventBuffer.sendMouseButton(binding.code, isPressed);
         } else if (binding.ordinal() >= GLFWBinding.KEY_SPACE.ordinal()
                 && binding.ordinal() <= GLFWBinding.KEY_WORLD_2.ordinal()) {
-            InputNativeInterface.sendKeyboard(binding.code, isPressed);
+            InputEventBuffer.sendKeyboard(binding.code, isPressed);
         }
     }
 
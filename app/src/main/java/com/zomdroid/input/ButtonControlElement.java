@@ -10,7 +10,6 @@ import android.graphics.drawable.ShapeDrawable;
 import android.graphics.drawable.shapes.OvalShape;
 import android.graphics.drawable.shapes.RectShape;
 import android.text.TextPaint;
-import android.view.MotionEvent;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
@@ -53,28 +52,20 @@ public class ButtonControlElement extends AbstractControlElement {
 
 
     @Override
-    public boolean handleMotionEvent(MotionEvent e) {
-        int action = e.getActionMasked();
-        int actionIndex = e.getActionIndex();
-        int pointerId = e.getPointerId(actionIndex);
-        switch (action) {
-            case MotionEvent.ACTION_DOWN:
-            case MotionEvent.ACTION_POINTER_DOWN: {
-                float x = e.getX(actionIndex);
-                float y = e.getY(actionIndex);
-                if (!this.drawable.isPointOver(x, y)) return false;
-                this.pointerId = pointerId;
-                this.dispatchEvent(true);
-                return true;
-            }
-            case MotionEvent.ACTION_UP:
-            case MotionEvent.ACTION_POINTER_UP:
-                if (pointerId != this.pointerId) return false;
-                this.pointerId = -1;
-                this.dispatchEvent(false);
-                return true;
-        }
-        return false;
+    public void onPointerDown(int pointerId, float x, float y) {
+        this.pointerId = pointerId;
+        this.dispatchEvent(true);
+    }
+
+    @Override
+    public void onPointerMove(int pointerId, float x, float y) {
+    }
+
+    @Override
+    public void onPointerUp(int pointerId) {
+        if (pointerId != this.pointerId) return;
+        this.pointerId = -1;
+        this.dispatchEvent(false);
     }
 
     @Override
@@ -91,6 +82,12 @@ public class ButtonControlElement extends AbstractControlElement {
         return this.drawable.isPointOver(x, y);
     }
 
+    @Override
+    public void getBounds(RectF outBounds) {
+        outBounds.set(this.drawable.x, this.drawable.y,
+                this.drawable.x + this.drawable.width, this.drawable.y + this.drawable.height);
+    }
+
     @Override
     public void setHighlighted(boolean highlighted) {
         if (highlighted) {
@@ -105,6 +102,7 @@ public class ButtonControlElement extends AbstractControlElement {
     public void setScale(float scale) {
         scale = Math.clamp(scale, MIN_SCALE, MAX_SCALE);
         this.drawable.setScale(scale);
+        this.parentView.onElementBoundsChanged();
         this.parentView.invalidate();
     }
 
@@ -127,12 +125,14 @@ public class ButtonControlElement extends AbstractControlElement {
     @Override
     public void setCenterPosition(float x, float y) {
         this.drawable.setCenterPosition(x, y);
+        this.parentView.onElementBoundsChanged();
         this.parentView.invalidate();
     }
 
     @Override
     public void moveCenterPosition(float dx, float dy) {
         this.drawable.moveCenterPosition(dx, dy);
+        this.parentView.onElementBoundsChanged();
         this.parentView.invalidate();
     }
 
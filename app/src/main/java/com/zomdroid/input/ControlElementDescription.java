@@ -4,8 +4,16 @@ import android.graphics.Color;
 
 import androidx.annotation.NonNull;
 
+import com.google.gson.JsonParseException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import com.zomdroid.JsonUtils;
 import com.zomdroid.R;
 
+import java.io.IOException;
+import java.util.ArrayList;
+
 public class ControlElementDescription { public enum Icon {
         NO_ICON(R.drawable.ic_void),
         GAMEPAD_BACK_ICON(R.drawable.mt_icon_stack),
@@ -97,4 +105,104 @@ public class ControlElementDescription { public enum Icon {
     }
 
 
+    /**
+     * Streaming codec for layouts, field names match the ones reflective Gson used so saved
+     * layouts and the default layout asset keep loading. Descriptions are built through the
+     * constructor, so invalid ones are rejected while parsing.
+     * <p>
+     * Unknown bindings are dropped. An element left with the wrong number of bindings for its
+     * type, e.g. a DPAD whose directions no longer line up, is still rejected. A missing or
+     * unknown input type reads as GAMEPAD, where reflective Gson left it null and the element
+     * then failed to save in the binary layout format.
+     */
+    public static class JsonAdapter extends TypeAdapter<ControlElementDescription> {
+        @Override
+        public void write(JsonWriter out, ControlElementDescription value) throws IOException {
+            out.beginObject();
+            out.name("alpha").value(value.alpha);
+            out.name("bindings").beginArray();
+            for (GLFWBinding binding : value.bindings) {
+                out.value(binding.name());
+            }
+            out.endArray();
+            out.name("centerXRelative").value(value.centerXRelative);
+            out.name("centerYRelative").value(value.centerYRelative);
+            out.name("color").value(value.color);
+            out.name("icon").value(value.icon.name());
+            out.name("inputType").value(value.inputType == null ? null : value.inputType.name());
+            out.name("scale").value(value.scale);
+            out.name("text").value(value.text);
+            out.name("type").value(value.type.name());
+            out.endObject();
+        }
+
+        @Override
+        public ControlElementDescription read(JsonReader in) throws IOException {
+            float centerXRelative = 0.5f;
+            float centerYRelative = 0.5f;
+            float scale = 1.f;
+            AbstractControlElement.Type type = null;
+            ArrayList<GLFWBinding> bindings = new ArrayList<>();
+            String text = null;
+            int color = Color.LTGRAY;
+            int alpha = 255;
+            AbstractControlElement.InputType inputType = AbstractControlElement.InputType.GAMEPAD;
+            Icon icon = Icon.NO_ICON;
+
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "centerXRelative":
+                        centerXRelative = (float) in.nextDouble();
+                        break;
+                    case "centerYRelative":
+                        centerYRelative = (float) in.nextDouble();
+                        break;
+                    case "scale":
+                        scale = (float) in.nextDouble();
+                        break;
+                    case "type":
+                        type = JsonUtils.readEnum(in, AbstractControlElement.Type.class, null);
+                        break;
+                    case "bindings":
+                        in.beginArray();
+                        while (in.hasNext()) {
+                            // a binding removed in a later version is dropped, the element keeps the others
+                            GLFWBinding binding = JsonUtils.readEnum(in, GLFWBinding.class, null);
+                            if (binding != null)
+                                bindings.add(binding);
+                        }
+                        in.endArray();
+                        break;
+                    case "text":
+                        text = JsonUtils.readString(in);
+                        break;
+                    case "color":
+                        color = in.nextInt();
+                        break;
+                    case "alpha":
+                        alpha = in.nextInt();
+                        break;
+                    case "inputType":
+                        inputType = JsonUtils.readEnum(in, AbstractControlElement.InputType.class, inputType);
+                        break;
+                    case "icon":
+                        icon = JsonUtils.readEnum(in, Icon.class, icon);
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+
+            if (type == null)
+                throw new JsonParseException("Control element without a known type at " + in.getPath());
+            try {
+                return new ControlElementDescription(centerXRelative, centerYRelative, scale, type,
+                        bindings.toArray(new GLFWBinding[0]), text, color, alpha, inputType, icon);
+            } catch (IllegalStateException e) {
+                throw new JsonParseException("Invalid control element at " + in.getPath(), e);
+            }
+        }
+    }
 }
@@ -0,0 +1,71 @@
+package com.zomdroid.input;
+
+import android.graphics.RectF;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Uniform grid over the controls view, each cell listing the elements whose bounds overlap it.
+ * Hit-testing a point only checks the elements of its cell instead of the whole layout. Cells
+ * keep the layout order, so overlapping elements resolve to the same one a scan of the list would.
+ */
+class ControlHitGrid {
+    private static final int COLUMNS = 16;
+    private static final int ROWS = 9;
+
+    private final ArrayList<ArrayList<AbstractControlElement>> cells = new ArrayList<>(COLUMNS * ROWS);
+    private final RectF bounds = new RectF();
+    private float cellWidth;
+    private float cellHeight;
+
+    ControlHitGrid() {
+        for (int i = 0; i < COLUMNS * ROWS; i++) {
+            this.cells.add(new ArrayList<>());
+        }
+    }
+
+    void rebuild(@NonNull List<AbstractControlElement> elements, int width, int height) {
+        for (ArrayList<AbstractControlElement> cell : this.cells) {
+            cell.clear();
+        }
+        if (width <= 0 || height <= 0) return;
+        this.cellWidth = (float) width / COLUMNS;
+        this.cellHeight = (float) height / ROWS;
+        for (AbstractControlElement element : elements) {
+            element.getBounds(this.bounds);
+            int firstColumn = getColumn(this.bounds.left);
+            int lastColumn = getColumn(this.bounds.right);
+            int firstRow = getRow(this.bounds.top);
+            int lastRow = getRow(this.bounds.bottom);
+            for (int row = firstRow; row <= lastRow; row++) {
+                for (int column = firstColumn; column <= lastColumn; column++) {
+                    this.cells.get(row * COLUMNS + column).add(element);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the first element in layout order that contains the point, or null.
+     */
+    @Nullable
+    AbstractControlElement findElementAt(float x, float y) {
+        if (this.cellWidth <= 0 || this.cellHeight <= 0) return null;
+        for (AbstractControlElement element : this.cells.get(getRow(y) * COLUMNS + getColumn(x))) {
+            if (element.isPointOver(x, y)) return element;
+        }
+        return null;
+    }
+
+    private int getColumn(float x) {
+        return Math.clamp((int) Math.floor(x / this.cellWidth), 0, COLUMNS - 1);
+    }
+
+    private int getRow(float y) {
+        return Math.clamp((int) Math.floor(y / this.cellHeight), 0, ROWS - 1);
+    }
+}
@@ -0,0 +1,122 @@
+package com.zomdroid.input;
+
+import androidx.annotation.NonNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Binary form of a control layout. Enum values are stored by name so that reordering or
+ * extending {@link GLFWBinding} and the other enums doesn't invalidate saved layouts.
+ * <pre>
+ * int    magic 'ZCTL'
+ * short  version
+ * short  element count
+ * per element:
+ *   float  centerXRelative, centerYRelative, scale
+ *   utf    type, inputType, icon
+ *   int    color
+ *   byte   alpha
+ *   bool   has text, followed by utf text if set
+ *   byte   binding count, followed by utf binding names
+ * long   CRC32 of everything above
+ * </pre>
+ */
+class ControlLayoutCodec {
+    private static final int MAGIC = 0x5A43544C;
+    private static final int VERSION = 1;
+
+    @NonNull
+    static byte[] encode(@NonNull List<ControlElementDescription> descriptions) throws IOException {
+        ByteArrayOutputStream byteStream = new ByteArrayOutputStream(64 + descriptions.size() * 64);
+        DataOutputStream out = new DataOutputStream(byteStream);
+        out.writeInt(MAGIC);
+        out.writeShort(VERSION);
+        out.writeShort(descriptions.size());
+        for (ControlElementDescription description : descriptions) {
+            out.writeFloat(description.centerXRelative);
+            out.writeFloat(description.centerYRelative);
+            out.writeFloat(description.scale);
+            out.writeUTF(description.type.name());
+            out.writeUTF(description.inputType.name());
+            out.writeUTF(description.icon.name());
+            out.writeInt(description.color);
+            out.writeByte(description.alpha);
+            out.writeBoolean(description.text != null);
+            if (description.text != null)
+                out.writeUTF(description.text);
+            out.writeByte(description.bindings.length);
+            for (GLFWBinding binding : description.bindings) {
+                out.writeUTF(binding.name());
+            }
+        }
+        out.flush();
+        CRC32 crc32 = new CRC32();
+        crc32.update(byteStream.toByteArray());
+        out.writeLong(crc32.getValue());
+        out.flush();
+        return byteStream.toByteArray();
+    }
+
+    /**
+     * @throws IOException if the data is truncated, corrupt, of an unknown version or describes
+     *                     an invalid element
+     */
+    @NonNull
+    static ArrayList<ControlElementDescription> decode(@NonNull byte[] bytes) throws IOException {
+        if (bytes.length < 16)
+            throw new IOException("Control layout is truncated");
+        CRC32 crc32 = new CRC32();
+        crc32.update(bytes, 0, bytes.length - 8);
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+        in.skipBytes(bytes.length - 8);
+        if (in.readLong() != crc32.getValue())
+            throw new IOException("Control layout checksum mismatch");
+
+        in = new DataInputStream(new ByteArrayInputStream(bytes, 0, bytes.length - 8));
+        if (in.readInt() != MAGIC)
+            throw new IOException("Not a control layout");
+        int version = in.readUnsignedShort();
+        if (version != VERSION)
+            throw new IOException("Unsupported control layout version " + version);
+        int count = in.readUnsignedShort();
+        ArrayList<ControlElementDescription> descriptions = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            float centerXRelative = in.readFloat();
+            float centerYRelative = in.readFloat();
+            float scale = in.readFloat();
+            AbstractControlElement.Type type = readEnum(in, AbstractControlElement.Type.class);
+            AbstractControlElement.InputType inputType = readEnum(in, AbstractControlElement.InputType.class);
+            ControlElementDescription.Icon icon = readEnum(in, ControlElementDescription.Icon.class);
+            int color = in.readInt();
+            int alpha = in.readUnsignedByte();
+            String text = in.readBoolean() ? in.readUTF() : null;
+            GLFWBinding[] bindings = new GLFWBinding[in.readUnsignedByte()];
+            for (int j = 0; j < bindings.length; j++) {
+                bindings[j] = readEnum(in, GLFWBinding.class);
+            }
+            try {
+                descriptions.add(new ControlElementDescription(centerXRelative, centerYRelative, scale, type,
+                        bindings, text, color, alpha, inputType, icon));
+            } catch (IllegalStateException e) {
+                throw new IOException("Invalid control element " + i, e);
+            }
+        }
+        return descriptions;
+    }
+
+    private static <E extends Enum<E>> E readEnum(DataInputStream in, Class<E> enumClass) throws IOException {
+        String name = in.readUTF();
+        try {
+            return Enum.valueOf(enumClass, name);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Unknown " + enumClass.getSimpleName() + " " + name, e);
+        }
+    }
+}
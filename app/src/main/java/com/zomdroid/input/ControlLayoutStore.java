@@ -0,0 +1,292 @@
+package com.zomdroid.input;
+
+import static android.content.Context.MODE_PRIVATE;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import com.google.gson.JsonParseException;
+import com.google.gson.reflect.TypeToken;
+import com.zomdroid.AppStorage;
+import com.zomdroid.C;
+import com.zomdroid.FileUtils;
+import com.zomdroid.JsonUtils;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Process wide cache of parsed control layouts. Besides {@link #DEFAULT_LAYOUT_NAME} any number of
+ * named layouts can be kept, e.g. one for driving and one for combat, and every one of them is
+ * preloaded on start so switching never waits for disk. Layouts are stored in the binary
+ * {@link ControlLayoutCodec} format, loaded on a background thread and kept in memory, so views
+ * showing controls only wait if the load hasn't finished yet. Saving updates the cache right away
+ * and writes the file in the background, skipping the write if the layout didn't change. JSON is
+ * only parsed for the default layout asset, layouts saved by older versions, and imports.
+ */
+public class ControlLayoutStore {
+    private static final String LOG_TAG = ControlLayoutStore.class.getName();
+    public static final String DEFAULT_LAYOUT_NAME = "default";
+    private static final String LAYOUTS_DIR_NAME = "controls";
+    private static final String LAYOUT_FILE_SUFFIX = ".layout";
+    private static final Type DESCRIPTIONS_TYPE = new TypeToken<ArrayList<ControlElementDescription>>(){}.getType();
+
+    private static ControlLayoutStore singleton;
+    private final Context applicationContext;
+    private final SharedPreferences sharedPreferences;
+    private final File layoutsDir;
+    private final ExecutorService ioExecutor = Executors.newSingleThreadExecutor(
+            runnable -> new Thread(runnable, "ControlLayoutStore"));
+    private final ConcurrentHashMap<String, Future<List<ControlElementDescription>>> layouts = new ConcurrentHashMap<>();
+    /** Last encoded form of each layout known to be on disk, only touched on the io thread. */
+    private final HashMap<String, byte[]> savedBytes = new HashMap<>();
+
+    private ControlLayoutStore(Context applicationContext) {
+        this.applicationContext = applicationContext;
+        this.sharedPreferences = applicationContext.getSharedPreferences(C.shprefs.NAME, MODE_PRIVATE);
+        this.layoutsDir = new File(AppStorage.requireSingleton().getHomePath() + "/" + LAYOUTS_DIR_NAME);
+    }
+
+    public static void init(@NonNull Context context) {
+        singleton = new ControlLayoutStore(context.getApplicationContext());
+        for (String name : singleton.getLayoutNames()) {
+            singleton.preload(name);
+        }
+    }
+
+    @NonNull
+    public static ControlLayoutStore requireSingleton() {
+        if (singleton == null) {
+            throw new RuntimeException("ControlLayoutStore is not initialized");
+        }
+        return singleton;
+    }
+
+    public static boolean isValidLayoutName(String name) {
+        return FileUtils.isValidFilenameStrict(name);
+    }
+
+    /**
+     * Names of all layouts, saved or only cached so far, sorted with the default one first.
+     */
+    @NonNull
+    public List<String> getLayoutNames() {
+        TreeSet<String> names = new TreeSet<>(layouts.keySet());
+        File[] files = layoutsDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                String fileName = file.getName();
+                if (fileName.endsWith(LAYOUT_FILE_SUFFIX))
+                    names.add(fileName.substring(0, fileName.length() - LAYOUT_FILE_SUFFIX.length()));
+            }
+        }
+        names.remove(DEFAULT_LAYOUT_NAME);
+        ArrayList<String> sortedNames = new ArrayList<>();
+        sortedNames.add(DEFAULT_LAYOUT_NAME);
+        sortedNames.addAll(names);
+        return sortedNames;
+    }
+
+    /**
+     * Returns {@code name} if such a layout exists, otherwise the default layout name, e.g. for
+     * an instance whose layout has been deleted.
+     */
+    @NonNull
+    public String resolveLayoutName(String name) {
+        return name != null && getLayoutNames().contains(name) ? name : DEFAULT_LAYOUT_NAME;
+    }
+
+    /**
+     * Creates layout {@code name} as a copy of {@code sourceName}.
+     */
+    public void copyLayout(@NonNull String sourceName, @NonNull String name) {
+        saveLayout(name, getLayout(sourceName));
+    }
+
+    /**
+     * Removes a layout from the cache and from disk. The default layout can't be deleted.
+     */
+    public void deleteLayout(@NonNull String name) {
+        if (DEFAULT_LAYOUT_NAME.equals(name))
+            return;
+        layouts.remove(name);
+        ioExecutor.execute(() -> {
+            savedBytes.remove(name);
+            File file = getLayoutFile(name);
+            if (file.exists() && !file.delete())
+                Log.e(LOG_TAG, "Failed to delete " + file);
+        });
+    }
+
+    /**
+     * Starts loading the layout in the background if it isn't cached yet.
+     */
+    public void preload(@NonNull String name) {
+        layouts.computeIfAbsent(name, key -> ioExecutor.submit(() -> loadLayout(key)));
+    }
+
+    /**
+     * Returns the cached layout, waiting for it to be loaded if needed. The list must not be
+     * modified. Never fails, a layout that can't be read is replaced with the default one.
+     */
+    @NonNull
+    public List<ControlElementDescription> getLayout(@NonNull String name) {
+        preload(name);
+        Future<List<ControlElementDescription>> future = layouts.get(name);
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            Log.e(LOG_TAG, "Failed to load control layout " + name, e.getCause());
+            List<ControlElementDescription> layout = Collections.unmodifiableList(loadDefaultLayout());
+            layouts.replace(name, future, CompletableFuture.completedFuture(layout));
+            return layout;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return Collections.unmodifiableList(loadDefaultLayout());
+        }
+    }
+
+    public void saveLayout(@NonNull String name, @NonNull List<ControlElementDescription> descriptions) {
+        List<ControlElementDescription> layout = Collections.unmodifiableList(new ArrayList<>(descriptions));
+        layouts.put(name, CompletableFuture.completedFuture(layout));
+        ioExecutor.execute(() -> {
+            try {
+                writeLayout(name, layout);
+            } catch (IOException e) {
+                Log.e(LOG_TAG, "Failed to save control layout " + name, e);
+            }
+        });
+    }
+
+    /**
+     * Writes the layout as JSON, the format used for sharing layouts.
+     */
+    public void exportJson(@NonNull String name, @NonNull OutputStream outStream) throws IOException {
+        Writer writer = new OutputStreamWriter(outStream, StandardCharsets.UTF_8);
+        JsonUtils.getGson().toJson(getLayout(name), DESCRIPTIONS_TYPE, writer);
+        writer.flush();
+    }
+
+    /**
+     * Replaces the layout with one read from JSON. Nothing is changed if the JSON is invalid.
+     */
+    @NonNull
+    public List<ControlElementDescription> importJson(@NonNull String name, @NonNull InputStream inStream) throws IOException {
+        List<ControlElementDescription> descriptions;
+        try {
+            descriptions = parseJson(inStream);
+        } catch (JsonParseException e) {
+            throw new IOException("Invalid control layout", e);
+        }
+        saveLayout(name, descriptions);
+        return getLayout(name);
+    }
+
+    private File getLayoutFile(String name) {
+        return new File(layoutsDir, name + LAYOUT_FILE_SUFFIX);
+    }
+
+    private List<ControlElementDescription> loadLayout(String name) {
+        File file = getLayoutFile(name);
+        if (file.isFile()) {
+            try {
+                byte[] bytes = Files.readAllBytes(file.toPath());
+                List<ControlElementDescription> layout = ControlLayoutCodec.decode(bytes);
+                savedBytes.put(name, bytes);
+                return Collections.unmodifiableList(layout);
+            } catch (IOException e) {
+                Log.e(LOG_TAG, "Discarding unreadable control layout " + file, e);
+            }
+        }
+
+        List<ControlElementDescription> layout = null;
+        if (DEFAULT_LAYOUT_NAME.equals(name))
+            layout = migrateLegacyLayout();
+        if (layout == null)
+            layout = loadDefaultLayout();
+        return Collections.unmodifiableList(layout);
+    }
+
+    /**
+     * Moves a layout saved as JSON in the shared preferences by older versions to a layout file.
+     */
+    private List<ControlElementDescription> migrateLegacyLayout() {
+        String json = sharedPreferences.getString(C.shprefs.keys.INPUT_CONTROLS, null);
+        if (json == null)
+            return null;
+        List<ControlElementDescription> layout;
+        try {
+            layout = JsonUtils.getGson().fromJson(json, DESCRIPTIONS_TYPE);
+        } catch (JsonParseException e) {
+            Log.e(LOG_TAG, "Discarding malformed legacy control layout", e);
+            layout = null;
+        }
+        if (layout != null) {
+            try {
+                writeLayout(DEFAULT_LAYOUT_NAME, layout);
+            } catch (IOException e) {
+                Log.e(LOG_TAG, "Failed to migrate legacy control layout", e);
+                return layout;
+            }
+        }
+        sharedPreferences.edit().remove(C.shprefs.keys.INPUT_CONTROLS).apply();
+        return layout;
+    }
+
+    private List<ControlElementDescription> loadDefaultLayout() {
+        try (InputStream inStream = applicationContext.getAssets().open(C.assets.DEFAULT_CONTROLS)) {
+            return parseJson(inStream);
+        } catch (IOException | JsonParseException e) {
+            Log.e(LOG_TAG, "Failed to load default control layout", e);
+            return new ArrayList<>();
+        }
+    }
+
+    private static List<ControlElementDescription> parseJson(InputStream inStream) throws IOException {
+        Reader reader = new InputStreamReader(inStream, StandardCharsets.UTF_8);
+        List<ControlElementDescription> descriptions = JsonUtils.getGson().fromJson(reader, DESCRIPTIONS_TYPE);
+        return descriptions != null ? descriptions : new ArrayList<>();
+    }
+
+    private void writeLayout(String name, List<ControlElementDescription> layout) throws IOException {
+        byte[] bytes = ControlLayoutCodec.encode(layout);
+        if (Arrays.equals(bytes, savedBytes.get(name)))
+            return;
+        if (!layoutsDir.isDirectory() && !layoutsDir.mkdirs() && !layoutsDir.isDirectory())
+            throw new IOException("Failed to create " + layoutsDir);
+        File file = getLayoutFile(name);
+        File tmpFile = new File(file.getPath() + ".tmp");
+        try (FileOutputStream outStream = new FileOutputStream(tmpFile)) {
+            outStream.write(bytes);
+            outStream.getFD().sync();
+        }
+        if (!tmpFile.renameTo(file))
+            throw new IOException("Failed to move " + tmpFile + " to " + file);
+        savedBytes.put(name, bytes);
+    }
+}
@@ -5,8 +5,8 @@ import android.graphics.ColorFilter;
 import android.graphics.CornerPathEffect;
 import android.graphics.Paint;
 import android.graphics.Path;
+import android.graphics.RectF;
 import android.util.Log;
-import android.view.MotionEvent;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
@@ -53,7 +53,7 @@ public class DpadControlElement extends AbstractControlElement {
         }
 
         if (this.inputType == InputType.GAMEPAD)
-            InputNativeInterface.sendJoystickDpad(0, (char) state);
+            InputEventBuffer.sendJoystickDpad(0, (char) state);
         else if (this.inputType == InputType.MNK) {
             handleMNKBinding(getBindingUp(), (state & 0x1) != 0);
             handleMNKBinding(getBindingRight(), (state & 0x2) != 0);
@@ -63,40 +63,22 @@ public class DpadControlElement extends AbstractControlElement {
     }
 
     @Override
-    public boolean handleMotionEvent(MotionEvent e) {
-        int action = e.getActionMasked();
-        int actionIndex = e.getActionIndex();
-        int pointerId = e.getPointerId(actionIndex);
-        switch (action) {
-            case MotionEvent.ACTION_DOWN:
-            case MotionEvent.ACTION_POINTER_DOWN: {
-                float x = e.getX(actionIndex);
-                float y = e.getY(actionIndex);
-                if (!this.drawable.isPointOver(x, y)) return false;
-                this.pointerId = pointerId;
-                this.dispatchEvent(x, y, true);
-                return true;
-            }
-            case MotionEvent.ACTION_MOVE: {
-                if (this.pointerId < 0) return false;
-                int pointerIndex = e.findPointerIndex(this.pointerId);
-                if (pointerIndex < 0) {
-                    this.pointerId = -1;
-                    return false;
-                }
-                float x = e.getX(pointerIndex);
-                float y = e.getY(pointerIndex);
-                this.dispatchEvent(x, y, true);
-                return false;
-            }
-            case MotionEvent.ACTION_UP:
-            case MotionEvent.ACTION_POINTER_UP:
-                if (pointerId != this.pointerId) return false;
-                this.pointerId = -1;
-                this.dispatchEvent(0, 0, false);
-                return true;
-        }
-        return false;
+    public void onPointerDown(int pointerId, float x, float y) {
+        this.pointerId = pointerId;
+        this.dispatchEvent(x, y, true);
+    }
+
+    @Override
+    public void onPointerMove(int pointerId, float x, float y) {
+        if (pointerId != this.pointerId) return;
+        this.dispatchEvent(x, y, true);
+    }
+
+    @Override
+    public void onPointerUp(int pointerId) {
+        if (pointerId != this.pointerId) return;
+        this.pointerId = -1;
+        this.dispatchEvent(0, 0, false);
     }
 
     @Override
@@ -113,6 +95,12 @@ public class DpadControlElement extends AbstractControlElement {
         return this.drawable.isPointOver(x, y);
     }
 
+    @Override
+    public void getBounds(RectF outBounds) {
+        outBounds.set(this.drawable.x, this.drawable.y,
+                this.drawable.x + this.drawable.size, this.drawable.y + this.drawable.size);
+    }
+
     @Override
     public void setAlpha(int alpha) {
         this.drawable.setAlpha(alpha);
@@ -128,6 +116,7 @@ public class DpadControlElement extends AbstractControlElement {
     public void setScale(float scale) {
         scale = Math.clamp(scale, MIN_SCALE, MAX_SCALE);
         this.drawable.setScale(scale);
+        this.parentView.onElementBoundsChanged();
         this.parentView.invalidate();
     }
 
@@ -139,11 +128,13 @@ public class DpadControlElement extends AbstractControlElement {
     @Override
     public void setCenterPosition(float x, float y) {
         this.drawable.setCenterPosition(x, y);
+        this.parentView.onElementBoundsChanged();
         this.parentView.invalidate();
     }
     @Override
     public void moveCenterPosition(float dx, float dy) {
         this.drawable.moveCenterPosition(dx, dy);
+        this.parentView.onElementBoundsChanged();
         this.parentView.invalidate();
     }
 
@@ -1,12 +1,8 @@
 package com.zomdroid.input;
 
-import static android.content.Context.MODE_PRIVATE;
-
 import android.content.Context;
-import android.content.SharedPreferences;
 import android.graphics.Canvas;
 import android.util.AttributeSet;
-import android.util.Log;
 import android.view.GestureDetector;
 import android.view.MotionEvent;
 import android.view.View;
@@ -17,34 +13,36 @@ import androidx.annotation.Nullable;
 
 
 import com.google.android.material.dialog.MaterialAlertDialogBuilder;
-import com.google.gson.Gson;
-import com.google.gson.reflect.TypeToken;
-import com.zomdroid.C;
 import com.zomdroid.R;
 
-import java.io.IOException;
-import java.io.InputStream;
-import java.lang.reflect.Type;
-import java.nio.charset.Charset;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
 
 public class InputControlsView extends View {
     private static final String LOG_TAG = InputControlsView.class.getName();
     private ArrayList<AbstractControlElement> controlElements = new ArrayList<>();
+    /** Elements of every layout built so far, switching layouts only swaps {@link #controlElements}. */
+    private final HashMap<String, ArrayList<AbstractControlElement>> builtLayouts = new HashMap<>();
+    private String layoutName = ControlLayoutStore.DEFAULT_LAYOUT_NAME;
+    private boolean isSized = false;
+    private final ControlHitGrid hitGrid = new ControlHitGrid();
+    private boolean isHitGridDirty = true;
+    private final PointerDispatcher pointerDispatcher = new PointerDispatcher(this::findPointerTarget);
+    /** Receives the pointers that go down outside of every element, e.g. to drive the cursor. */
+    private PointerDispatcher.Target surfacePointerTarget;
     boolean isEditMode = false;
     AbstractControlElement selectedElement;
     AbstractControlElement pointerOverElement;
     public float pixelScale = 1.f;
     GestureDetector gestureDetector;
-    private Gson gson = new Gson();
-    private SharedPreferences sharedPreferences;
 
     private ElementSettingsController elementSettingsController;
 
 
     public InputControlsView(Context context, @Nullable AttributeSet attrs) {
         super(context, attrs);
-        this.sharedPreferences = context.getSharedPreferences(C.shprefs.NAME, MODE_PRIVATE);
 
         this.gestureDetector = new GestureDetector(context, new GestureDetector.OnGestureListener() {
             @Override
@@ -95,6 +93,7 @@ public class InputControlsView extends View {
                     if (type == null) return;
                     ControlElementDescription description = ControlElementDescription.getDefaultForType(type);
                     controlElements.add(AbstractControlElement.fromDescription(this, description));
+                    onElementBoundsChanged();
                     invalidate();
                 })
                 .create()
@@ -105,19 +104,24 @@ public class InputControlsView extends View {
     protected void onSizeChanged(int w, int h, int oldw, int oldh) {
         super.onSizeChanged(w, h, oldw, oldh);
         this.pixelScale = (float) w / 2560;
+        this.isSized = true;
 
-        if (this.controlElements.isEmpty()) {
+        this.pointerDispatcher.cancel();
+        if (this.builtLayouts.isEmpty()) {
             loadControlElementsFromDisk();
         } else {
-            // recreate all elements
-            for (int i = 0; i < this.controlElements.size(); i++) {
-                AbstractControlElement controlElement = this.controlElements.get(i);
-                ControlElementDescription description = controlElement.describe();
-                controlElement = AbstractControlElement.fromDescription(this, description);
-                this.controlElements.set(i, controlElement);
+            // recreate all elements of every built layout, their drawables depend on the pixel scale
+            for (ArrayList<AbstractControlElement> elements : this.builtLayouts.values()) {
+                for (int i = 0; i < elements.size(); i++) {
+                    AbstractControlElement controlElement = elements.get(i);
+                    ControlElementDescription description = controlElement.describe();
+                    controlElement = AbstractControlElement.fromDescription(this, description);
+                    elements.set(i, controlElement);
+                }
             }
+            this.controlElements = this.builtLayouts.get(this.layoutName);
         }
-
+        onElementBoundsChanged();
     }
 
     @Override
@@ -137,28 +141,47 @@ public class InputControlsView extends View {
             int action = e.getActionMasked();
             if (action == MotionEvent.ACTION_DOWN) {
                 if (selectedElement != null) deselectElement();
-                pointerOverElement = null;
                 gestureDetector.setIsLongpressEnabled(true);
-
-                float x = e.getX();
-                float y = e.getY();
-                for (AbstractControlElement element : controlElements) {
-                    if (element.isPointOver(x, y)) {
-                        pointerOverElement = element;
-                        gestureDetector.setIsLongpressEnabled(false);
-                        break;
-                    }
-                }
+                pointerOverElement = findElementAt(e.getX(), e.getY());
+                if (pointerOverElement != null)
+                    gestureDetector.setIsLongpressEnabled(false);
             }
             return gestureDetector.onTouchEvent(e);
-        } else {
-            for (AbstractControlElement controlElement: controlElements) {
-                if (controlElement.handleMotionEvent(e)) {
-                    return true;
-                }
-            }
         }
-        return false;
+
+        return this.pointerDispatcher.onTouchEvent(e);
+    }
+
+    /**
+     * Sets where pointers that miss every element go. Without one such a pointer isn't consumed,
+     * so a gesture starting outside the controls falls through to the view below.
+     */
+    public void setSurfacePointerTarget(@Nullable PointerDispatcher.Target surfacePointerTarget) {
+        this.pointerDispatcher.cancel();
+        this.surfacePointerTarget = surfacePointerTarget;
+    }
+
+    @Nullable
+    private PointerDispatcher.Target findPointerTarget(float x, float y) {
+        AbstractControlElement element = findElementAt(x, y);
+        return element != null ? element : this.surfacePointerTarget;
+    }
+
+    /**
+     * Marks the hit grid as stale, it is rebuilt on the next hit-test. Called whenever an element
+     * is moved, scaled, added or removed, or the layout is swapped.
+     */
+    void onElementBoundsChanged() {
+        this.isHitGridDirty = true;
+    }
+
+    @Nullable
+    private AbstractControlElement findElementAt(float x, float y) {
+        if (this.isHitGridDirty) {
+            this.hitGrid.rebuild(this.controlElements, getWidth(), getHeight());
+            this.isHitGridDirty = false;
+        }
+        return this.hitGrid.findElementAt(x, y);
     }
 
     private void selectElement(@NonNull AbstractControlElement element) {
@@ -198,6 +221,7 @@ public class InputControlsView extends View {
         if (this.elementSettingsController != null) this.elementSettingsController.hide();
         this.controlElements.remove(this.selectedElement);
         this.selectedElement = null;
+        onElementBoundsChanged();
         invalidate();
     }
 
@@ -205,25 +229,57 @@ public class InputControlsView extends View {
         this.isEditMode = value;
     }
 
+    /**
+     * Builds the elements of the current layout, and outside of edit mode those of every other
+     * layout too, so that {@link #setLayoutName(String)} can switch without building anything.
+     */
     public void loadControlElementsFromDisk() {
-        String json = this.sharedPreferences.getString(C.shprefs.keys.INPUT_CONTROLS, null);
-        if (json == null) {
-            try (InputStream is = getContext().getAssets().open(C.assets.DEFAULT_CONTROLS)) {
-                byte[] bytes = new byte[is.available()];
-                is.read(bytes);
-                json = new String(bytes, Charset.defaultCharset());
-            } catch (IOException e) {
-                Log.d(LOG_TAG, e.toString());
-                return;
-            }
+        ControlLayoutStore layoutStore = ControlLayoutStore.requireSingleton();
+        List<String> names = this.isEditMode ? Collections.singletonList(this.layoutName) : layoutStore.getLayoutNames();
+        this.builtLayouts.clear();
+        for (String name : names) {
+            this.builtLayouts.put(name, buildLayout(name));
         }
-        Type type = new TypeToken<ArrayList<ControlElementDescription>>(){}.getType();
-        ArrayList<ControlElementDescription> savedDescriptions = gson.fromJson(json, type);
-        if (savedDescriptions != null) {
-            for (ControlElementDescription description: savedDescriptions) {
-                this.controlElements.add(AbstractControlElement.fromDescription(this, description));
-            }
+        if (!this.builtLayouts.containsKey(this.layoutName))
+            this.builtLayouts.put(this.layoutName, buildLayout(this.layoutName));
+        this.controlElements = this.builtLayouts.get(this.layoutName);
+        onElementBoundsChanged();
+    }
+
+    private ArrayList<AbstractControlElement> buildLayout(String name) {
+        ArrayList<AbstractControlElement> elements = new ArrayList<>();
+        for (ControlElementDescription description : ControlLayoutStore.requireSingleton().getLayout(name)) {
+            elements.add(AbstractControlElement.fromDescription(this, description));
         }
+        return elements;
+    }
+
+    public String getLayoutName() {
+        return this.layoutName;
+    }
+
+    /**
+     * Shows the layout with this name, or the default one if it doesn't exist. Can be called
+     * before the view is laid out. Elements of the previous layout that are held down are
+     * released first.
+     */
+    public void setLayoutName(String name) {
+        name = ControlLayoutStore.requireSingleton().resolveLayoutName(name);
+        if (name.equals(this.layoutName) && (!this.isSized || this.builtLayouts.containsKey(name)))
+            return;
+        this.pointerDispatcher.cancel();
+        deselectElement();
+        this.layoutName = name;
+        if (!this.isSized)
+            return;
+        ArrayList<AbstractControlElement> elements = this.builtLayouts.get(name);
+        if (elements == null) {
+            elements = buildLayout(name);
+            this.builtLayouts.put(name, elements);
+        }
+        this.controlElements = elements;
+        onElementBoundsChanged();
+        invalidate();
     }
 
     public void saveControlElementsToDisk() {
@@ -232,12 +288,7 @@ public class InputControlsView extends View {
             descriptions.add(element.describe());
         }
         if (descriptions.isEmpty()) return;
-        String json = this.gson.toJson(descriptions);
-
-        this.sharedPreferences
-                .edit()
-                .putString(C.shprefs.keys.INPUT_CONTROLS, json)
-                .apply();
+        ControlLayoutStore.requireSingleton().saveLayout(this.layoutName, descriptions);
     }
 
     public void setElementSettingsController(ElementSettingsController elementSettingsController) {
@@ -0,0 +1,79 @@
+package com.zomdroid.input;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Collects input events for the game and hands them to native code in batches. Events are written
+ * as fixed size records into a direct buffer that zomdroid.c reads in place, so everything one
+ * Android input event causes, e.g. the six axes and the dpad of a gamepad motion, crosses JNI once
+ * on {@link #flush()} instead of once per event. Must only be used from the UI thread.
+ * <pre>
+ * int    type, one of the ZOMDROID_INPUT_ values in zomdroid.h
+ * int    key, button, axis or dpad
+ * float  1 if pressed else 0, axis value, dpad state or cursor x
+ * float  cursor y
+ * </pre>
+ */
+public final class InputEventBuffer {
+    // same values as the ZOMDROID_INPUT_ defines next to ZomdroidInputRecord in zomdroid.h
+    static final int TYPE_KEYBOARD = 0;
+    static final int TYPE_CURSOR_POS = 1;
+    static final int TYPE_MOUSE_BUTTON = 2;
+    static final int TYPE_JOYSTICK_AXIS = 3;
+    static final int TYPE_JOYSTICK_DPAD = 4;
+    static final int TYPE_JOYSTICK_BUTTON = 5;
+    // sizeof(ZomdroidInputRecord), asserted in zomdroid.h
+    static final int RECORD_SIZE = 16;
+    private static final int CAPACITY = 64;
+
+    private static final ByteBuffer buffer = ByteBuffer.allocateDirect(RECORD_SIZE * CAPACITY)
+            .order(ByteOrder.nativeOrder());
+    private static int count = 0;
+
+    private InputEventBuffer() {
+    }
+
+    public static void sendKeyboard(int key, boolean isPressed) {
+        put(TYPE_KEYBOARD, key, isPressed ? 1 : 0, 0);
+    }
+
+    public static void sendCursorPos(float x, float y) {
+        put(TYPE_CURSOR_POS, 0, x, y);
+    }
+
+    public static void sendMouseButton(int button, boolean isPressed) {
+        put(TYPE_MOUSE_BUTTON, button, isPressed ? 1 : 0, 0);
+    }
+
+    public static void sendJoystickAxis(int axis, float state) {
+        put(TYPE_JOYSTICK_AXIS, axis, state, 0);
+    }
+
+    public static void sendJoystickDpad(int dpad, char state) {
+        put(TYPE_JOYSTICK_DPAD, dpad, state, 0);
+    }
+
+    public static void sendJoystickButton(int button, boolean isPressed) {
+        put(TYPE_JOYSTICK_BUTTON, button, isPressed ? 1 : 0, 0);
+    }
+
+    /**
+     * Hands all collected events to the game, in the order they were sent.
+     */
+    public static void flush() {
+        if (count == 0) return;
+        InputNativeInterface.sendEvents(buffer, count);
+        count = 0;
+    }
+
+    private static void put(int type, int code, float x, float y) {
+        if (count == CAPACITY) flush();
+        int offset = count * RECORD_SIZE;
+        buffer.putInt(offset, type);
+        buffer.putInt(offset + 4, code);
+        buffer.putFloat(offset + 8, x);
+        buffer.putFloat(offset + 12, y);
+        count++;
+    }
+}
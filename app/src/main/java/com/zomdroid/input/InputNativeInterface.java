@@ -1,5 +1,7 @@
 package com.zomdroid.input;
 
+import java.nio.ByteBuffer;
+
 public class InputNativeInterface {
     public static native void sendKeyboard(int key, boolean isPressed);
     public static native void sendCursorPos(double x, double y);
@@ -8,4 +10,6 @@ public class InputNativeInterface {
     public static native void sendJoystickDpad(int dpad, char state);
     public static native void sendJoystickButton(int button, boolean isPressed);
     public static native void sendJoystickConnected();
+    /** Passes {@code count} records written by {@link InputEventBuffer} to the game. */
+    static native void sendEvents(ByteBuffer buffer, int count);
 }
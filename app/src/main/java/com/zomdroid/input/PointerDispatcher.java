@@ -0,0 +1,116 @@
+package com.zomdroid.input;
+
+import android.view.MotionEvent;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * Routes the pointers of a touch stream. A pointer belongs to the target it went down on until it
+ * goes up, so its moves and ups are delivered straight to that target and no other target has to
+ * look at them. Input the targets send through {@link InputEventBuffer} is flushed once per
+ * touch event.
+ */
+public class PointerDispatcher {
+    /** Highest pointer id a {@link MotionEvent} can carry. */
+    private static final int MAX_POINTER_ID = 31;
+
+    private final TargetFinder targetFinder;
+    /** Target that owns each pointer still down, indexed by pointer id. */
+    private final Target[] owners = new Target[MAX_POINTER_ID + 1];
+    private int ownedCount = 0;
+
+    public PointerDispatcher(@NonNull TargetFinder targetFinder) {
+        this.targetFinder = targetFinder;
+    }
+
+    /**
+     * Returns false for a pointer that went down outside of every target, or for events of
+     * pointers nobody owns.
+     */
+    public boolean onTouchEvent(@NonNull MotionEvent e) {
+        boolean isHandled = dispatch(e);
+        InputEventBuffer.flush();
+        return isHandled;
+    }
+
+    private boolean dispatch(MotionEvent e) {
+        switch (e.getActionMasked()) {
+            case MotionEvent.ACTION_DOWN:
+            case MotionEvent.ACTION_POINTER_DOWN: {
+                int actionIndex = e.getActionIndex();
+                return onPointerDown(e.getPointerId(actionIndex), e.getX(actionIndex), e.getY(actionIndex));
+            }
+            case MotionEvent.ACTION_MOVE: {
+                if (this.ownedCount == 0) return false;
+                for (int i = 0; i < e.getPointerCount(); i++) {
+                    onPointerMove(e.getPointerId(i), e.getX(i), e.getY(i));
+                }
+                return true;
+            }
+            case MotionEvent.ACTION_UP:
+            case MotionEvent.ACTION_POINTER_UP:
+                return onPointerUp(e.getPointerId(e.getActionIndex()));
+            case MotionEvent.ACTION_CANCEL:
+                cancel();
+                return true;
+        }
+        return false;
+    }
+
+    boolean onPointerDown(int pointerId, float x, float y) {
+        Target target = this.targetFinder.findTarget(x, y);
+        if (target == null || pointerId < 0 || pointerId > MAX_POINTER_ID) return false;
+        if (this.owners[pointerId] == null) this.ownedCount++;
+        this.owners[pointerId] = target;
+        target.onPointerDown(pointerId, x, y);
+        return true;
+    }
+
+    boolean onPointerMove(int pointerId, float x, float y) {
+        Target target = getOwner(pointerId);
+        if (target == null) return false;
+        target.onPointerMove(pointerId, x, y);
+        return true;
+    }
+
+    boolean onPointerUp(int pointerId) {
+        Target target = getOwner(pointerId);
+        if (target == null) return false;
+        this.owners[pointerId] = null;
+        this.ownedCount--;
+        target.onPointerUp(pointerId);
+        return true;
+    }
+
+    /**
+     * Lifts every pointer still down, e.g. before the targets are replaced while a finger is
+     * still on the screen.
+     */
+    public void cancel() {
+        for (int pointerId = 0; pointerId <= MAX_POINTER_ID && this.ownedCount > 0; pointerId++) {
+            Target target = this.owners[pointerId];
+            if (target == null) continue;
+            this.owners[pointerId] = null;
+            this.ownedCount--;
+            target.onPointerUp(pointerId);
+        }
+        InputEventBuffer.flush();
+    }
+
+    @Nullable
+    private Target getOwner(int pointerId) {
+        return pointerId >= 0 && pointerId <= MAX_POINTER_ID ? this.owners[pointerId] : null;
+    }
+
+    public interface Target {
+        void onPointerDown(int pointerId, float x, float y);
+        void onPointerMove(int pointerId, float x, float y);
+        void onPointerUp(int pointerId);
+    }
+
+    public interface TargetFinder {
+        @Nullable
+        Target findTarget(float x, float y);
+    }
+}
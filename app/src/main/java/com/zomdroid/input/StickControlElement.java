@@ -3,10 +3,10 @@ package com.zomdroid.input;
 import android.graphics.Canvas;
 import android.graphics.ColorFilter;
 import android.graphics.Paint;
+import android.graphics.RectF;
 import android.graphics.drawable.ShapeDrawable;
 import android.graphics.drawable.shapes.OvalShape;
 import android.util.Log;
-import android.view.MotionEvent;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
@@ -57,13 +57,13 @@ public class StickControlElement extends AbstractControlElement {
             case GAMEPAD:
                 switch (getBindingStick()) {
                     case LEFT_JOYSTICK: {
-                        InputNativeInterface.sendJoystickAxis(GLFWBinding.GAMEPAD_AXIS_LX.code, nx);
-                        InputNativeInterface.sendJoystickAxis(GLFWBinding.GAMEPAD_AXIS_LY.code, ny);
+                        InputEventBuffer.sendJoystickAxis(GLFWBinding.GAMEPAD_AXIS_LX.code, nx);
+                        InputEventBuffer.sendJoystickAxis(GLFWBinding.GAMEPAD_AXIS_LY.code, ny);
                         break;
                     }
                     case RIGHT_JOYSTICK: {
-                        InputNativeInterface.sendJoystickAxis(GLFWBinding.GAMEPAD_AXIS_RX.code, nx);
-                        InputNativeInterface.sendJoystickAxis(GLFWBinding.GAMEPAD_AXIS_RY.code, ny);
+                        InputEventBuffer.sendJoystickAxis(GLFWBinding.GAMEPAD_AXIS_RX.code, nx);
+                        InputEventBuffer.sendJoystickAxis(GLFWBinding.GAMEPAD_AXIS_RY.code, ny);
                         break;
                     }
                 }
@@ -73,46 +73,28 @@ public class StickControlElement extends AbstractControlElement {
     }
 
     @Override
-    public boolean handleMotionEvent(MotionEvent e) {
-        int action = e.getActionMasked();
-        int actionIndex = e.getActionIndex();
-        int pointerId = e.getPointerId(actionIndex);
-        switch (action) {
-            case MotionEvent.ACTION_DOWN:
-            case MotionEvent.ACTION_POINTER_DOWN: {
-                float x = e.getX(actionIndex);
-                float y = e.getY(actionIndex);
-                if (!this.drawable.isPointOver(x, y)) return false;
-                this.pointerId = pointerId;
-                this.drawable.setInnerPosition(x, y);
-                this.parentView.invalidate();
-                this.dispatchEvent();
-                return true;
-            }
-            case MotionEvent.ACTION_MOVE: {
-                if (this.pointerId < 0) return false;
-                int pointerIndex = e.findPointerIndex(this.pointerId);
-                if (pointerIndex < 0) {
-                    this.pointerId = -1;
-                    return false;
-                }
-                float x = e.getX(pointerIndex);
-                float y = e.getY(pointerIndex);
-                this.drawable.setInnerPosition(x, y);
-                this.parentView.invalidate();
-                this.dispatchEvent();
-                return false;
-            }
-            case MotionEvent.ACTION_UP:
-            case MotionEvent.ACTION_POINTER_UP:
-                if (pointerId != this.pointerId) return false;
-                this.pointerId = -1;
-                drawable.resetInnerPosition();
-                this.parentView.invalidate();
-                this.dispatchEvent();
-                return true;
-        }
-        return false;
+    public void onPointerDown(int pointerId, float x, float y) {
+        this.pointerId = pointerId;
+        this.drawable.setInnerPosition(x, y);
+        this.parentView.invalidate();
+        this.dispatchEvent();
+    }
+
+    @Override
+    public void onPointerMove(int pointerId, float x, float y) {
+        if (pointerId != this.pointerId) return;
+        this.drawable.setInnerPosition(x, y);
+        this.parentView.invalidate();
+        this.dispatchEvent();
+    }
+
+    @Override
+    public void onPointerUp(int pointerId) {
+        if (pointerId != this.pointerId) return;
+        this.pointerId = -1;
+        drawable.resetInnerPosition();
+        this.parentView.invalidate();
+        this.dispatchEvent();
     }
 
     @Override
@@ -130,6 +112,14 @@ public class StickControlElement extends AbstractControlElement {
         return this.drawable.isPointOver(x, y);
     }
 
+    @Override
+    public void getBounds(RectF outBounds) {
+        outBounds.set(this.drawable.outerCenterX - this.drawable.outerRadius,
+                this.drawable.outerCenterY - this.drawable.outerRadius,
+                this.drawable.outerCenterX + this.drawable.outerRadius,
+                this.drawable.outerCenterY + this.drawable.outerRadius);
+    }
+
     @Override
     public void setAlpha(int alpha) {
         this.drawable.setAlpha(alpha);
@@ -145,6 +135,7 @@ public class StickControlElement extends AbstractControlElement {
     public void setScale(float scale) {
         scale = Math.clamp(scale, MIN_SCALE, MAX_SCALE);
         this.drawable.setScale(scale);
+        this.parentView.onElementBoundsChanged();
         this.parentView.invalidate();
     }
 
@@ -156,11 +147,13 @@ public class StickControlElement extends AbstractControlElement {
     @Override
     public void setCenterPosition(float x, float y) {
         this.drawable.setCenterPosition(x, y);
+        this.parentView.onElementBoundsChanged();
         this.parentView.invalidate();
     }
     @Override
     public void moveCenterPosition(float dx, float dy) {
         this.drawable.moveCenterPosition(dx, dy);
+        this.parentView.onElementBoundsChanged();
         this.parentView.invalidate();
     }
 
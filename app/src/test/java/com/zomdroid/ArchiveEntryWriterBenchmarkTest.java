@@ -0,0 +1,141 @@
+package com.zomdroid;
+
+import static org.junit.Assert.assertEquals;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.apache.commons.io.IOUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Extracts the same tar, shaped like the JRE bundle with thousands of small files and a few large
+ * ones, the way entries were written before {@link ArchiveEntryWriter}, a fresh 1 MB
+ * BufferedOutputStream per file fed by IOUtils.copy, and through the writer. Prints throughput
+ * and the garbage collections each run caused.
+ */
+public class ArchiveEntryWriterBenchmarkTest {
+    private static final int SMALL_FILE_COUNT = 6000;
+    private static final int LARGE_FILE_COUNT = 4;
+    private static final int LARGE_FILE_SIZE = 8 * 1024 * 1024;
+
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void compareStreamCopyAndPooledWriter() throws IOException {
+        byte[] tar = createTar();
+
+        // the first round warms up the JIT and allocates the writer pools
+        run("warmup copy", tar, this::extractWithStreamCopy);
+        run("warmup writer", tar, this::extractWithWriter);
+        System.out.printf(Locale.ROOT, "%-16s %8s %10s %8s %10s%n", "extraction", "ms", "MB/s", "GCs", "GC ms");
+        Result copy = run("stream copy", tar, this::extractWithStreamCopy);
+        Result writer = run("pooled writer", tar, this::extractWithWriter);
+        copy.print();
+        writer.print();
+        assertEquals(copy.bytes, writer.bytes);
+    }
+
+    private Result run(String name, byte[] tar, Extraction extraction) throws IOException {
+        File destDir = temporaryFolder.newFolder(name.replace(' ', '-'));
+        long gcCount = getGcCount();
+        long gcTimeMs = getGcTimeMs();
+        long startNs = System.nanoTime();
+        extraction.extract(tar, destDir);
+        long elapsedNs = System.nanoTime() - startNs;
+        return new Result(name, tar.length, elapsedNs, getGcCount() - gcCount, getGcTimeMs() - gcTimeMs);
+    }
+
+    private void extractWithStreamCopy(byte[] tar, File destDir) throws IOException {
+        TarArchiveInputStream tarArchiveInStream = new TarArchiveInputStream(
+                new BufferedInputStream(new ByteArrayInputStream(tar), 1024 * 1024));
+        TarArchiveEntry entry;
+        while ((entry = tarArchiveInStream.getNextEntry()) != null) {
+            File file = new File(destDir, entry.getName());
+            FileUtils.makeDirs(file.getParentFile());
+            try (OutputStream fileOutStream = new BufferedOutputStream(new FileOutputStream(file), 1024 * 1024)) {
+                IOUtils.copy(tarArchiveInStream, fileOutStream);
+            }
+        }
+    }
+
+    private void extractWithWriter(byte[] tar, File destDir) throws IOException {
+        FileUtils.extractTarBundleToDisk(new ByteArrayInputStream(tar), destDir.getPath(), null, tar.length, null);
+    }
+
+    private static byte[] createTar() throws IOException {
+        Random random = new Random(3);
+        ByteArrayOutputStream byteStream = new ByteArrayOutputStream();
+        try (TarArchiveOutputStream tarOutStream = new TarArchiveOutputStream(byteStream)) {
+            tarOutStream.setLongFileMode(TarArchiveOutputStream.LONGFILE_POSIX);
+            for (int i = 0; i < SMALL_FILE_COUNT + LARGE_FILE_COUNT; i++) {
+                int size = i < SMALL_FILE_COUNT ? 512 + random.nextInt(16 * 1024) : LARGE_FILE_SIZE;
+                byte[] content = new byte[size];
+                random.nextBytes(content);
+                TarArchiveEntry entry = new TarArchiveEntry("lib/dir" + (i % 50) + "/file" + i);
+                entry.setSize(size);
+                tarOutStream.putArchiveEntry(entry);
+                tarOutStream.write(content);
+                tarOutStream.closeArchiveEntry();
+            }
+        }
+        return byteStream.toByteArray();
+    }
+
+    private static long getGcCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, bean.getCollectionCount());
+        }
+        return count;
+    }
+
+    private static long getGcTimeMs() {
+        long timeMs = 0;
+        for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+            timeMs += Math.max(0, bean.getCollectionTime());
+        }
+        return timeMs;
+    }
+
+    private interface Extraction {
+        void extract(byte[] tar, File destDir) throws IOException;
+    }
+
+    private static class Result {
+        final String name;
+        final long bytes;
+        final long elapsedNs;
+        final long gcCount;
+        final long gcTimeMs;
+
+        Result(String name, long bytes, long elapsedNs, long gcCount, long gcTimeMs) {
+            this.name = name;
+            this.bytes = bytes;
+            this.elapsedNs = elapsedNs;
+            this.gcCount = gcCount;
+            this.gcTimeMs = gcTimeMs;
+        }
+
+        void print() {
+            System.out.printf(Locale.ROOT, "%-16s %8d %10.1f %8d %10d%n", name, elapsedNs / 1_000_000,
+                    bytes * 1e9 / elapsedNs / (1024 * 1024), gcCount, gcTimeMs);
+        }
+    }
+}
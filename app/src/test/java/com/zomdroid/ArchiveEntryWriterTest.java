@@ -0,0 +1,165 @@
+package com.zomdroid;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+
+public class ArchiveEntryWriterTest {
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private final Random random = new Random(7);
+
+    @Test
+    public void writesEntriesOfEverySize() throws IOException {
+        File destDir = temporaryFolder.newFolder("dest");
+        int[] sizes = {0, 1, 64 * 1024 - 1, 64 * 1024, 1024 * 1024, 1024 * 1024 + 1, 3 * 1024 * 1024 + 5};
+        ConcurrentHashMap<String, long[]> written = new ConcurrentHashMap<>();
+        ArrayList<byte[]> contents = new ArrayList<>();
+
+        try (ArchiveEntryWriter entryWriter = new ArchiveEntryWriter(null)) {
+            for (int i = 0; i < sizes.length; i++) {
+                byte[] content = randomBytes(sizes[i]);
+                contents.add(content);
+                String name = "dir/file" + i;
+                long crc32 = entryWriter.write(new ByteArrayInputStream(content), entry(name, content.length),
+                        new File(destDir, name), (size, entryCrc32, sha256) -> written.put(name, new long[]{size, entryCrc32}));
+                assertEquals(crc32(content), crc32);
+            }
+            entryWriter.finish();
+        }
+
+        for (int i = 0; i < sizes.length; i++) {
+            String name = "dir/file" + i;
+            assertArrayEquals(contents.get(i), Files.readAllBytes(new File(destDir, name).toPath()));
+            assertEquals(sizes[i], written.get(name)[0]);
+            assertEquals(crc32(contents.get(i)), written.get(name)[1]);
+        }
+    }
+
+    @Test
+    public void hashingWriterPassesTheSha256OfWhatItWrote() throws IOException {
+        File destDir = temporaryFolder.newFolder("dest");
+        byte[] small = randomBytes(100);
+        byte[] large = randomBytes(3 * 1024 * 1024 + 5);
+        ConcurrentHashMap<String, byte[]> written = new ConcurrentHashMap<>();
+
+        try (ArchiveEntryWriter entryWriter = new ArchiveEntryWriter(null, 1, true)) {
+            entryWriter.write(new ByteArrayInputStream(small), entry("small", small.length),
+                    new File(destDir, "small"), (size, crc32, sha256) -> written.put("small", sha256));
+            entryWriter.write(new ByteArrayInputStream(large), entry("large", -1),
+                    new File(destDir, "large"), (size, crc32, sha256) -> written.put("large", sha256));
+            ArchiveEntryWriter.EntryDigest digest = entryWriter.hash(new ByteArrayInputStream(large));
+            entryWriter.finish();
+
+            assertEquals(large.length, digest.size);
+            assertEquals(crc32(large), digest.crc32);
+            assertArrayEquals(sha256(large), digest.sha256);
+        }
+
+        assertArrayEquals(sha256(small), written.get("small"));
+        assertArrayEquals(sha256(large), written.get("large"));
+    }
+
+    @Test
+    public void writeIfChangedRewritesOnlyDifferingFiles() throws IOException {
+        File destDir = temporaryFolder.newFolder("dest");
+        byte[] content = randomBytes(2 * 1024 * 1024 + 100);
+        File unchanged = new File(destDir, "unchanged");
+        File changed = new File(destDir, "changed");
+        Files.write(unchanged.toPath(), content);
+        byte[] damaged = content.clone();
+        damaged[damaged.length - 10] ^= 1;
+        Files.write(changed.toPath(), damaged);
+        // a rewrite would move the modification time forward
+        assertTrue(unchanged.setLastModified(1_000_000_000_000L));
+
+        try (ArchiveEntryWriter entryWriter = new ArchiveEntryWriter(null)) {
+            assertEquals(crc32(content), entryWriter.writeIfChanged(new ByteArrayInputStream(content), unchanged, null));
+            assertEquals(crc32(content), entryWriter.writeIfChanged(new ByteArrayInputStream(content), changed, null));
+            entryWriter.finish();
+        }
+
+        assertEquals(1_000_000_000_000L, unchanged.lastModified());
+        assertArrayEquals(content, Files.readAllBytes(changed.toPath()));
+    }
+
+    /**
+     * Writers fed from several threads at once share the chunk pools, which must not starve any
+     * of them.
+     */
+    @Test
+    public void concurrentWritersShareThePools() throws Exception {
+        File destDir = temporaryFolder.newFolder("dest");
+        byte[] content = randomBytes(5 * 1024 * 1024 / 2);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            ArrayList<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                int thread = t;
+                futures.add(executor.submit(() -> {
+                    try (ArchiveEntryWriter entryWriter = new ArchiveEntryWriter(null, 1, false)) {
+                        for (int i = 0; i < 5; i++) {
+                            String name = "t" + thread + "/file" + i;
+                            entryWriter.write(new ByteArrayInputStream(content), entry(name, -1),
+                                    new File(destDir, name), null);
+                        }
+                        entryWriter.finish();
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        for (int t = 0; t < 4; t++) {
+            for (int i = 0; i < 5; i++) {
+                assertArrayEquals(content, Files.readAllBytes(new File(destDir, "t" + t + "/file" + i).toPath()));
+            }
+        }
+    }
+
+    private byte[] randomBytes(int size) {
+        byte[] bytes = new byte[size];
+        random.nextBytes(bytes);
+        return bytes;
+    }
+
+    private static TarArchiveEntry entry(String name, long size) {
+        TarArchiveEntry entry = new TarArchiveEntry(name);
+        if (size >= 0)
+            entry.setSize(size);
+        return entry;
+    }
+
+    private static byte[] sha256(byte[] data) {
+        return BlobStore.newSha256().digest(data);
+    }
+
+    private static long crc32(byte[] data) {
+        CRC32 crc32 = new CRC32();
+        crc32.update(data);
+        return crc32.getValue();
+    }
+}
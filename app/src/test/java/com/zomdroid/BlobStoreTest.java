@@ -0,0 +1,150 @@
+package com.zomdroid;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.zip.CRC32;
+
+public class BlobStoreTest {
+    private static final byte[] CONTENT = "media/lua/shared/main.lua".getBytes(StandardCharsets.UTF_8);
+
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private File storeDir;
+    private File instanceDir;
+    private BlobStore blobStore;
+
+    @Before
+    public void setUp() throws IOException {
+        storeDir = temporaryFolder.newFolder("blobs");
+        instanceDir = temporaryFolder.newFolder("instance");
+        blobStore = new BlobStore(storeDir);
+    }
+
+    @Test
+    public void linksAddedFileBySha256() throws IOException {
+        File file = write("a/main.lua", CONTENT);
+        blobStore.add(file, CONTENT.length, crc32(CONTENT), sha256(CONTENT));
+        File linked = new File(instanceDir, "b/main.lua");
+
+        assertTrue(blobStore.hasCandidates(CONTENT.length, crc32(CONTENT)));
+        assertTrue(blobStore.link(CONTENT.length, crc32(CONTENT), sha256(CONTENT), linked));
+
+        assertTrue(Files.isSameFile(file.toPath(), linked.toPath()));
+        assertArrayEquals(CONTENT, Files.readAllBytes(linked.toPath()));
+    }
+
+    @Test
+    public void doesNotLinkBlobWithTheSameCrc32ButAnotherSha256() throws IOException {
+        File file = write("a/main.lua", CONTENT);
+        blobStore.add(file, CONTENT.length, crc32(CONTENT), sha256(CONTENT));
+        byte[] otherContent = "other content".getBytes(StandardCharsets.UTF_8);
+        File linked = new File(instanceDir, "b/main.lua");
+
+        // size and CRC32 only select the candidates, the SHA-256 has to match
+        assertFalse(blobStore.link(CONTENT.length, crc32(CONTENT), sha256(otherContent), linked));
+
+        assertFalse(linked.exists());
+    }
+
+    @Test
+    public void addReplacesDuplicateWithLink() throws IOException {
+        File first = write("a/main.lua", CONTENT);
+        File second = write("b/main.lua", CONTENT);
+
+        blobStore.add(first, CONTENT.length, crc32(CONTENT), sha256(CONTENT));
+        blobStore.add(second, CONTENT.length, crc32(CONTENT), sha256(CONTENT));
+
+        assertTrue(Files.isSameFile(first.toPath(), second.toPath()));
+        assertArrayEquals(CONTENT, Files.readAllBytes(second.toPath()));
+    }
+
+    @Test
+    public void addAllStoresOnlyFilesMatchingTheirRecord() throws IOException {
+        byte[] damaged = CONTENT.clone();
+        damaged[0] ^= 1;
+        write("intact.lua", CONTENT);
+        write("damaged.lua", damaged);
+        InstallManifest manifest = new InstallManifest();
+        manifest.put("intact.lua", CONTENT.length, crc32(CONTENT));
+        manifest.put("damaged.lua", CONTENT.length, crc32(CONTENT));
+
+        blobStore.addAll(instanceDir.getPath(), manifest, null);
+
+        File linked = new File(instanceDir, "linked.lua");
+        assertTrue(blobStore.link(CONTENT.length, crc32(CONTENT), sha256(CONTENT), linked));
+        assertTrue(Files.isSameFile(new File(instanceDir, "intact.lua").toPath(), linked.toPath()));
+        assertFalse(Files.isSameFile(new File(instanceDir, "damaged.lua").toPath(), linked.toPath()));
+        assertFalse(blobStore.link(CONTENT.length, crc32(CONTENT), sha256(damaged), new File(instanceDir, "x.lua")));
+    }
+
+    @Test
+    public void pruneRemovesBlobsNoInstanceLinksTo() throws IOException {
+        File kept = write("kept.lua", CONTENT);
+        byte[] otherContent = "unused".getBytes(StandardCharsets.UTF_8);
+        File removed = write("removed.lua", otherContent);
+        blobStore.add(kept, CONTENT.length, crc32(CONTENT), sha256(CONTENT));
+        blobStore.add(removed, otherContent.length, crc32(otherContent), sha256(otherContent));
+        assertTrue(removed.delete());
+
+        blobStore.prune();
+
+        assertTrue(blobStore.hasCandidates(CONTENT.length, crc32(CONTENT)));
+        assertFalse(blobStore.hasCandidates(otherContent.length, crc32(otherContent)));
+        assertEquals(1, storeDir.list().length);
+    }
+
+    @Test
+    public void evictRemovesTheBlobOfADamagedFile() throws IOException {
+        File file = write("main.lua", CONTENT);
+        blobStore.add(file, CONTENT.length, crc32(CONTENT), sha256(CONTENT));
+
+        blobStore.evict(file, CONTENT.length, crc32(CONTENT));
+
+        assertFalse(blobStore.link(CONTENT.length, crc32(CONTENT), sha256(CONTENT), new File(instanceDir, "x.lua")));
+        assertArrayEquals(CONTENT, Files.readAllBytes(file.toPath()));
+    }
+
+    @Test
+    public void unshareGivesTheFileItsOwnCopy() throws IOException {
+        File file = write("a/main.lua", CONTENT);
+        File linked = new File(instanceDir, "b/main.lua");
+        blobStore.add(file, CONTENT.length, crc32(CONTENT), sha256(CONTENT));
+        blobStore.link(CONTENT.length, crc32(CONTENT), sha256(CONTENT), linked);
+
+        BlobStore.unshare(linked);
+        Files.write(linked.toPath(), new byte[]{1, 2, 3});
+
+        assertFalse(Files.isSameFile(file.toPath(), linked.toPath()));
+        assertArrayEquals(CONTENT, Files.readAllBytes(file.toPath()));
+    }
+
+    private File write(String path, byte[] content) throws IOException {
+        File file = new File(instanceDir, path);
+        FileUtils.makeDirs(file.getParentFile());
+        Files.write(file.toPath(), content);
+        return file;
+    }
+
+    private static byte[] sha256(byte[] data) {
+        return BlobStore.newSha256().digest(data);
+    }
+
+    private static long crc32(byte[] data) {
+        CRC32 crc32 = new CRC32();
+        crc32.update(data);
+        return crc32.getValue();
+    }
+}
@@ -0,0 +1,158 @@
+package com.zomdroid;
+
+import static org.junit.Assert.assertEquals;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.apache.commons.compress.compressors.lz4.FramedLZ4CompressorOutputStream;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.NullOutputStream;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.tukaani.xz.LZMA2Options;
+import org.tukaani.xz.XZOutputStream;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Compares the bundle codecs on what they cost in APK size and in install time: the size of the
+ * compressed bundle, how fast {@link BundleCodec} decodes it, and how long
+ * {@link FileUtils#extractTarBundleToDisk} takes to install it. Uses the JRE bundle from the
+ * assets when one is there, otherwise a synthetic tar shaped like it, with many small files and a
+ * few large ones.
+ */
+public class BundleCodecBenchmarkTest {
+    private static final String BUNDLE_PATH = "src/main/assets/bundles";
+    private static final int ITERATIONS = 5;
+    private static final int FILE_COUNT = 1500;
+
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void comparesSizeAndDecodeTime() throws IOException {
+        byte[] tar = readBundleTar();
+        byte[][] bundles = {
+                tar,
+                encodeLz4(tar),
+                // presets above the default need hundreds of MB to encode, more than a test JVM gets
+                encodeXz(tar, LZMA2Options.PRESET_DEFAULT)
+        };
+        String[] names = {"tar", "tar.lz4", "tar.xz"};
+
+        System.out.printf(Locale.ROOT, "%d bytes of tar%n", tar.length);
+        System.out.printf(Locale.ROOT, "%-10s %12s %7s %10s %10s %10s%n",
+                "codec", "APK bytes", "ratio", "decode ms", "MB/s", "install ms");
+        for (int i = 0; i < bundles.length; i++) {
+            long decodeNs = medianDecodeNs(bundles[i], tar.length);
+            long installNs = installNs(bundles[i], names[i]);
+            System.out.printf(Locale.ROOT, "%-10s %12d %7.3f %10d %10.1f %10d%n", names[i], bundles[i].length,
+                    (double) bundles[i].length / tar.length, decodeNs / 1_000_000,
+                    tar.length * 1e9 / decodeNs / (1024 * 1024), installNs / 1_000_000);
+        }
+    }
+
+    /**
+     * Decodes into a sink, so only the codec is timed. The first run also loads the decoder
+     * classes and fills the XZ array cache, and is not counted.
+     */
+    private static long medianDecodeNs(byte[] bundle, long tarLength) throws IOException {
+        long[] times = new long[ITERATIONS];
+        for (int i = -1; i < ITERATIONS; i++) {
+            long startNs = System.nanoTime();
+            InputStream bufferedInStream = new BufferedInputStream(new ByteArrayInputStream(bundle), 64 * 1024);
+            BundleCodec codec = BundleCodec.detect(bufferedInStream);
+            long length;
+            try (InputStream decodedInStream = codec.decode(bufferedInStream)) {
+                length = IOUtils.copyLarge(decodedInStream, NullOutputStream.INSTANCE);
+            }
+            long elapsedNs = System.nanoTime() - startNs;
+            assertEquals(tarLength, length);
+            if (i >= 0)
+                times[i] = elapsedNs;
+        }
+        Arrays.sort(times);
+        return times[ITERATIONS / 2];
+    }
+
+    private long installNs(byte[] bundle, String name) throws IOException {
+        File destDir = temporaryFolder.newFolder(name.replace(' ', '-'));
+        long startNs = System.nanoTime();
+        FileUtils.extractTarBundleToDisk(new ByteArrayInputStream(bundle), destDir.getPath(), null, bundle.length, null);
+        return System.nanoTime() - startNs;
+    }
+
+    private static byte[] encodeLz4(byte[] tar) throws IOException {
+        ByteArrayOutputStream byteStream = new ByteArrayOutputStream();
+        try (OutputStream outStream = new FramedLZ4CompressorOutputStream(byteStream)) {
+            outStream.write(tar);
+        }
+        return byteStream.toByteArray();
+    }
+
+    private static byte[] encodeXz(byte[] tar, int preset) throws IOException {
+        ByteArrayOutputStream byteStream = new ByteArrayOutputStream();
+        try (OutputStream outStream = new XZOutputStream(byteStream, new LZMA2Options(preset))) {
+            outStream.write(tar);
+        }
+        return byteStream.toByteArray();
+    }
+
+    private static byte[] readBundleTar() throws IOException {
+        File[] assets = new File(BUNDLE_PATH).listFiles((dir, name) -> name.startsWith("jre.tar"));
+        if (assets == null || assets.length == 0)
+            return createTar();
+        try (InputStream bufferedInStream = new BufferedInputStream(new FileInputStream(assets[0]), 64 * 1024)) {
+            BundleCodec codec = BundleCodec.detect(bufferedInStream);
+            try (InputStream decodedInStream = codec.decode(bufferedInStream)) {
+                return IOUtils.toByteArray(decodedInStream);
+            }
+        }
+    }
+
+    /**
+     * Files are built from a fixed set of words with some random bytes in between, so they
+     * compress the way code does rather than not at all like random data. They compress better
+     * than the real JRE, so the ratios only compare the codecs with each other.
+     */
+    private static byte[] createTar() throws IOException {
+        Random random = new Random(11);
+        byte[][] words = new byte[512][];
+        for (int i = 0; i < words.length; i++) {
+            words[i] = new byte[4 + random.nextInt(28)];
+            random.nextBytes(words[i]);
+        }
+        ByteArrayOutputStream byteStream = new ByteArrayOutputStream();
+        try (TarArchiveOutputStream tarOutStream = new TarArchiveOutputStream(byteStream)) {
+            tarOutStream.setLongFileMode(TarArchiveOutputStream.LONGFILE_POSIX);
+            for (int i = 0; i < FILE_COUNT; i++) {
+                int size = i % 200 == 0 ? 1024 * 1024 + random.nextInt(1024 * 1024) : 256 + random.nextInt(12 * 1024);
+                ByteArrayOutputStream content = new ByteArrayOutputStream(size);
+                while (content.size() < size) {
+                    // skewed towards the first words, like common opcodes and symbol names
+                    byte[] word = words[(int) (words.length * Math.pow(random.nextDouble(), 3))];
+                    content.write(word, 0, word.length);
+                    if (random.nextInt(8) == 0)
+                        content.write(random.nextInt(256));
+                }
+                TarArchiveEntry entry = new TarArchiveEntry("jre/lib/dir" + (i % 40) + "/file" + i);
+                entry.setSize(content.size());
+                tarOutStream.putArchiveEntry(entry);
+                content.writeTo(tarOutStream);
+                tarOutStream.closeArchiveEntry();
+            }
+        }
+        return byteStream.toByteArray();
+    }
+}
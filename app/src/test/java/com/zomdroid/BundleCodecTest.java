@@ -0,0 +1,135 @@
+package com.zomdroid;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThrows;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.apache.commons.compress.compressors.lz4.FramedLZ4CompressorOutputStream;
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+import org.tukaani.xz.LZMA2Options;
+import org.tukaani.xz.XZOutputStream;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+public class BundleCodecTest {
+    @Test
+    public void detectsXz() throws IOException {
+        byte[] tar = createTar();
+        ByteArrayOutputStream byteStream = new ByteArrayOutputStream();
+        try (OutputStream outStream = new XZOutputStream(byteStream, new LZMA2Options())) {
+            outStream.write(tar);
+        }
+
+        assertDetectedAndDecoded(BundleCodec.XZ, byteStream.toByteArray(), tar);
+    }
+
+    @Test
+    public void detectsLz4Frame() throws IOException {
+        byte[] tar = createTar();
+        ByteArrayOutputStream byteStream = new ByteArrayOutputStream();
+        try (OutputStream outStream = new FramedLZ4CompressorOutputStream(byteStream)) {
+            outStream.write(tar);
+        }
+
+        assertDetectedAndDecoded(BundleCodec.LZ4_FRAMED, byteStream.toByteArray(), tar);
+    }
+
+    @Test
+    public void detectsPlainTar() throws IOException {
+        byte[] tar = createTar();
+
+        assertDetectedAndDecoded(BundleCodec.NONE, tar, tar);
+    }
+
+    @Test
+    public void detectsStreamShorterThanSignature() throws IOException {
+        InputStream inStream = new BufferedInputStream(new ByteArrayInputStream(new byte[]{(byte) 0xFD, '7'}));
+
+        assertEquals(BundleCodec.NONE, BundleCodec.detect(inStream));
+        assertEquals(0xFD, inStream.read());
+    }
+
+    @Test
+    public void detectRequiresMarkSupport() {
+        InputStream inStream = new FilterInputStream(new ByteArrayInputStream(createTar())) {
+            @Override
+            public boolean markSupported() {
+                return false;
+            }
+        };
+
+        assertThrows(IllegalArgumentException.class, () -> BundleCodec.detect(inStream));
+    }
+
+    @Test
+    public void xzMemoryLimitNeverExceedsAvailableMemory() {
+        long available = 48L * 1024 * 1024;
+
+        assertEquals(available / 3, BundleCodec.getXzMemoryLimit(available));
+        assertEquals(0, BundleCodec.getXzMemoryLimit(-1));
+    }
+
+    @Test
+    public void arrayCacheReusesArraysOfTheSameSize() {
+        BundleCodec.BoundedArrayCache cache = new BundleCodec.BoundedArrayCache(1024);
+        byte[] array = cache.getByteArray(256, false);
+        array[0] = 1;
+        cache.putArray(array);
+
+        assertNotSame(array, cache.getByteArray(128, false));
+        byte[] reused = cache.getByteArray(256, true);
+        assertSame(array, reused);
+        assertEquals(0, reused[0]);
+        assertEquals(0, cache.getCachedBytes());
+    }
+
+    @Test
+    public void arrayCacheDropsArraysBeyondItsBudget() {
+        BundleCodec.BoundedArrayCache cache = new BundleCodec.BoundedArrayCache(1024);
+        cache.putArray(new int[200]);
+        cache.putArray(new int[200]);
+
+        assertEquals(800, cache.getCachedBytes());
+        cache.putArray(new byte[512]);
+        assertEquals(800, cache.getCachedBytes());
+    }
+
+    /**
+     * Detection must leave the stream at its start, so decoding sees the whole bundle.
+     */
+    private static void assertDetectedAndDecoded(BundleCodec expected, byte[] bundle, byte[] tar) throws IOException {
+        InputStream inStream = new BufferedInputStream(new ByteArrayInputStream(bundle));
+
+        assertEquals(expected, BundleCodec.detect(inStream));
+        try (InputStream decodedInStream = expected.decode(inStream)) {
+            assertArrayEquals(tar, IOUtils.toByteArray(decodedInStream));
+        }
+    }
+
+    private static byte[] createTar() {
+        byte[] content = "launcher bundle test content\n".repeat(64).getBytes(StandardCharsets.UTF_8);
+        ByteArrayOutputStream byteStream = new ByteArrayOutputStream();
+        try (TarArchiveOutputStream tarOutStream = new TarArchiveOutputStream(byteStream)) {
+            TarArchiveEntry entry = new TarArchiveEntry("lib/test.txt");
+            entry.setSize(content.length);
+            tarOutStream.putArchiveEntry(entry);
+            tarOutStream.write(content);
+            tarOutStream.closeArchiveEntry();
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+        return byteStream.toByteArray();
+    }
+}
@@ -0,0 +1,142 @@
+package com.zomdroid;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.zip.CRC32;
+
+public class InstallJournalTest {
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private File journalFile;
+    private File destDir;
+
+    @Before
+    public void setUp() throws IOException {
+        journalFile = new File(temporaryFolder.getRoot(), "install.journal");
+        destDir = temporaryFolder.newFolder("game");
+    }
+
+    @Test
+    public void reopenKeepsRecordsOfWrittenFiles() throws IOException {
+        try (InstallJournal journal = open()) {
+            writeAndAppend(journal, "a.txt", "first");
+            writeAndAppend(journal, "dir/b.txt", "second");
+        }
+
+        try (InstallJournal journal = open()) {
+            assertEquals(2, journal.size());
+            assertTrue(journal.isCompleted("a.txt", 0, 5));
+            assertTrue(journal.isCompleted("dir/b.txt", -1, -1));
+            assertFalse(journal.isCompleted("a.txt", 1, 5));
+            assertFalse(journal.isCompleted("a.txt", 0, 6));
+        }
+    }
+
+    @Test
+    public void reopenCutsTailBackToFirstDamagedFile() throws IOException {
+        try (InstallJournal journal = open()) {
+            writeAndAppend(journal, "a.txt", "first");
+            writeAndAppend(journal, "b.txt", "second");
+            writeAndAppend(journal, "c.txt", "third");
+        }
+        long validLength = lineLength("a.txt", "first");
+        // same size, other content, like a file whose data never reached the disk
+        Files.write(new File(destDir, "b.txt").toPath(), "SECOND".getBytes(StandardCharsets.UTF_8));
+
+        try (InstallJournal journal = open()) {
+            assertEquals(1, journal.size());
+            assertTrue(journal.isCompleted("a.txt", -1, 5));
+            assertFalse(journal.isCompleted("b.txt", -1, 6));
+            assertFalse(journal.isCompleted("c.txt", -1, 5));
+        }
+        assertEquals(validLength, journalFile.length());
+    }
+
+    @Test
+    public void reopenDropsMissingFiles() throws IOException {
+        try (InstallJournal journal = open()) {
+            writeAndAppend(journal, "a.txt", "first");
+            writeAndAppend(journal, "b.txt", "second");
+        }
+        assertTrue(new File(destDir, "b.txt").delete());
+
+        try (InstallJournal journal = open()) {
+            assertEquals(1, journal.size());
+            assertFalse(journal.isCompleted("b.txt", -1, -1));
+        }
+    }
+
+    @Test
+    public void reopenDropsPartiallyWrittenRecord() throws IOException {
+        try (InstallJournal journal = open()) {
+            writeAndAppend(journal, "a.txt", "first");
+        }
+        long validLength = journalFile.length();
+        try (FileOutputStream outStream = new FileOutputStream(journalFile, true)) {
+            outStream.write("0\t6\t12".getBytes(StandardCharsets.UTF_8));
+        }
+
+        try (InstallJournal journal = open()) {
+            assertEquals(1, journal.size());
+            // appending after recovery must start on a fresh line
+            writeAndAppend(journal, "b.txt", "second");
+        }
+
+        try (InstallJournal journal = open()) {
+            assertEquals(2, journal.size());
+            assertTrue(journal.isCompleted("b.txt", -1, 6));
+        }
+        assertEquals(validLength + lineLength("b.txt", "second"), journalFile.length());
+    }
+
+    @Test
+    public void reopenOnlyChecksTheTail() throws IOException {
+        try (InstallJournal journal = open()) {
+            for (int i = 0; i < 20; i++) {
+                writeAndAppend(journal, i + ".txt", "file " + i);
+            }
+        }
+        // older records are trusted, only the last ones can belong to writes cut short
+        Files.write(new File(destDir, "0.txt").toPath(), "FILE 0".getBytes(StandardCharsets.UTF_8));
+
+        try (InstallJournal journal = open()) {
+            assertEquals(20, journal.size());
+        }
+    }
+
+    private InstallJournal open() throws IOException {
+        return InstallJournal.open(journalFile, destDir.getPath());
+    }
+
+    private void writeAndAppend(InstallJournal journal, String name, String content) throws IOException {
+        byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+        File file = new File(destDir, name);
+        file.getParentFile().mkdirs();
+        Files.write(file.toPath(), bytes);
+        CRC32 crc32 = new CRC32();
+        crc32.update(bytes);
+        journal.append(name, name.equals("a.txt") ? 0 : -1, bytes.length, crc32.getValue());
+    }
+
+    private static long lineLength(String name, String content) {
+        byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+        CRC32 crc32 = new CRC32();
+        crc32.update(bytes);
+        long offset = name.equals("a.txt") ? 0 : -1;
+        return (offset + "\t" + bytes.length + "\t" + crc32.getValue() + "\t" + name + "\n")
+                .getBytes(StandardCharsets.UTF_8).length;
+    }
+}
@@ -0,0 +1,153 @@
+package com.zomdroid;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class InstallManifestTest {
+    private static final long OLD_MODIFIED_MS = 1_000_000_000_000L;
+
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private File destDir;
+
+    @Before
+    public void setUp() throws IOException {
+        destDir = temporaryFolder.newFolder("jre");
+    }
+
+    @Test
+    public void writeThenReadKeepsEveryRecordInOrder() throws IOException {
+        InstallManifest manifest = new InstallManifest();
+        manifest.put("lib/libjvm.so", 12_345_678, 0xFFFFFFFFL);
+        manifest.put("lib/name with\ttab", 1, 0);
+        manifest.put("release", 0, 0);
+        File manifestFile = new File(temporaryFolder.getRoot(), "jre.manifest");
+
+        manifest.writeToFile(manifestFile);
+        InstallManifest readManifest = InstallManifest.readFromFile(manifestFile);
+
+        assertEquals(Arrays.asList("lib/libjvm.so", "lib/name with\ttab", "release"), readManifest.getPaths());
+        assertEquals(12_345_678, readManifest.get("lib/libjvm.so").size);
+        assertEquals(0xFFFFFFFFL, readManifest.get("lib/libjvm.so").crc32);
+        assertEquals(1, readManifest.get("lib/name with\ttab").size);
+        assertFalse(new File(manifestFile.getPath() + ".tmp").exists());
+    }
+
+    @Test
+    public void readReturnsNullForMissingOrDamagedFile() throws IOException {
+        File manifestFile = new File(temporaryFolder.getRoot(), "jre.manifest");
+
+        assertNull(InstallManifest.readFromFile(manifestFile));
+
+        Files.write(manifestFile.toPath(), "12\t34\tok\nnot a record\n".getBytes(StandardCharsets.UTF_8));
+        assertNull(InstallManifest.readFromFile(manifestFile));
+
+        Files.write(manifestFile.toPath(), "12\tcrc\tpath\n".getBytes(StandardCharsets.UTF_8));
+        assertNull(InstallManifest.readFromFile(manifestFile));
+    }
+
+    @Test
+    public void deleteStaleFilesRemovesFilesAndTheDirectoriesTheyLeaveEmpty() throws IOException {
+        write("bin/java", "java");
+        write("lib/old/deep/libold.so", "old");
+        write("lib/shared/libkept.so", "kept");
+        write("lib/shared/libgone.so", "gone");
+        InstallManifest installedManifest = new InstallManifest();
+        for (String path : new String[]{"bin/java", "lib/old/deep/libold.so", "lib/shared/libkept.so", "lib/shared/libgone.so"}) {
+            installedManifest.put(path, 1, 1);
+        }
+        InstallManifest manifest = new InstallManifest();
+        manifest.put("bin/java", 1, 1);
+        manifest.put("lib/shared/libkept.so", 1, 1);
+
+        FileUtils.deleteStaleFiles(destDir.getPath(), installedManifest, manifest);
+
+        assertTrue(new File(destDir, "bin/java").isFile());
+        assertTrue(new File(destDir, "lib/shared/libkept.so").isFile());
+        assertFalse(new File(destDir, "lib/shared/libgone.so").exists());
+        assertFalse(new File(destDir, "lib/old").exists());
+        assertTrue(destDir.isDirectory());
+    }
+
+    @Test
+    public void deleteStaleFilesKeepsTheInstallDirectory() throws IOException {
+        write("only", "only");
+        InstallManifest installedManifest = new InstallManifest();
+        installedManifest.put("only", 4, 0);
+
+        FileUtils.deleteStaleFiles(destDir.getPath(), installedManifest, new InstallManifest());
+
+        assertTrue(destDir.isDirectory());
+        assertEquals(0, destDir.list().length);
+    }
+
+    @Test
+    public void updateOverInstalledTreeRewritesOnlyChangedFiles() throws IOException {
+        LinkedHashMap<String, String> files = new LinkedHashMap<>();
+        files.put("lib/unchanged.so", "unchanged");
+        files.put("lib/changed.so", "version 1");
+        files.put("lib/removed.so", "removed");
+        InstallManifest installedManifest = FileUtils.extractTarBundleToDisk(
+                new ByteArrayInputStream(createTar(files)), destDir.getPath(), null, 0, null);
+        for (String path : files.keySet()) {
+            assertTrue(new File(destDir, path).setLastModified(OLD_MODIFIED_MS));
+        }
+
+        files.put("lib/changed.so", "version 2");
+        files.remove("lib/removed.so");
+        files.put("lib/added.so", "added");
+        InstallManifest manifest = FileUtils.extractTarBundleToDisk(
+                new ByteArrayInputStream(createTar(files)), destDir.getPath(), null, 0, installedManifest);
+        FileUtils.deleteStaleFiles(destDir.getPath(), installedManifest, manifest);
+
+        assertEquals(OLD_MODIFIED_MS, new File(destDir, "lib/unchanged.so").lastModified());
+        assertArrayEquals("version 2".getBytes(StandardCharsets.UTF_8),
+                Files.readAllBytes(new File(destDir, "lib/changed.so").toPath()));
+        assertArrayEquals("added".getBytes(StandardCharsets.UTF_8),
+                Files.readAllBytes(new File(destDir, "lib/added.so").toPath()));
+        assertFalse(new File(destDir, "lib/removed.so").exists());
+        assertEquals(Arrays.asList("lib/unchanged.so", "lib/changed.so", "lib/added.so"), manifest.getPaths());
+    }
+
+    private void write(String path, String content) throws IOException {
+        File file = new File(destDir, path);
+        FileUtils.makeDirs(file.getParentFile());
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static byte[] createTar(Map<String, String> files) throws IOException {
+        ByteArrayOutputStream byteStream = new ByteArrayOutputStream();
+        try (TarArchiveOutputStream tarOutStream = new TarArchiveOutputStream(byteStream)) {
+            for (Map.Entry<String, String> file : files.entrySet()) {
+                byte[] content = file.getValue().getBytes(StandardCharsets.UTF_8);
+                TarArchiveEntry entry = new TarArchiveEntry(file.getKey());
+                entry.setSize(content.length);
+                tarOutStream.putArchiveEntry(entry);
+                tarOutStream.write(content);
+                tarOutStream.closeArchiveEntry();
+            }
+        }
+        return byteStream.toByteArray();
+    }
+}
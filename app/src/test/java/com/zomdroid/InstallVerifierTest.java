@@ -0,0 +1,119 @@
+package com.zomdroid;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class InstallVerifierTest {
+    private static final long OLD_MODIFIED_MS = 1_000_000_000_000L;
+
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private final LinkedHashMap<String, String> files = new LinkedHashMap<>();
+    private File destDir;
+    private byte[] tar;
+    private InstallManifest manifest;
+
+    @Before
+    public void setUp() throws IOException {
+        for (int i = 0; i < 20; i++) {
+            files.put("lib/file" + i, "content of file " + i);
+        }
+        destDir = temporaryFolder.newFolder("jre");
+        tar = createTar(files);
+        manifest = FileUtils.extractTarBundleToDisk(new ByteArrayInputStream(tar), destDir.getPath(), null, 0, null);
+    }
+
+    @Test
+    public void intactTreePassesVerification() throws IOException {
+        InstallVerifier.Result result = InstallVerifier.verify(destDir.getPath(), manifest, null);
+
+        assertTrue(result.isIntact());
+        assertEquals(files.size(), result.fileCount);
+    }
+
+    @Test
+    public void reportsCorruptTruncatedAndMissingFilesSorted() throws IOException {
+        // same size, different content, only the CRC32 catches it
+        write("lib/file7", "CONTENT of file 7");
+        write("lib/file3", "short");
+        assertTrue(new File(destDir, "lib/file12").delete());
+
+        InstallVerifier.Result result = InstallVerifier.verify(destDir.getPath(), manifest, null);
+
+        assertEquals(Arrays.asList("lib/file12", "lib/file3", "lib/file7"), result.damagedPaths);
+    }
+
+    @Test
+    public void repairRewritesOnlyDamagedFiles() throws IOException {
+        write("lib/file7", "CONTENT of file 7");
+        for (String path : files.keySet()) {
+            assertTrue(new File(destDir, path).setLastModified(OLD_MODIFIED_MS));
+        }
+        InstallVerifier.Result result = InstallVerifier.verify(destDir.getPath(), manifest, null);
+
+        InstallManifest repairedManifest = FileUtils.repairTarBundleOnDisk(new ByteArrayInputStream(tar),
+                destDir.getPath(), null, 0, manifest, new HashSet<>(result.damagedPaths));
+
+        assertArrayEquals(files.get("lib/file7").getBytes(StandardCharsets.UTF_8),
+                Files.readAllBytes(new File(destDir, "lib/file7").toPath()));
+        assertEquals(OLD_MODIFIED_MS, new File(destDir, "lib/file8").lastModified());
+        assertEquals(manifest.getPaths(), repairedManifest.getPaths());
+        assertTrue(InstallVerifier.verify(destDir.getPath(), repairedManifest, null).isIntact());
+    }
+
+    @Test
+    public void stopsWhenCancelled() {
+        TaskProgressListener cancelled = new TaskProgressListener() {
+            @Override
+            public void onProgressUpdate(String message, int progress, int progressMax) {
+            }
+
+            @Override
+            public boolean isCancelled() {
+                return true;
+            }
+        };
+
+        assertThrows(TaskCancelledException.class, () -> InstallVerifier.verify(destDir.getPath(), manifest, cancelled));
+    }
+
+    private void write(String path, String content) throws IOException {
+        Files.write(new File(destDir, path).toPath(), content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static byte[] createTar(Map<String, String> files) throws IOException {
+        ByteArrayOutputStream byteStream = new ByteArrayOutputStream();
+        try (TarArchiveOutputStream tarOutStream = new TarArchiveOutputStream(byteStream)) {
+            for (Map.Entry<String, String> file : files.entrySet()) {
+                byte[] content = file.getValue().getBytes(StandardCharsets.UTF_8);
+                TarArchiveEntry entry = new TarArchiveEntry(file.getKey());
+                entry.setSize(content.length);
+                tarOutStream.putArchiveEntry(entry);
+                tarOutStream.write(content);
+                tarOutStream.closeArchiveEntry();
+            }
+        }
+        return byteStream.toByteArray();
+    }
+}
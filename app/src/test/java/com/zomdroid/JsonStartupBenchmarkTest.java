@@ -0,0 +1,100 @@
+package com.zomdroid;
+
+import static org.junit.Assert.assertEquals;
+
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import com.zomdroid.game.GameInstance;
+import com.zomdroid.input.ControlElementDescription;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.function.Supplier;
+
+/**
+ * Times what {@link ZomdroidApplication#onCreate} pays for loading persisted state, before and
+ * after the streaming adapters: a fresh reflective {@link Gson} per load, as each owner used to
+ * build, against the shared one from {@link JsonUtils}. Both read the default layout asset and a
+ * handful of instance records, and must read them the same.
+ */
+public class JsonStartupBenchmarkTest {
+    private static final int INSTANCE_COUNT = 8;
+    private static final int ITERATIONS = 200;
+
+    private static final Type INSTANCES_TYPE = new TypeToken<ArrayList<GameInstance>>() {}.getType();
+    private static final Type LAYOUT_TYPE = new TypeToken<ArrayList<ControlElementDescription>>() {}.getType();
+
+    @Test
+    public void comparesReflectiveAndStreamingLoads() throws IOException {
+        String layoutJson = new String(Files.readAllBytes(Paths.get("src/main/assets/default_controls.json")),
+                StandardCharsets.UTF_8);
+        String instancesJson = createInstancesJson();
+
+        // the first load of each also pays for class loading and adapter setup, as on a cold start
+        long reflectiveColdNs = time(() -> load(new Gson(), instancesJson, layoutJson));
+        long streamingColdNs = time(() -> load(JsonUtils.getGson(), instancesJson, layoutJson));
+        long reflectiveNs = median(() -> load(new Gson(), instancesJson, layoutJson));
+        long streamingNs = median(() -> load(JsonUtils.getGson(), instancesJson, layoutJson));
+
+        assertEquals(load(new Gson(), instancesJson, layoutJson), load(JsonUtils.getGson(), instancesJson, layoutJson));
+        System.out.printf(Locale.ROOT, "launcher state load    cold us    warm us%n");
+        System.out.printf(Locale.ROOT, "reflective Gson     %10d %10d%n", reflectiveColdNs / 1000, reflectiveNs / 1000);
+        System.out.printf(Locale.ROOT, "streaming adapters  %10d %10d%n", streamingColdNs / 1000, streamingNs / 1000);
+    }
+
+    /**
+     * Returns a summary of what was read, so both loaders can be compared without equals().
+     */
+    private static String load(Gson gson, String instancesJson, String layoutJson) {
+        ArrayList<GameInstance> instances = gson.fromJson(instancesJson, INSTANCES_TYPE);
+        ArrayList<ControlElementDescription> layout = gson.fromJson(layoutJson, LAYOUT_TYPE);
+        StringBuilder summary = new StringBuilder();
+        for (GameInstance instance : instances) {
+            summary.append(instance.getName()).append(instance.getArgsAsList()).append(';');
+        }
+        for (ControlElementDescription description : layout) {
+            summary.append(description.type).append(description.bindings.length)
+                    .append(description.centerXRelative).append(';');
+        }
+        return summary.toString();
+    }
+
+    private static long time(Supplier<String> load) {
+        long startNs = System.nanoTime();
+        load.get();
+        return System.nanoTime() - startNs;
+    }
+
+    private static long median(Supplier<String> load) {
+        long[] times = new long[ITERATIONS];
+        for (int i = 0; i < ITERATIONS; i++) {
+            times[i] = time(load);
+        }
+        Arrays.sort(times);
+        return times[ITERATIONS / 2];
+    }
+
+    private static String createInstancesJson() {
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < INSTANCE_COUNT; i++) {
+            if (i > 0)
+                json.append(',');
+            json.append("{\"name\":\"instance").append(i).append("\",\"homePath\":\"/data/instances/instance")
+                    .append(i).append("\",\"isInstalled\":true,\"createdAtMs\":1700000000000,")
+                    .append("\"classPath\":[\"a.jar\",\"b.jar\",\"c.jar\"],\"extraClassPath\":[],")
+                    .append("\"libraryPath\":[\"lib\",\"natives\"],\"libraryPathForEmulation\":[],")
+                    .append("\"fmodLibraryPath\":\"fmod\",\"extraJvmArgs\":[\"-Xmx2g\",\"-Xms1g\"],")
+                    .append("\"args\":[\"-debug\"],\"mainClassName\":\"zombie.Main\",\"javaAgentPath\":\"\",")
+                    .append("\"javaAgentArgs\":\"\",\"controlLayoutName\":\"default\"}");
+        }
+        return json.append(']').toString();
+    }
+}
@@ -0,0 +1,111 @@
+package com.zomdroid;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.zomdroid.game.GameInstance;
+import com.zomdroid.input.AbstractControlElement;
+import com.zomdroid.input.ControlElementDescription;
+import com.zomdroid.input.GLFWBinding;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+public class JsonUtilsTest {
+    // a record as written by reflective Gson, with a field later versions dropped
+    private static final String GAME_INSTANCE_JSON = "{"
+            + "\"name\":\"main\",\"homePath\":\"/data/instances/main\",\"isInstalled\":true,"
+            + "\"createdAtMs\":1700000000000,\"classPath\":[\"a.jar\",\"b.jar\"],\"extraClassPath\":[],"
+            + "\"libraryPath\":[\"lib\"],\"libraryPathForEmulation\":[],\"fmodLibraryPath\":\"fmod\","
+            + "\"extraJvmArgs\":[\"-Xmx2g\"],\"args\":[\"-debug\"],\"mainClassName\":\"zombie.Main\","
+            + "\"javaAgentPath\":\"\",\"javaAgentArgs\":\"\",\"controlLayoutName\":\"driving\","
+            + "\"removedField\":{\"nested\":[1,2]}}";
+
+    private final Gson gson = JsonUtils.getGson();
+
+    @Test
+    public void gameInstanceReadsLegacyRecord() {
+        GameInstance gameInstance = gson.fromJson(GAME_INSTANCE_JSON, GameInstance.class);
+
+        assertEquals("main", gameInstance.getName());
+        assertEquals("/data/instances/main", gameInstance.getHomePath());
+        assertTrue(gameInstance.isInstalled());
+        assertEquals("zombie.Main", gameInstance.getMainClassName());
+        assertEquals(Arrays.asList("-debug"), gameInstance.getArgsAsList());
+        assertEquals("driving", gameInstance.getControlLayoutName());
+        assertNull(gameInstance.getGameFilesFolderUri());
+    }
+
+    @Test
+    public void gameInstanceRoundTrips() {
+        GameInstance gameInstance = gson.fromJson(GAME_INSTANCE_JSON, GameInstance.class);
+        String json = gson.toJson(gameInstance);
+
+        assertEquals(json, gson.toJson(gson.fromJson(json, GameInstance.class)));
+    }
+
+    @Test
+    public void controlElementRoundTrips() {
+        ControlElementDescription description = new ControlElementDescription(0.1f, 0.9f, 1.f,
+                AbstractControlElement.Type.DPAD,
+                new GLFWBinding[]{GLFWBinding.KEY_W, GLFWBinding.KEY_A, GLFWBinding.KEY_S, GLFWBinding.KEY_D},
+                "move", 0xFF102030, 128, AbstractControlElement.InputType.MNK,
+                ControlElementDescription.Icon.NO_ICON);
+
+        ControlElementDescription read = gson.fromJson(gson.toJson(description), ControlElementDescription.class);
+
+        assertEquals(description.centerXRelative, read.centerXRelative, 0);
+        assertEquals(description.centerYRelative, read.centerYRelative, 0);
+        assertEquals(description.type, read.type);
+        assertArrayEquals(description.bindings, read.bindings);
+        assertEquals(description.text, read.text);
+        assertEquals(description.color, read.color);
+        assertEquals(description.alpha, read.alpha);
+        assertEquals(description.inputType, read.inputType);
+    }
+
+    @Test
+    public void controlElementFallsBackForMissingAndUnknownValues() {
+        ControlElementDescription read = gson.fromJson("{\"type\":\"BUTTON_CIRCLE\","
+                + "\"bindings\":[\"GAMEPAD_BUTTON_A\"],\"inputType\":\"TOUCHPAD\",\"icon\":\"NEW_ICON\"}",
+                ControlElementDescription.class);
+
+        assertEquals(AbstractControlElement.InputType.GAMEPAD, read.inputType);
+        assertEquals(ControlElementDescription.Icon.NO_ICON, read.icon);
+        assertEquals(255, read.alpha);
+        assertEquals(0.5f, read.centerXRelative, 0);
+    }
+
+    @Test
+    public void controlElementDropsUnknownBindings() {
+        ControlElementDescription read = gson.fromJson("{\"type\":\"BUTTON_RECT\","
+                + "\"bindings\":[\"NO_SUCH_KEY\",\"KEY_E\"]}", ControlElementDescription.class);
+
+        assertArrayEquals(new GLFWBinding[]{GLFWBinding.KEY_E}, read.bindings);
+    }
+
+    @Test
+    public void controlElementMissingInputTypeReadsAsGamepad() {
+        ControlElementDescription read = gson.fromJson("{\"type\":\"BUTTON_RECT\",\"bindings\":[]}",
+                ControlElementDescription.class);
+
+        assertEquals(AbstractControlElement.InputType.GAMEPAD, read.inputType);
+    }
+
+    @Test
+    public void controlElementRejectsInvalidElement() {
+        assertThrows(JsonParseException.class,
+                () -> gson.fromJson("{\"bindings\":[]}", ControlElementDescription.class));
+        // directions of a DPAD are positional, dropping one of them leaves the element unusable
+        assertThrows(JsonParseException.class,
+                () -> gson.fromJson("{\"type\":\"DPAD\",\"inputType\":\"MNK\","
+                        + "\"bindings\":[\"KEY_W\",\"NO_SUCH_KEY\",\"KEY_S\",\"KEY_D\"]}",
+                        ControlElementDescription.class));
+    }
+}
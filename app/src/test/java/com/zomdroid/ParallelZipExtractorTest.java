@@ -0,0 +1,217 @@
+package com.zomdroid;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.zip.CRC32;
+
+public class ParallelZipExtractorTest {
+    private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+    private static final int CENTRAL_HEADER_CRC_OFFSET = 16;
+    private static final int CENTRAL_HEADER_SIZE_OFFSET = 24;
+
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private final LinkedHashMap<String, byte[]> entries = new LinkedHashMap<>();
+    private File zipFile;
+    private File destDir;
+
+    @Before
+    public void setUp() throws IOException {
+        Random random = new Random(42);
+        // large enough to span several copy buffers, random so it doesn't deflate to nothing
+        byte[] large = new byte[3 * 1024 * 1024 + 17];
+        random.nextBytes(large);
+        entries.put("media/large.bin", large);
+        entries.put("media/lua/main.lua", "print('hello')\n".repeat(500).getBytes(StandardCharsets.UTF_8));
+        entries.put("zombie.jar", new byte[]{1, 2, 3});
+        entries.put("empty.txt", new byte[0]);
+        for (int i = 0; i < 40; i++) {
+            entries.put("media/textures/t" + i + ".png", ("texture " + i).getBytes(StandardCharsets.UTF_8));
+        }
+        zipFile = temporaryFolder.newFile("game.zip");
+        destDir = temporaryFolder.newFolder("game");
+        writeZip(zipFile, entries);
+    }
+
+    @Test
+    public void extractsEveryEntryAndRecordsItInTheManifest() throws IOException {
+        InstallManifest manifest = extract(null);
+
+        assertEquals(entries.size(), manifest.size());
+        for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+            assertArrayEquals(entry.getValue(), Files.readAllBytes(new File(destDir, entry.getKey()).toPath()));
+            InstallManifest.Record record = manifest.get(entry.getKey());
+            assertEquals(entry.getValue().length, record.size);
+            assertEquals(crc32(entry.getValue()), record.crc32);
+        }
+        assertTrue(new File(destDir, "media/empty-dir").isDirectory());
+    }
+
+    @Test
+    public void journalRecordsEveryWrittenEntry() throws IOException {
+        File journalFile = new File(temporaryFolder.getRoot(), "install.journal");
+        try (InstallJournal journal = InstallJournal.open(journalFile, destDir.getPath())) {
+            extract(journal);
+
+            assertEquals(entries.size(), journal.size());
+            assertEquals(crc32(entries.get("zombie.jar")), journal.get("zombie.jar").crc32);
+        }
+    }
+
+    @Test
+    public void skipsEntriesTheJournalListsAsWritten() throws IOException {
+        File journalFile = new File(temporaryFolder.getRoot(), "install.journal");
+        File file = new File(destDir, "zombie.jar");
+        Files.write(file.toPath(), new byte[]{9, 9, 9});
+        try (InstallJournal journal = InstallJournal.open(journalFile, destDir.getPath())) {
+            journal.append("zombie.jar", -1, 3, crc32(entries.get("zombie.jar")));
+
+            InstallManifest manifest = extract(journal);
+
+            // the file was not touched, the manifest still describes the archive entry
+            assertArrayEquals(new byte[]{9, 9, 9}, Files.readAllBytes(file.toPath()));
+            assertEquals(crc32(entries.get("zombie.jar")), manifest.get("zombie.jar").crc32);
+        }
+    }
+
+    @Test
+    public void linksEntriesTheStoreHoldsFromAnEarlierInstall() throws IOException {
+        BlobStore blobStore = new BlobStore(temporaryFolder.newFolder("blobs"));
+        File otherDestDir = temporaryFolder.newFolder("other");
+        extract(destDir, blobStore);
+
+        InstallManifest manifest = extract(otherDestDir, blobStore);
+
+        assertEquals(entries.size(), manifest.size());
+        for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+            File file = new File(otherDestDir, entry.getKey());
+            assertArrayEquals(entry.getValue(), Files.readAllBytes(file.toPath()));
+            if (entry.getValue().length > 0)
+                assertTrue(Files.isSameFile(new File(destDir, entry.getKey()).toPath(), file.toPath()));
+        }
+    }
+
+    @Test
+    public void rejectsEntryWithWrongCrc() throws IOException {
+        patchCentralHeader("media/lua/main.lua", CENTRAL_HEADER_CRC_OFFSET, 0x12345678);
+        File journalFile = new File(temporaryFolder.getRoot(), "install.journal");
+
+        try (InstallJournal journal = InstallJournal.open(journalFile, destDir.getPath())) {
+            IOException e = assertThrows(IOException.class, () -> extract(journal));
+
+            assertTrue(e.getMessage().contains("media/lua/main.lua"));
+            assertNull(journal.get("media/lua/main.lua"));
+        }
+    }
+
+    @Test
+    public void rejectsEntryShorterThanItsRecordedSize() throws IOException {
+        int size = entries.get("media/lua/main.lua").length;
+        patchCentralHeader("media/lua/main.lua", CENTRAL_HEADER_SIZE_OFFSET, size + 100);
+        File journalFile = new File(temporaryFolder.getRoot(), "install.journal");
+
+        try (InstallJournal journal = InstallJournal.open(journalFile, destDir.getPath())) {
+            assertThrows(IOException.class, () -> extract(journal));
+
+            assertNull(journal.get("media/lua/main.lua"));
+        }
+    }
+
+    @Test
+    public void stopsWhenCancelled() {
+        TaskProgressListener cancelled = new TaskProgressListener() {
+            @Override
+            public void onProgressUpdate(String message, int progress, int progressMax) {
+            }
+
+            @Override
+            public boolean isCancelled() {
+                return true;
+            }
+        };
+
+        assertThrows(TaskCancelledException.class, () -> {
+            try (FileChannel channel = FileChannel.open(zipFile.toPath(), StandardOpenOption.READ)) {
+                ParallelZipExtractor.extract(channel, destDir.getPath(), cancelled, null, null);
+            }
+        });
+    }
+
+    private InstallManifest extract(InstallJournal journal) throws IOException {
+        try (FileChannel channel = FileChannel.open(zipFile.toPath(), StandardOpenOption.READ)) {
+            return ParallelZipExtractor.extract(channel, destDir.getPath(), null, journal, null);
+        }
+    }
+
+    private InstallManifest extract(File destDir, BlobStore blobStore) throws IOException {
+        try (FileChannel channel = FileChannel.open(zipFile.toPath(), StandardOpenOption.READ)) {
+            return ParallelZipExtractor.extract(channel, destDir.getPath(), null, null, blobStore);
+        }
+    }
+
+    /**
+     * Overwrites a 32 bit field of the central directory header of {@code name}, which is where
+     * the extractor takes sizes and CRCs from.
+     */
+    private void patchCentralHeader(String name, int fieldOffset, int value) throws IOException {
+        byte[] zip = Files.readAllBytes(zipFile.toPath());
+        ByteBuffer buffer = ByteBuffer.wrap(zip).order(ByteOrder.LITTLE_ENDIAN);
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        for (int i = 0; i + 46 <= zip.length; i++) {
+            if (buffer.getInt(i) != CENTRAL_HEADER_SIGNATURE || (buffer.getShort(i + 28) & 0xFFFF) != nameBytes.length)
+                continue;
+            byte[] entryName = new byte[nameBytes.length];
+            System.arraycopy(zip, i + 46, entryName, 0, nameBytes.length);
+            if (!name.equals(new String(entryName, StandardCharsets.UTF_8)))
+                continue;
+            try (RandomAccessFile randomAccessFile = new RandomAccessFile(zipFile, "rw")) {
+                randomAccessFile.seek(i + fieldOffset);
+                randomAccessFile.write(ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN).putInt(value).array());
+            }
+            return;
+        }
+        throw new AssertionError("no central directory header for " + name);
+    }
+
+    private static void writeZip(File file, Map<String, byte[]> entries) throws IOException {
+        try (ZipArchiveOutputStream zipOutStream = new ZipArchiveOutputStream(file)) {
+            zipOutStream.putArchiveEntry(new ZipArchiveEntry("media/empty-dir/"));
+            zipOutStream.closeArchiveEntry();
+            for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+                zipOutStream.putArchiveEntry(new ZipArchiveEntry(entry.getKey()));
+                zipOutStream.write(entry.getValue());
+                zipOutStream.closeArchiveEntry();
+            }
+        }
+    }
+
+    private static long crc32(byte[] data) {
+        CRC32 crc32 = new CRC32();
+        crc32.update(data);
+        return crc32.getValue();
+    }
+}
@@ -0,0 +1,76 @@
+package com.zomdroid.input;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThrows;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+public class ControlLayoutCodecTest {
+    private static final List<ControlElementDescription> LAYOUT = Arrays.asList(
+            new ControlElementDescription(0.25f, 0.75f, 1.5f, AbstractControlElement.Type.BUTTON_CIRCLE,
+                    new GLFWBinding[]{GLFWBinding.GAMEPAD_BUTTON_A}, "A", 0xFFCCCCCC, 200,
+                    AbstractControlElement.InputType.GAMEPAD, ControlElementDescription.Icon.NO_ICON),
+            new ControlElementDescription(0.1f, 0.9f, 1.f, AbstractControlElement.Type.DPAD,
+                    new GLFWBinding[]{GLFWBinding.KEY_W, GLFWBinding.KEY_A, GLFWBinding.KEY_S, GLFWBinding.KEY_D},
+                    null, 0xFF000000, 255, AbstractControlElement.InputType.MNK,
+                    ControlElementDescription.Icon.GAMEPAD_START_ICON));
+
+    @Test
+    public void decodeReturnsEncodedLayout() throws IOException {
+        List<ControlElementDescription> decoded = ControlLayoutCodec.decode(ControlLayoutCodec.encode(LAYOUT));
+
+        assertEquals(LAYOUT.size(), decoded.size());
+        for (int i = 0; i < LAYOUT.size(); i++) {
+            ControlElementDescription expected = LAYOUT.get(i);
+            ControlElementDescription actual = decoded.get(i);
+            assertEquals(expected.centerXRelative, actual.centerXRelative, 0);
+            assertEquals(expected.centerYRelative, actual.centerYRelative, 0);
+            assertEquals(expected.scale, actual.scale, 0);
+            assertEquals(expected.type, actual.type);
+            assertArrayEquals(expected.bindings, actual.bindings);
+            assertEquals(expected.text, actual.text);
+            assertEquals(expected.color, actual.color);
+            assertEquals(expected.alpha, actual.alpha);
+            assertEquals(expected.inputType, actual.inputType);
+            assertEquals(expected.icon, actual.icon);
+        }
+        assertNull(decoded.get(1).text);
+    }
+
+    @Test
+    public void encodeIsStable() throws IOException {
+        byte[] bytes = ControlLayoutCodec.encode(LAYOUT);
+
+        assertArrayEquals(bytes, ControlLayoutCodec.encode(ControlLayoutCodec.decode(bytes)));
+    }
+
+    @Test
+    public void decodeRejectsCorruptData() throws IOException {
+        byte[] bytes = ControlLayoutCodec.encode(LAYOUT);
+        bytes[bytes.length / 2] ^= 0x01;
+
+        assertThrows(IOException.class, () -> ControlLayoutCodec.decode(bytes));
+    }
+
+    @Test
+    public void decodeRejectsCorruptChecksum() throws IOException {
+        byte[] bytes = ControlLayoutCodec.encode(LAYOUT);
+        bytes[bytes.length - 1] ^= 0x01;
+
+        assertThrows(IOException.class, () -> ControlLayoutCodec.decode(bytes));
+    }
+
+    @Test
+    public void decodeRejectsTruncatedData() throws IOException {
+        byte[] bytes = ControlLayoutCodec.encode(LAYOUT);
+
+        assertThrows(IOException.class, () -> ControlLayoutCodec.decode(Arrays.copyOf(bytes, bytes.length - 1)));
+        assertThrows(IOException.class, () -> ControlLayoutCodec.decode(new byte[8]));
+    }
+}
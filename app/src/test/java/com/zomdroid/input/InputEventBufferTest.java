@@ -0,0 +1,56 @@
+package com.zomdroid.input;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Record types are defined twice, in zomdroid.h for the reader and in {@link InputEventBuffer}
+ * for the writer. Nothing else links the two, so a change to either side must fail here.
+ */
+public class InputEventBufferTest {
+    private static final Pattern DEFINE = Pattern.compile("^#define ZOMDROID_INPUT_(\\w+) (\\d+)$", Pattern.MULTILINE);
+    private static final Pattern RECORD_SIZE_ASSERT =
+            Pattern.compile("_Static_assert\\(sizeof\\(ZomdroidInputRecord\\) == (\\d+),");
+
+    @Test
+    public void recordTypesMatchNativeHeader() throws IOException, IllegalAccessException {
+        String header = readHeader();
+        TreeMap<String, Integer> nativeTypes = new TreeMap<>();
+        Matcher matcher = DEFINE.matcher(header);
+        while (matcher.find()) {
+            nativeTypes.put(matcher.group(1), Integer.parseInt(matcher.group(2)));
+        }
+
+        TreeMap<String, Integer> javaTypes = new TreeMap<>();
+        for (Field field : InputEventBuffer.class.getDeclaredFields()) {
+            if (Modifier.isStatic(field.getModifiers()) && field.getName().startsWith("TYPE_"))
+                javaTypes.put(field.getName().substring("TYPE_".length()), field.getInt(null));
+        }
+
+        assertEquals(nativeTypes, javaTypes);
+    }
+
+    @Test
+    public void recordSizeMatchesNativeHeader() throws IOException {
+        Matcher matcher = RECORD_SIZE_ASSERT.matcher(readHeader());
+
+        assertTrue(matcher.find());
+        assertEquals(InputEventBuffer.RECORD_SIZE, Integer.parseInt(matcher.group(1)));
+    }
+
+    private static String readHeader() throws IOException {
+        return new String(Files.readAllBytes(Paths.get("src/main/cpp/zomdroid.h")), StandardCharsets.UTF_8);
+    }
+}
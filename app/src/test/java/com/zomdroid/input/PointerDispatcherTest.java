@@ -0,0 +1,107 @@
+package com.zomdroid.input;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class PointerDispatcherTest {
+    private final RecordingTarget left = new RecordingTarget();
+    private final RecordingTarget right = new RecordingTarget();
+    // left covers x in [0, 100), right covers [100, 200), everything else is a miss
+    private final PointerDispatcher dispatcher = new PointerDispatcher((x, y) -> {
+        if (x < 0 || x >= 200) return null;
+        return x < 100 ? left : right;
+    });
+
+    @Test
+    public void pointerStaysWithTargetItWentDownOn() {
+        assertTrue(dispatcher.onPointerDown(0, 50, 10));
+        assertTrue(dispatcher.onPointerMove(0, 150, 10));
+        assertTrue(dispatcher.onPointerUp(0));
+
+        assertEquals(Arrays.asList("down 0", "move 0", "up 0"), left.events);
+        assertEquals(Collections.emptyList(), right.events);
+    }
+
+    @Test
+    public void pointerOutsideEveryTargetIsNotHandled() {
+        assertFalse(dispatcher.onPointerDown(0, 500, 10));
+        assertFalse(dispatcher.onPointerMove(0, 50, 10));
+        assertFalse(dispatcher.onPointerUp(0));
+
+        assertEquals(Collections.emptyList(), left.events);
+        assertEquals(Collections.emptyList(), right.events);
+    }
+
+    @Test
+    public void pointersGoToTheirOwnTargets() {
+        dispatcher.onPointerDown(0, 50, 10);
+        dispatcher.onPointerDown(1, 150, 10);
+        dispatcher.onPointerMove(0, 60, 10);
+        dispatcher.onPointerMove(1, 40, 10);
+        dispatcher.onPointerUp(1);
+        dispatcher.onPointerUp(0);
+
+        assertEquals(Arrays.asList("down 0", "move 0", "up 0"), left.events);
+        assertEquals(Arrays.asList("down 1", "move 1", "up 1"), right.events);
+    }
+
+    @Test
+    public void upReleasesThePointer() {
+        dispatcher.onPointerDown(0, 50, 10);
+        dispatcher.onPointerUp(0);
+
+        assertFalse(dispatcher.onPointerMove(0, 50, 10));
+        assertFalse(dispatcher.onPointerUp(0));
+        assertEquals(Arrays.asList("down 0", "up 0"), left.events);
+    }
+
+    @Test
+    public void cancelLiftsEveryPointerStillDown() {
+        dispatcher.onPointerDown(0, 50, 10);
+        dispatcher.onPointerDown(3, 150, 10);
+        dispatcher.onPointerDown(5, 500, 10);
+
+        dispatcher.cancel();
+
+        assertEquals(Arrays.asList("down 0", "up 0"), left.events);
+        assertEquals(Arrays.asList("down 3", "up 3"), right.events);
+        assertFalse(dispatcher.onPointerMove(0, 50, 10));
+        assertFalse(dispatcher.onPointerUp(3));
+    }
+
+    @Test
+    public void pointerIdsOutOfRangeAreNotHandled() {
+        assertFalse(dispatcher.onPointerDown(-1, 50, 10));
+        assertFalse(dispatcher.onPointerDown(32, 50, 10));
+        assertFalse(dispatcher.onPointerUp(32));
+
+        assertEquals(Collections.emptyList(), left.events);
+    }
+
+    private static class RecordingTarget implements PointerDispatcher.Target {
+        final List<String> events = new ArrayList<>();
+
+        @Override
+        public void onPointerDown(int pointerId, float x, float y) {
+            events.add("down " + pointerId);
+        }
+
+        @Override
+        public void onPointerMove(int pointerId, float x, float y) {
+            events.add("move " + pointerId);
+        }
+
+        @Override
+        public void onPointerUp(int pointerId) {
+            events.add("up " + pointerId);
+        }
+    }
+}